@@ -0,0 +1,110 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.networkinference.eval.GoldStandard;
+import org.networkinference.eval.Network;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * The synthetic files of the benchmarks, generated once per size in the temporary
+ * directory (see SyntheticNetwork). The parsers print a line for every file they
+ * read, so the standard output is discarded while the benchmarks run.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+	/** The preset of SyntheticNetwork (ecoli, yeast or human) */
+	@Param({ "ecoli", "yeast", "human" })
+	public String size;
+
+	/** The number of threads used by the evaluation */
+	@Param({ "1" })
+	public int threads;
+
+	/** The directory of the generated files */
+	private static final String DIR = System.getProperty("java.io.tmpdir") + File.separator + "networkinference-bench";
+	/** The seed of the generated files */
+	private static final long SEED = 42;
+
+	/** The gold standard file */
+	private String goldFile_ = null;
+	/** The prediction file */
+	private String predictionFile_ = null;
+	/** The standard output, restored after the benchmark */
+	private PrintStream out_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Generate the files (if needed) and silence the standard output */
+	@Setup
+	public void setup() {
+
+		File[] files = SyntheticNetwork.fromPreset(size, SEED).write(DIR);
+		goldFile_ = files[0].getPath();
+		predictionFile_ = files[1].getPath();
+
+		out_ = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Restore the standard output */
+	@TearDown
+	public void tearDown() {
+
+		System.setOut(out_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gold standard and the prediction */
+	public Network loadNetwork() {
+
+		return new Network(GoldStandard.load(goldFile_), predictionFile_, threads);
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public String getGoldFile() { return goldFile_; }
+	public String getPredictionFile() { return predictionFile_; }
+}
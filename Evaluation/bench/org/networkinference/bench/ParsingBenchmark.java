@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.networkinference.eval.FileParser;
+import org.networkinference.eval.GoldStandard;
+import org.networkinference.eval.Network;
+import org.networkinference.eval.Prediction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of reading the gold standard and the prediction files: the generic
+ * FileParser, GoldStandard.load() and the (parallel) loading of the prediction.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx4g" })
+public class ParsingBenchmark {
+
+	/** The gold standard, loaded once for the benchmark of the prediction */
+	@State(Scope.Benchmark)
+	public static class LoadedGoldStandard {
+
+		/** The gold standard */
+		GoldStandard gold_ = null;
+
+		/** Load the gold standard */
+		@Setup
+		public void setup(BenchmarkData data) {
+			gold_ = GoldStandard.load(data.getGoldFile());
+		}
+	}
+
+
+	// ============================================================================
+	// BENCHMARKS
+
+	/** Split all lines of the gold standard with FileParser */
+	@Benchmark
+	public ArrayList<String[]> fileParser(BenchmarkData data) {
+
+		FileParser parser = new FileParser(data.getGoldFile());
+		ArrayList<String[]> lines = parser.readAll();
+		parser.close();
+		return lines;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gold standard (Network.loadGoldStandard()) */
+	@Benchmark
+	public GoldStandard loadGoldStandard(BenchmarkData data) {
+
+		return GoldStandard.load(data.getGoldFile());
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the prediction for a loaded gold standard (Network.loadPrediction()) */
+	@Benchmark
+	public Prediction loadPrediction(BenchmarkData data, LoadedGoldStandard gold) {
+
+		return new Network(gold.gold_, data.getPredictionFile(), data.threads).getPrediction();
+	}
+}
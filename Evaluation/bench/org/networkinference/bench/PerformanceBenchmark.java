@@ -0,0 +1,94 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.networkinference.eval.ErrorMatrices;
+import org.networkinference.eval.Network;
+import org.networkinference.eval.Performance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of the evaluation of a loaded network: the PR/ROC curves with AUPR and
+ * AUROC (Performance.assess(), i.e., computeCurves() and computeAreaUnderCurves()),
+ * and the counts of transitive and co-regulation negatives (countExpectedErrors()).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx4g" })
+public class PerformanceBenchmark {
+
+	/** The network, loaded once */
+	@State(Scope.Benchmark)
+	public static class LoadedNetwork {
+
+		/** The gold standard and the prediction */
+		Network network_ = null;
+
+		/** Load the network */
+		@Setup
+		public void setup(BenchmarkData data) {
+			network_ = data.loadNetwork();
+		}
+	}
+
+
+	// ============================================================================
+	// BENCHMARKS
+
+	/** Compute the PR/ROC curves, AUPR and AUROC */
+	@Benchmark
+	public double computeCurves(LoadedNetwork loaded) {
+
+		Performance judge = new Performance(loaded.network_);
+		judge.assess();
+		return judge.getAUPR() + judge.getAUROC();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the error matrices and count the transitive and co-regulation negatives */
+	@Benchmark
+	public long countExpectedErrors(BenchmarkData data, LoadedNetwork loaded) {
+
+		ErrorMatrices errors = new ErrorMatrices(loaded.network_.getGoldStandard(), data.threads);
+		return errors.countTransitive() + (long) errors.countCoregulation();
+	}
+}
@@ -0,0 +1,294 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Random;
+
+
+/**
+ * Deterministic generator of synthetic gold standards and ranked predictions
+ * for the benchmarks. The gold standard is scale-free: the regulators of the
+ * edges are drawn by preferential attachment (heavy-tailed out-degrees, a few
+ * hubs as in real regulatory networks), the targets uniformly (every gene has
+ * at least one regulator). The prediction is a ranked list of distinct
+ * regulator-gene pairs where the gold standard edges are enriched at the top,
+ * with decreasing scores. The same sizes and seed always give the same files.
+ *
+ * Usage: java org.networkinference.bench.SyntheticNetwork <dir> <ecoli|yeast|human> [seed]
+ *    or: java org.networkinference.bench.SyntheticNetwork <dir> <TFs> <genes> <edges> <predictions> [seed]
+ */
+public class SyntheticNetwork {
+
+	/** The number of regulators */
+	private int numTFs_ = -1;
+	/** The number of genes (the regulators are the first genes) */
+	private int numGenes_ = -1;
+	/** The number of gold standard edges */
+	private int numEdges_ = -1;
+	/** The number of predicted edges */
+	private int numPredictions_ = -1;
+	/** The seed of the random generator */
+	private long seed_ = 42;
+
+	/** The regulators of the gold standard edges */
+	private int[] edgeTFs_ = null;
+	/** The targets of the gold standard edges */
+	private int[] edgeTargets_ = null;
+	/** Set bits are the gold standard edges (TF*numGenes_ + target) */
+	private BitSet gold_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Main function, write the gold standard and the prediction to the given directory */
+	public static void main(String[] args) {
+
+		if (args.length != 2 && args.length != 3 && args.length != 6 && args.length != 7) {
+			System.out.println("USAGE");
+			System.out.println("   java org.networkinference.bench.SyntheticNetwork <dir> <ecoli|yeast|human> [seed]");
+			System.out.println("   java org.networkinference.bench.SyntheticNetwork <dir> <TFs> <genes> <edges> <predictions> [seed]");
+			System.exit(-1);
+		}
+
+		SyntheticNetwork network = null;
+		if (args.length <= 3) {
+			long seed = (args.length == 3) ? Long.parseLong(args[2]) : 42;
+			network = fromPreset(args[1], seed);
+		} else {
+			long seed = (args.length == 7) ? Long.parseLong(args[6]) : 42;
+			network = new SyntheticNetwork(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+					Integer.parseInt(args[4]), Integer.parseInt(args[5]), seed);
+		}
+		File[] files = network.write(args[0]);
+		System.out.println("Gold standard: " + files[0]);
+		System.out.println("Prediction: " + files[1]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor */
+	public SyntheticNetwork(int numTFs, int numGenes, int numEdges, int numPredictions, long seed) {
+
+		if (numTFs < 1 || numGenes <= numTFs)
+			throw new IllegalArgumentException("There must be at least one regulator and more genes than regulators");
+		if (numEdges < numGenes || numEdges > (long) numTFs*(numGenes - 1) / 2)
+			throw new IllegalArgumentException("The number of edges must be at least the number of genes and at most half of the possible edges");
+		if (numPredictions < numEdges || numPredictions > (long) numTFs*(numGenes - 1) / 2)
+			throw new IllegalArgumentException("The number of predictions must be at least the number of edges and at most half of the possible edges");
+
+		numTFs_ = numTFs;
+		numGenes_ = numGenes;
+		numEdges_ = numEdges;
+		numPredictions_ = numPredictions;
+		seed_ = seed;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Return the generator with the sizes of the given organism: ecoli (300 TFs x 4,300
+	 * genes as the RegulonDB gold standard in data/), yeast (330 x 6,000) or human
+	 * (1,600 x 20,000)
+	 */
+	public static SyntheticNetwork fromPreset(String name, long seed) {
+
+		if (name.equals("ecoli"))
+			return new SyntheticNetwork(300, 4300, 6000, 100000, seed);
+		else if (name.equals("yeast"))
+			return new SyntheticNetwork(330, 6000, 12000, 500000, seed);
+		else if (name.equals("human"))
+			return new SyntheticNetwork(1600, 20000, 100000, 5000000, seed);
+		else
+			throw new IllegalArgumentException("Unknown preset '" + name + "' (use 'ecoli', 'yeast' or 'human')");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Write the gold standard and the prediction to dir (files that already exist are
+	 * not generated again), return the two files
+	 */
+	public File[] write(String dir) {
+
+		String name = String.format("synthetic_%d_%d_%d_%d_%d", numTFs_, numGenes_, numEdges_, numPredictions_, seed_);
+		File goldFile = new File(dir, name + "_gold.txt");
+		File predictionFile = new File(dir, name + "_pred.txt");
+		if (goldFile.isFile() && predictionFile.isFile())
+			return new File[] { goldFile, predictionFile };
+
+		try {
+			File directory = new File(dir);
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Cannot create directory " + dir);
+
+			generateGoldStandard();
+			writeGoldStandard(goldFile);
+			writePrediction(predictionFile);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new File[] { goldFile, predictionFile };
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Draw the gold standard edges */
+	private void generateGoldStandard() {
+
+		Random random = new Random(seed_);
+		edgeTFs_ = new int[numEdges_];
+		edgeTargets_ = new int[numEdges_];
+		gold_ = new BitSet(numTFs_*numGenes_);
+
+		// Preferential attachment: each TF is listed once plus once per edge, so a
+		// uniform draw from the list picks a TF with probability ~ (out-degree + 1)
+		int[] attachment = new int[numTFs_ + numEdges_];
+		for (int TF=0; TF<numTFs_; TF++)
+			attachment[TF] = TF;
+		int attachmentSize = numTFs_;
+
+		int numEdges = 0;
+		while (numEdges < numEdges_) {
+			int TF = attachment[random.nextInt(attachmentSize)];
+			// The first edges give every gene a regulator, the others have random targets
+			int target = (numEdges < numGenes_) ? numEdges : random.nextInt(numGenes_);
+			if (target == TF) {
+				if (numEdges >= numGenes_)
+					continue;
+				// The first edge of a regulator cannot be a self-loop, use the next regulator
+				TF = (TF + 1) % numTFs_;
+			}
+			int edge = TF*numGenes_ + target;
+			if (gold_.get(edge))
+				continue;
+
+			gold_.set(edge);
+			edgeTFs_[numEdges] = TF;
+			edgeTargets_[numEdges] = target;
+			attachment[attachmentSize++] = TF;
+			numEdges++;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the gold standard in DREAM5 format, in random order */
+	private void writeGoldStandard(File file) throws IOException {
+
+		Random random = new Random(seed_ + 1);
+		int[] order = new int[numEdges_];
+		for (int i=0; i<numEdges_; i++)
+			order[i] = i;
+		for (int i=numEdges_-1; i>0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			for (int i=0; i<numEdges_; i++) {
+				int k = order[i];
+				writer.write(getGeneName(edgeTFs_[k]) + "\t" + getGeneName(edgeTargets_[k]) + "\t1\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Write the ranked prediction. The k-th edge is a gold standard edge with probability
+	 * 0.5*exp(-k/numEdges_) and a random regulator-gene pair otherwise (no duplicates,
+	 * no self-loops). The scores decrease from 1 to 0 with the rank.
+	 */
+	private void writePrediction(File file) throws IOException {
+
+		Random random = new Random(seed_ + 2);
+		BitSet predicted = new BitSet(numTFs_*numGenes_);
+
+		// The gold standard edges in random order, the next one is drawn when needed
+		int[] order = new int[numEdges_];
+		for (int i=0; i<numEdges_; i++)
+			order[i] = i;
+		int numRemaining = numEdges_;
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16);
+		try {
+			for (int k=0; k<numPredictions_; k++) {
+				int TF;
+				int target;
+				if (numRemaining > 0 && random.nextDouble() < 0.5*Math.exp(-k/(double)numEdges_)) {
+					int i = random.nextInt(numRemaining);
+					int edge = order[i];
+					order[i] = order[--numRemaining];
+					TF = edgeTFs_[edge];
+					target = edgeTargets_[edge];
+					if (predicted.get(TF*numGenes_ + target)) {
+						k--;
+						continue;
+					}
+				} else {
+					do {
+						TF = random.nextInt(numTFs_);
+						target = random.nextInt(numGenes_);
+					} while (TF == target || predicted.get(TF*numGenes_ + target));
+				}
+				predicted.set(TF*numGenes_ + target);
+
+				double score = 1 - k/(double)numPredictions_;
+				writer.write(getGeneName(TF) + "\t" + getGeneName(target) + "\t" + String.format(Locale.US, "%.6f", score) + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The name of the gene (the regulators are named TF1, TF2, ..., the other genes G1, G2, ...) */
+	private String getGeneName(int gene) {
+
+		return (gene < numTFs_) ? "TF" + (gene + 1) : "G" + (gene - numTFs_ + 1);
+	}
+}
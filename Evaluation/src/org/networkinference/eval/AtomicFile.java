@@ -0,0 +1,77 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+
+/**
+ * Write a binary cache file (gold standard snapshots, null distributions, expression
+ * caches). The content is written to a new temporary file in the same directory,
+ * which is then moved atomically onto the target. Concurrent runs (also of other
+ * JVMs) thus never read, map or overwrite a partial file, and a failed write leaves
+ * the previous file untouched.
+ */
+public class AtomicFile {
+
+	/** Writes the content of the file to the given channel */
+	public interface Content {
+		public void write(FileChannel channel) throws IOException;
+	}
+	
+	
+	// ============================================================================
+	// PUBLIC METHODS
+	
+	/** Write the given content to the target file, the directory is created if needed */
+	public static void write(File target, Content content) throws IOException {
+
+		File dir = target.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create directory " + dir);
+
+		File temp = File.createTempFile(target.getName(), ".tmp", dir);
+		try {
+			RandomAccessFile file = new RandomAccessFile(temp, "rw");
+			try {
+				content.write(file.getChannel());
+			} finally {
+				file.close();
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+		} finally {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+}
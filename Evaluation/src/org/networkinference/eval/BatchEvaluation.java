@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Evaluate many prediction files against one gold standard. The gold standard
+ * is loaded once and shared (it is immutable), the prediction files are
+ * evaluated concurrently on a bounded thread pool, and the AUCs of all files
+ * are written to one table.
+ */
+public class BatchEvaluation {
+
+	/** The shared gold standard */
+	private GoldStandard gold_ = null;
+	/** The prediction files */
+	private ArrayList<String> predictionFiles_ = null;
+	/** The number of threads (the number of files evaluated at the same time) */
+	private int numThreads_ = 1;
+	/** Set true to rank the edges of each file by score (see Prediction.sortByScore()) */
+	private boolean rankByScore_ = false;
+	/** The number of edges to keep per file in top-K mode (0 to keep all edges) */
+	private int topK_ = 0;
+
+	/** AUPR of each file (NaN if the evaluation failed) */
+	private double[] AUPR_ = null;
+	/** AUROC of each file (NaN if the evaluation failed) */
+	private double[] AUROC_ = null;
+	/** The number of retained predicted edges of each file */
+	private int[] numPredictedEdges_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public BatchEvaluation(GoldStandard gold, ArrayList<String> predictionFiles, int numThreads) {
+
+		gold_ = gold;
+		predictionFiles_ = predictionFiles;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Return the prediction files for the given patterns. A pattern is either a file,
+	 * a glob in the file name part (e.g., "predictions/*.txt"), or "@list.txt" for a
+	 * file listing one prediction file per line. Files matching a glob are sorted.
+	 */
+	public static ArrayList<String> expandFiles(List<?> patterns) {
+
+		ArrayList<String> files = new ArrayList<String>();
+		try {
+			for (Object object : patterns) {
+				String pattern = object.toString();
+				if (pattern.startsWith("@")) {
+					for (String line : Files.readAllLines(Paths.get(pattern.substring(1))))
+						if (line.trim().length() > 0)
+							files.add(line.trim());
+
+				} else if (pattern.matches(".*[*?\\[{].*")) {
+					Path path = Paths.get(pattern);
+					Path dir = (path.getParent() == null) ? Paths.get(".") : path.getParent();
+					ArrayList<String> matches = new ArrayList<String>();
+					DirectoryStream<Path> stream = Files.newDirectoryStream(dir, path.getFileName().toString());
+					for (Path match : stream)
+						matches.add((path.getParent() == null) ? match.getFileName().toString() : match.toString());
+					stream.close();
+					Collections.sort(matches);
+					files.addAll(matches);
+
+				} else {
+					files.add(pattern);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot list the prediction files: " + e.getMessage(), e);
+		}
+
+		if (files.isEmpty())
+			throw new IllegalArgumentException("No prediction files found");
+
+		return files;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Evaluate all files, the files are loaded and evaluated by numThreads_ threads */
+	public void run() {
+
+		int numFiles = predictionFiles_.size();
+		AUPR_ = new double[numFiles];
+		AUROC_ = new double[numFiles];
+		numPredictedEdges_ = new int[numFiles];
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads_);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i=0; i<numFiles; i++) {
+			final int index = i;
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					evaluate(index);
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Batch evaluation failed: " + e.getCause(), e.getCause());
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the table with the AUCs of all files */
+	public void output(String filename) {
+
+		FileExport writer = new FileExport(filename);
+		writer.println("prediction\tAUPR\tAUROC\tnumPredictedEdges");
+		for (int i=0; i<predictionFiles_.size(); i++)
+			writer.println(predictionFiles_.get(i) + "\t" + AUPR_[i] + "\t" + AUROC_[i] + "\t" + numPredictedEdges_[i]);
+		
+		// Expected performance of a random prediction
+		double AUPR_rand = gold_.getNumListedEdges()/(double)(gold_.getNumRegulators()*(gold_.getNumGenes() - 1));
+		writer.println("random\t" + AUPR_rand + "\t0.5\t0");
+		writer.close();
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Evaluate the file with the given index (a failed file is reported and gets NaN AUCs) */
+	private void evaluate(int index) {
+
+		try {
+			// The prediction is loaded by this thread, the pool already runs one file per thread
+			Network network = new Network(gold_, predictionFiles_.get(index), 1, topK_);
+			if (rankByScore_ && topK_ == 0)
+				network.getPrediction().sortByScore(1);
+			Performance judge = new Performance(network);
+			judge.assess();
+
+			AUPR_[index] = judge.getAUPR();
+			AUROC_[index] = judge.getAUROC();
+			numPredictedEdges_[index] = network.getPrediction().size();
+
+		} catch (RuntimeException e) {
+			System.err.println("Error evaluating " + predictionFiles_.get(index) + ": " + e.getMessage());
+			AUPR_[index] = Double.NaN;
+			AUROC_[index] = Double.NaN;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public void setRankByScore(boolean b) { rankByScore_ = b; }
+	public void setTopK(int K) { topK_ = K; }
+
+	public double[] getAUPR() { return AUPR_; }
+	public double[] getAUROC() { return AUROC_; }
+}
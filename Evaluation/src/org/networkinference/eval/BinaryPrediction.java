@@ -0,0 +1,280 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary prediction files, read by memory-mapping. The file starts with a header
+ * and a dictionary of gene names, followed by the edges in column blocks:
+ *
+ *   int magic, int version, int blockSize, int numGenes, long numEdges
+ *   int[numGenes+1] name offsets, byte[] names (UTF-8), padded to 4 bytes
+ *   for each block of blockSize edges (the last block can be shorter):
+ *     int[n] regulators, int[n] targets, float[n] scores
+ *
+ * The gene ids of the edges are indexes in the dictionary, and the edges are in
+ * the order of the ranking (as the lines of a text file). All numbers are
+ * little-endian, the native order of common platforms, so the int and float
+ * views of the mapped blocks read the values without swapping their bytes. The
+ * files are written by BinaryPredictionWriter, either directly by an inference
+ * method or by convert() from a prediction in text format.
+ *
+ * The blocks are mapped one at a time and read directly from the mapping (see
+ * getBlock()), the ids are translated to the gold standard with the table of
+ * getGeneIds(). There is no parsing and no limit on the size of the file.
+ */
+public class BinaryPrediction {
+
+	/** The first bytes of a binary prediction */
+	public static final int MAGIC = 0x5042494E; // "NIBP" read as a little-endian int
+	/** The version of the format (version 1 was big-endian) */
+	public static final int VERSION = 2;
+	/** The size of the fixed part of the header */
+	static final int HEADER_SIZE = 24;
+	/** The position of the number of edges in the header */
+	static final int NUM_EDGES_POSITION = 16;
+
+	/** The file */
+	private String filename_ = null;
+	/** The file channel */
+	private FileChannel channel_ = null;
+	/** The number of edges per block */
+	private int blockSize_ = 0;
+	/** The number of edges */
+	private long numEdges_ = 0;
+	/** The gene names */
+	private SymbolTable genes_ = null;
+	/** The position of the first block in the file */
+	private long dataStart_ = 0;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, reads the header and the dictionary */
+	public BinaryPrediction(String filename) {
+
+		filename_ = filename;
+		try {
+			channel_ = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			ByteBuffer header = channel_.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel_.size(), HEADER_SIZE));
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.limit() < HEADER_SIZE || header.getInt() != MAGIC)
+				throw new RuntimeException("Not a binary prediction file: " + filename);
+			if (header.getInt() != VERSION)
+				throw new RuntimeException("Unsupported version of the binary prediction file: " + filename);
+			blockSize_ = header.getInt();
+			int numGenes = header.getInt();
+			numEdges_ = header.getLong();
+			if (blockSize_ < 1 || numGenes < 0 || numEdges_ < 0)
+				throw new RuntimeException("Corrupt header of the binary prediction file: " + filename);
+
+			// The dictionary
+			MappedByteBuffer buffer = channel_.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 4L*(numGenes + 1));
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int[] offsets = new int[numGenes + 1];
+			buffer.asIntBuffer().get(offsets);
+			long poolStart = HEADER_SIZE + 4L*(numGenes + 1);
+			ByteBuffer pool = channel_.map(FileChannel.MapMode.READ_ONLY, poolStart, offsets[numGenes]);
+			genes_ = new SymbolTable();
+			for (int i=0; i<numGenes; i++)
+				if (genes_.add(pool, offsets[i], offsets[i+1]) != i)
+					throw new RuntimeException("Duplicate gene name in the binary prediction file: " + genes_.getName(i));
+			dataStart_ = (poolStart + offsets[numGenes] + 3) & ~3L;
+
+			if (channel_.size() != dataStart_ + 12*numEdges_)
+				throw new RuntimeException("Truncated binary prediction file: " + filename + " (expected " + numEdges_ + " edges)");
+
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the file starts with the magic number of binary predictions */
+	public static boolean isBinary(String filename) {
+
+		try {
+			FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			try {
+				ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				while (magic.hasRemaining() && channel.read(magic) > 0);
+				return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// Reported when the file is opened by the parser
+			return false;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Convert a prediction in text format (three columns, can be gzip-compressed) to the binary format using the given number of threads */
+	public static void convert(String textFile, String binaryFile, int numThreads) {
+
+		// First pass: the dictionary
+		SymbolTable genes = new SymbolTable();
+		MappedFileParser parser = new MappedFileParser(textFile, numThreads);
+		try {
+			while (parser.nextLine()) {
+				if (parser.getNumColumns() != 3)
+					throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
+				parser.add(0, genes);
+				parser.add(1, genes);
+			}
+		} finally {
+			parser.close();
+		}
+
+		// Second pass: the edges
+		BinaryPredictionWriter writer = new BinaryPredictionWriter(binaryFile, genes);
+		parser = new MappedFileParser(textFile, numThreads);
+		try {
+			while (parser.nextLine())
+				writer.add(parser.find(0, genes), parser.find(1, genes), parser.parseDouble(2));
+			writer.close();
+		} finally {
+			parser.close();
+		}
+		Evaluation.println("Wrote " + writer.getNumEdges() + " edges between " + genes.size() + " genes to " + binaryFile);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of each gene of the file in the given symbol table (-1 if it is not in the table) */
+	public int[] getGeneIds(SymbolTable symbols) {
+
+		ByteBuffer pool = ByteBuffer.wrap(genes_.getPool());
+		int[] offsets = genes_.getOffsets();
+		int[] ids = new int[genes_.size()];
+		for (int i=0; i<ids.length; i++)
+			ids[i] = symbols.find(pool, offsets[i], offsets[i+1]);
+		return ids;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Map the given block (thread-safe) */
+	public Block getBlock(int index) {
+
+		if (index < 0 || index >= getNumBlocks())
+			throw new IndexOutOfBoundsException("Block " + index + " of " + getNumBlocks());
+		int size = (int) Math.min(blockSize_, numEdges_ - (long) index*blockSize_);
+		try {
+			MappedByteBuffer buffer = channel_.map(FileChannel.MapMode.READ_ONLY, dataStart_ + 12L*index*blockSize_, 12L*size);
+			return new Block(buffer, size, genes_.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename_ + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Close the file, the mapped blocks stay valid */
+	public void close() {
+
+		try {
+			channel_.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot close " + filename_ + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ============================================================================
+	// BLOCK
+
+	/** A block of edges, the columns are views of the mapped file */
+	public static class Block {
+
+		/** The regulators */
+		private IntBuffer regulators_ = null;
+		/** The targets */
+		private IntBuffer targets_ = null;
+		/** The scores */
+		private FloatBuffer scores_ = null;
+		/** The number of edges */
+		private int size_ = 0;
+		/** The number of genes of the dictionary */
+		private int numGenes_ = 0;
+
+		/** Constructor */
+		private Block(ByteBuffer buffer, int size, int numGenes) {
+
+			size_ = size;
+			numGenes_ = numGenes;
+			// A slice is big-endian, its order is set again
+			regulators_ = buffer.position(0).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			targets_ = buffer.position(4*size).slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			scores_ = buffer.position(8*size).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		}
+
+		public int size() { return size_; }
+		public float getScore(int k) { return scores_.get(k); }
+
+		/** The regulator of edge k (index in the dictionary) */
+		public int getRegulator(int k) { return check(regulators_.get(k)); }
+		/** The target of edge k (index in the dictionary) */
+		public int getTarget(int k) { return check(targets_.get(k)); }
+
+		/** Check that the gene id is in the dictionary */
+		private int check(int id) {
+			if (id < 0 || id >= numGenes_)
+				throw new RuntimeException("Corrupt binary prediction file: gene id " + id + " is not in the dictionary");
+			return id;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public String getFilename() { return filename_; }
+	public long getNumEdges() { return numEdges_; }
+	public int getBlockSize() { return blockSize_; }
+	public int getNumBlocks() { return (int) ((numEdges_ + blockSize_ - 1) / blockSize_); }
+
+	public int getNumGenes() { return genes_.size(); }
+	public String getGeneName(int id) { return genes_.getName(id); }
+}
@@ -0,0 +1,244 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Write a prediction in the binary format of BinaryPrediction. The gene names
+ * are given when the file is created, then the edges are added in the order of
+ * the ranking with the ids of the genes. The edges are buffered and written one
+ * column block at a time, and the number of edges is set in the header when
+ * the writer is closed. Inference methods can use this class to write their
+ * predictions directly, without formatting the scores as text:
+ *
+ *   BinaryPredictionWriter writer = new BinaryPredictionWriter("pred.bin", geneNames);
+ *   writer.add(regulator, target, score);
+ *   writer.close();
+ */
+public class BinaryPredictionWriter {
+
+	/** The default number of edges per block */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	/** The file */
+	private String filename_ = null;
+	/** The file channel */
+	private FileChannel channel_ = null;
+	/** The little-endian buffer of the bytes to write */
+	private ByteBuffer buffer_ = null;
+	/** The number of genes of the dictionary */
+	private int numGenes_ = 0;
+	/** The number of edges written or buffered */
+	private long numEdges_ = 0;
+
+	/** The regulators of the current block */
+	private int[] regulators_ = null;
+	/** The targets of the current block */
+	private int[] targets_ = null;
+	/** The scores of the current block */
+	private float[] scores_ = null;
+	/** The number of edges in the current block */
+	private int size_ = 0;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the ids of the genes are their indexes in geneNames */
+	public BinaryPredictionWriter(String filename, String[] geneNames) {
+
+		this(filename, toSymbolTable(geneNames), DEFAULT_BLOCK_SIZE);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor, the ids of the genes are their ids in the symbol table */
+	public BinaryPredictionWriter(String filename, SymbolTable genes) {
+
+		this(filename, genes, DEFAULT_BLOCK_SIZE);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor with the number of edges per block */
+	public BinaryPredictionWriter(String filename, SymbolTable genes, int blockSize) {
+
+		if (blockSize < 1)
+			throw new IllegalArgumentException("The block size must be at least 1");
+		filename_ = filename;
+		numGenes_ = genes.size();
+		regulators_ = new int[blockSize];
+		targets_ = new int[blockSize];
+		scores_ = new float[blockSize];
+
+		try {
+			channel_ = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			buffer_ = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer_.putInt(BinaryPrediction.MAGIC);
+			buffer_.putInt(BinaryPrediction.VERSION);
+			buffer_.putInt(blockSize);
+			buffer_.putInt(numGenes_);
+			buffer_.putLong(0); // the number of edges, set by close()
+
+			// The dictionary, padded to 4 bytes
+			int[] offsets = genes.getOffsets();
+			writeInts(offsets, numGenes_ + 1);
+			byte[] pool = genes.getPool();
+			for (int i=0; i<offsets[numGenes_]; ) {
+				if (!buffer_.hasRemaining())
+					flush();
+				int n = Math.min(offsets[numGenes_] - i, buffer_.remaining());
+				buffer_.put(pool, i, n);
+				i += n;
+			}
+			for (int i=offsets[numGenes_]; i%4 != 0; i++) {
+				if (!buffer_.hasRemaining())
+					flush();
+				buffer_.put((byte) 0);
+			}
+
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write " + filename + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the next edge of the ranking (the score is stored as float) */
+	public void add(int regulator, int target, double score) {
+
+		if (regulator < 0 || regulator >= numGenes_ || target < 0 || target >= numGenes_)
+			throw new IllegalArgumentException("Gene id out of range (" + regulator + ", " + target + "), the dictionary has " + numGenes_ + " genes");
+
+		regulators_[size_] = regulator;
+		targets_[size_] = target;
+		scores_[size_] = (float) score;
+		size_++;
+		numEdges_++;
+		if (size_ == regulators_.length)
+			writeBlock();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the last block and the number of edges */
+	public void close() {
+
+		if (size_ > 0)
+			writeBlock();
+		try {
+			flush();
+			buffer_.putLong(numEdges_).flip();
+			while (buffer_.hasRemaining())
+				channel_.write(buffer_, BinaryPrediction.NUM_EDGES_POSITION + buffer_.position());
+			channel_.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write " + filename_ + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Write the buffered edges as a column block */
+	private void writeBlock() {
+
+		writeInts(regulators_, size_);
+		writeInts(targets_, size_);
+		for (int k=0; k<size_; ) {
+			if (buffer_.remaining() < 4)
+				flush();
+			int n = Math.min(size_ - k, buffer_.remaining()/4);
+			buffer_.asFloatBuffer().put(scores_, k, n);
+			buffer_.position(buffer_.position() + 4*n);
+			k += n;
+		}
+		size_ = 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Put the first n values of the array in bulk, the buffer is flushed when it is full */
+	private void writeInts(int[] values, int n) {
+
+		for (int k=0; k<n; ) {
+			if (buffer_.remaining() < 4)
+				flush();
+			int m = Math.min(n - k, buffer_.remaining()/4);
+			buffer_.asIntBuffer().put(values, k, m);
+			buffer_.position(buffer_.position() + 4*m);
+			k += m;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the content of the buffer to the file and clear it */
+	private void flush() {
+
+		try {
+			buffer_.flip();
+			while (buffer_.hasRemaining())
+				channel_.write(buffer_);
+			buffer_.clear();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write " + filename_ + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return a symbol table with the given names (ids in the order of the array) */
+	private static SymbolTable toSymbolTable(String[] names) {
+
+		SymbolTable genes = new SymbolTable();
+		for (int i=0; i<names.length; i++)
+			if (genes.add(names[i]) != i)
+				throw new IllegalArgumentException("Duplicate gene name: " + names[i]);
+		return genes;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public long getNumEdges() { return numEdges_; }
+}
@@ -0,0 +1,354 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Bootstrap confidence intervals for AUPR and AUROC. The prediction is parsed
+ * once and reduced to primitive arrays (the regulator of each predicted edge
+ * and its index in the gold standard), each resample then only reweights the
+ * ranks and recomputes the AUCs with Curves. Two resampling schemes are
+ * available:
+ *
+ * - REGULATORS: the regulators are drawn with replacement. A regulator drawn
+ *   c times contributes c copies of all its possible edges, gold standard edges
+ *   and predicted edges.
+ * - EDGES: the gold standard edges are drawn with replacement. A gold standard
+ *   edge drawn c times counts as c true positives, the negatives are unchanged.
+ *
+ * If the prediction is ranked by score (see Prediction.sortByScore()), edges
+ * with equal scores are tied as in Performance.addTiedBlocks(): each rank of a
+ * resampled block of m tied edges with t true positives gets the expected mass
+ * t/m of true positives, so the intervals do not depend on the order of the
+ * tied edges in the file.
+ *
+ * The resamples run in parallel on a fork-join pool. Each resample has its own
+ * random generator seeded from the base seed and the index of the resample, so
+ * the results do not depend on the number of threads.
+ */
+public class Bootstrap {
+
+	/** Resample the regulators */
+	public static final int REGULATORS = 0;
+	/** Resample the gold standard edges */
+	public static final int EDGES = 1;
+
+	/** The number of resamples per task of the fork-join pool */
+	private static final int RESAMPLES_PER_TASK = 16;
+
+	/** The gold standard */
+	private GoldStandard gold_ = null;
+	/** The number of predicted edges */
+	private int numPredictedEdges_ = 0;
+	/** The row of the regulator of each predicted edge (see GoldStandard.getRegulatorIndex()) */
+	private int[] regulatorRows_ = null;
+	/** The index of each predicted edge in the gold standard (GoldStandard.getEdgeIndex()), -1 for false positives */
+	private int[] goldEdges_ = null;
+	/** The number of gold standard edges of each regulator (row) */
+	private int[] regulatorDegrees_ = null;
+	/** The end (exclusive) of the block of tied edges that starts at each edge, null if there are no ties */
+	private int[] tieBlockEnds_ = null;
+
+	/** The resampling scheme (REGULATORS or EDGES) */
+	private int mode_ = REGULATORS;
+	/** The number of resamples */
+	private int numResamples_ = 1000;
+	/** The base seed */
+	private long seed_ = 42;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** AUPR of each resample */
+	private double[] AUPR_ = null;
+	/** AUROC of each resample */
+	private double[] AUROC_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public Bootstrap(GoldStandard gold, Prediction prediction, int mode, int numResamples, long seed, int numThreads) {
+
+		gold_ = gold;
+		mode_ = mode;
+		numResamples_ = numResamples;
+		seed_ = seed;
+		numThreads_ = Math.max(1, numThreads);
+
+		// Primitive arrays of the prediction
+		numPredictedEdges_ = prediction.size();
+		regulatorRows_ = new int[numPredictedEdges_];
+		goldEdges_ = new int[numPredictedEdges_];
+		for (int k=0; k<numPredictedEdges_; k++) {
+			regulatorRows_[k] = gold.getRegulatorIndex(prediction.getRegulator(k));
+			goldEdges_[k] = gold.getEdgeIndex(prediction.getRegulator(k), prediction.getTarget(k));
+		}
+
+		if (prediction.isRankedByScore()) {
+			double[] scores = prediction.getScores();
+			tieBlockEnds_ = new int[numPredictedEdges_];
+			for (int start=0, end=0; start<numPredictedEdges_; start=end) {
+				end = start + 1;
+				while (end < numPredictedEdges_ && Double.compare(scores[end], scores[start]) == 0)
+					end++;
+				tieBlockEnds_[start] = end;
+			}
+		}
+
+		int[] offsets = gold.getTargetOffsets();
+		int[] regulatorIds = gold.getRegulatorIds();
+		regulatorDegrees_ = new int[regulatorIds.length];
+		for (int row=0; row<regulatorIds.length; row++)
+			regulatorDegrees_[row] = offsets[regulatorIds[row]+1] - offsets[regulatorIds[row]];
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the AUCs of all resamples */
+	public void run() {
+
+		AUPR_ = new double[numResamples_];
+		AUROC_ = new double[numResamples_];
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			pool.invoke(new ResampleTask(0, numResamples_));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Display the confidence intervals and write them to a file */
+	public void output(double confidence, String filename) {
+
+		double[] AUPR = confidenceInterval(AUPR_, confidence);
+		double[] AUROC = confidenceInterval(AUROC_, confidence);
+		String header = "\tmean\tstd\tCI_" + (100*confidence) + "%_lower\tCI_" + (100*confidence) + "%_upper";
+
+		Evaluation.println("");
+		Evaluation.println("BOOTSTRAP (" + numResamples_ + " resamples of the " + (mode_ == REGULATORS ? "regulators" : "gold standard edges") + ")");
+		Evaluation.println(header);
+		Evaluation.println("AUPR:\t" + AUPR[0] + "\t" + AUPR[1] + "\t" + AUPR[2] + "\t" + AUPR[3]);
+		Evaluation.println("AUROC:\t" + AUROC[0] + "\t" + AUROC[1] + "\t" + AUROC[2] + "\t" + AUROC[3]);
+		Evaluation.println("");
+
+		FileExport writer = new FileExport(filename);
+		writer.println(header);
+		writer.println("AUPR\t" + AUPR[0] + "\t" + AUPR[1] + "\t" + AUPR[2] + "\t" + AUPR[3]);
+		writer.println("AUROC\t" + AUROC[0] + "\t" + AUROC[1] + "\t" + AUROC[2] + "\t" + AUROC[3]);
+		writer.close();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return mean, standard deviation and the percentile interval with the given confidence (NaNs are ignored) */
+	public static double[] confidenceInterval(double[] values, double confidence) {
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted); // NaNs are sorted to the end
+		int n = sorted.length;
+		while (n > 0 && Double.isNaN(sorted[n-1]))
+			n--;
+		if (n == 0)
+			return new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+
+		double mean = 0;
+		for (int i=0; i<n; i++)
+			mean += sorted[i];
+		mean /= n;
+		double var = 0;
+		for (int i=0; i<n; i++)
+			var += (sorted[i] - mean)*(sorted[i] - mean);
+		double std = (n > 1) ? Math.sqrt(var / (n-1)) : 0;
+
+		double alpha = (1 - confidence) / 2;
+		return new double[] { mean, std, quantile(sorted, n, alpha), quantile(sorted, n, 1 - alpha) };
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Compute the AUCs of resample i, the counts array is used as work space */
+	private void resample(int i, int[] counts) {
+
+		// Deterministic seed for each resample (independent of the threads)
+		SplittableRandom random = new SplittableRandom(seed(seed_, i));
+		Arrays.fill(counts, 0);
+		int numGenes = gold_.getNumGenes();
+		Curves curves = null;
+
+		if (mode_ == REGULATORS) {
+			int numRegulators = counts.length;
+			for (int j=0; j<numRegulators; j++)
+				counts[random.nextInt(numRegulators)]++;
+
+			double numPositives = 0;
+			double numPossibleEdges = 0;
+			for (int row=0; row<numRegulators; row++) {
+				numPositives += counts[row]*(double) regulatorDegrees_[row];
+				numPossibleEdges += counts[row]*(double) (numGenes - 1);
+			}
+			if (numPositives == 0 || numPossibleEdges == numPositives) {
+				AUPR_[i] = AUROC_[i] = Double.NaN;
+				return;
+			}
+
+			// Each regulator drawn c times contributes c copies of each of its edges
+			curves = new Curves(numPositives, numPossibleEdges - numPositives, false);
+			for (int start=0, end=0; start<numPredictedEdges_; start=end) {
+				end = (tieBlockEnds_ == null) ? start + 1 : tieBlockEnds_[start];
+				long numEdges = 0;
+				long numTruePositives = 0;
+				for (int k=start; k<end; k++) {
+					int c = counts[regulatorRows_[k]];
+					numEdges += c;
+					if (goldEdges_[k] >= 0)
+						numTruePositives += c;
+				}
+				addBlock(curves, numEdges, numTruePositives);
+			}
+
+		} else {
+			int numGoldStandardEdges = counts.length;
+			for (int j=0; j<numGoldStandardEdges; j++)
+				counts[random.nextInt(numGoldStandardEdges)]++;
+
+			// Each gold standard edge drawn c times counts as c true positives
+			double numPossibleEdges = gold_.getNumRegulators() * (double) (numGenes - 1);
+			curves = new Curves(numGoldStandardEdges, numPossibleEdges - numGoldStandardEdges, false);
+			for (int start=0, end=0; start<numPredictedEdges_; start=end) {
+				end = (tieBlockEnds_ == null) ? start + 1 : tieBlockEnds_[start];
+				long numEdges = 0;
+				long numTruePositives = 0;
+				for (int k=start; k<end; k++) {
+					int c = (goldEdges_[k] < 0) ? 0 : counts[goldEdges_[k]];
+					numEdges += (goldEdges_[k] < 0) ? 1 : c;
+					numTruePositives += c;
+				}
+				addBlock(curves, numEdges, numTruePositives);
+			}
+		}
+
+		curves.finish();
+		AUPR_[i] = curves.getAUPR();
+		AUROC_[i] = curves.getAUROC();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add a resampled block of numEdges tied edges, each rank gets the expected mass of true positives */
+	private static void addBlock(Curves curves, long numEdges, long numTruePositives) {
+
+		if (numTruePositives == 0) {
+			for (long k=0; k<numEdges; k++)
+				curves.add(false);
+		} else if (numTruePositives == numEdges) {
+			for (long k=0; k<numEdges; k++)
+				curves.add(true);
+		} else {
+			double TP = numTruePositives / (double) numEdges;
+			for (long k=0; k<numEdges; k++)
+				curves.add(TP, 1 - TP);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Quantile of the first n sorted values (linear interpolation) */
+	private static double quantile(double[] sorted, int n, double q) {
+
+		double position = q * (n - 1);
+		int lower = (int) Math.floor(position);
+		int upper = Math.min(lower + 1, n - 1);
+		return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the seed of task i, the bits are mixed with the finalizer of MurmurHash3 */
+	static long seed(long baseSeed, int i) {
+
+		long z = baseSeed + i*0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+
+	// ============================================================================
+	// RESAMPLE TASK
+
+	/** Compute the resamples start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class ResampleTask extends RecursiveAction {
+
+		/** The first resample */
+		private int start_ = -1;
+		/** The last resample (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public ResampleTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Compute the resamples or split the range */
+		protected void compute() {
+
+			if (end_ - start_ <= RESAMPLES_PER_TASK) {
+				int[] counts = new int[mode_ == REGULATORS ? gold_.getNumRegulators() : gold_.getNumEdges()];
+				for (int i=start_; i<end_; i++)
+					resample(i, counts);
+			} else {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new ResampleTask(start_, middle), new ResampleTask(middle, end_));
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public double[] getAUPR() { return AUPR_; }
+	public double[] getAUROC() { return AUROC_; }
+}
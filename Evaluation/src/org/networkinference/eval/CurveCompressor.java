@@ -0,0 +1,177 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+
+
+/**
+ * Error-bounded downsampling of a curve given as a polyline (Ramer-Douglas-Peucker).
+ * The first and last points are always kept, and every dropped point is within
+ * the tolerance of the segment that replaces it.
+ */
+public class CurveCompressor {
+
+	/** The x-coordinates of the points */
+	private double[] x_ = null;
+	/** The y-coordinates of the points */
+	private double[] y_ = null;
+	/** The number of points */
+	private int numPoints_ = 0;
+
+	/** The tolerance that was used for the last call of simplify() */
+	private double tolerance_ = -1;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the first n points of x and y are the curve */
+	public CurveCompressor(double[] x, double[] y, int n) {
+
+		x_ = x;
+		y_ = y;
+		numPoints_ = n;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Return the indexes of the points that are kept with the given tolerance.
+	 * If more than maxPoints points are needed, the tolerance is doubled until
+	 * they fit (use getTolerance() to get the tolerance that was finally used).
+	 */
+	public int[] simplify(double tolerance, int maxPoints) {
+
+		if (maxPoints < 2)
+			throw new IllegalArgumentException("The maximum number of points of a curve must be at least 2");
+		if (!(tolerance > 0))
+			throw new IllegalArgumentException("The tolerance of a curve must be > 0");
+
+		tolerance_ = tolerance;
+		int[] kept = simplify(tolerance_);
+		while (kept.length > maxPoints) {
+			tolerance_ *= 2;
+			kept = simplify(tolerance_);
+		}
+		return kept;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the indexes of the points that are kept with the given tolerance (sorted) */
+	public int[] simplify(double tolerance) {
+
+		if (numPoints_ <= 2) {
+			int[] all = new int[numPoints_];
+			for (int i=0; i<numPoints_; i++)
+				all[i] = i;
+			return all;
+		}
+
+		boolean[] keep = new boolean[numPoints_];
+		keep[0] = true;
+		keep[numPoints_-1] = true;
+
+		// Explicit stack of segments [first, last] instead of recursion (the curves can have millions of points)
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = numPoints_ - 1;
+
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+
+			// Find the point farthest from the segment
+			double maxDistance = -1;
+			int farthest = -1;
+			for (int i=first+1; i<last; i++) {
+				double d = distance(i, first, last);
+				if (d > maxDistance) {
+					maxDistance = d;
+					farthest = i;
+				}
+			}
+
+			if (maxDistance > tolerance) {
+				keep[farthest] = true;
+				if (top + 4 > stack.length)
+					stack = Arrays.copyOf(stack, 2*stack.length);
+				if (farthest - first > 1) {
+					stack[top++] = first;
+					stack[top++] = farthest;
+				}
+				if (last - farthest > 1) {
+					stack[top++] = farthest;
+					stack[top++] = last;
+				}
+			}
+		}
+
+		int numKept = 0;
+		for (int i=0; i<numPoints_; i++)
+			if (keep[i])
+				numKept++;
+		int[] kept = new int[numKept];
+		for (int i=0, j=0; i<numPoints_; i++)
+			if (keep[i])
+				kept[j++] = i;
+
+		return kept;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Distance of point i to the segment between the points first and last */
+	private double distance(int i, int first, int last) {
+
+		double dx = x_[last] - x_[first];
+		double dy = y_[last] - y_[first];
+		double length2 = dx*dx + dy*dy;
+		double px = x_[i] - x_[first];
+		double py = y_[i] - y_[first];
+
+		if (length2 == 0)
+			return Math.sqrt(px*px + py*py);
+
+		// Projection onto the segment, clamped to its end points
+		double t = Math.max(0, Math.min(1, (px*dx + py*dy) / length2));
+		double ex = px - t*dx;
+		double ey = py - t*dy;
+		return Math.sqrt(ex*ex + ey*ey);
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public double getTolerance() { return tolerance_; }
+}
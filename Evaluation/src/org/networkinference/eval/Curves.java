@@ -0,0 +1,275 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+
+
+/**
+ * Accumulates PR and ROC curves rank by rank and computes the area under the
+ * curves on the fly. Only the points of the predicted ranks are stored (and only
+ * if requested), the remaining edges are a random tail with a constant discovery
+ * rate (see Performance) whose contribution to AUPR and AUROC is computed in
+ * closed form.
+ *
+ * Each rank adds a mass of true positives and false positives. For a normal
+ * prediction list this is either (1, 0) or (0, 1), but fractional values (e.g.,
+ * the expected TP of an edge in a block of tied scores) and weights (e.g., for
+ * bootstrap resamples) are supported as well.
+ */
+public class Curves {
+
+	/** Euler-Mascheroni constant */
+	private static final double EULER_GAMMA = 0.57721566490153286061;
+
+	/** The total number (or weight) of positives, i.e., gold standard edges */
+	private double numPositives_ = -1;
+	/** The total number (or weight) of negatives */
+	private double numNegatives_ = -1;
+
+	/** Set true to store the points of the predicted ranks */
+	private boolean recordPoints_ = false;
+	/** The number of true positives at each predicted rank (if recordPoints_) */
+	private double[] TP_ = null;
+	/** The number of false positives at each predicted rank (if recordPoints_) */
+	private double[] FP_ = null;
+	/** The number of predicted ranks */
+	private int numPoints_ = 0;
+
+	/** The number of true positives at the last rank */
+	private double TP_k_ = 0;
+	/** The number of false positives at the last rank */
+	private double FP_k_ = 0;
+
+	/** The number of ranks of the random tail */
+	private long tailLength_ = 0;
+	/** The probability that an edge of the random tail is a true positive */
+	private double prob_TP_ = -1;
+
+	/** Area under PR curve (not normalized) */
+	private double AUPR_ = 0;
+	/** Area under ROC curve */
+	private double AUROC_ = 0;
+	/** Set true when the tail has been added */
+	private boolean finished_ = false;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public Curves(double numPositives, double numNegatives, boolean recordPoints) {
+
+		if (numNegatives == 0)
+			throw new RuntimeException("There are no negatives in the gold standard!");
+
+		numPositives_ = numPositives;
+		numNegatives_ = numNegatives;
+		recordPoints_ = recordPoints;
+		if (recordPoints_) {
+			TP_ = new double[1024];
+			FP_ = new double[1024];
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the next rank, which is either a true positive or a false positive */
+	public void add(boolean truePositive) {
+
+		if (truePositive)
+			add(1, 0);
+		else
+			add(0, 1);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the next rank with the given mass of true positives and false positives */
+	public void add(double TP, double FP) {
+
+		double prevTP = TP_k_;
+		double prevFP = FP_k_;
+		TP_k_ += TP;
+		FP_k_ += FP;
+
+		// The trapezoid between the previous and this point (there is none for the first point)
+		if (prevTP + prevFP > 0)
+			addTrapezoids(prevTP, prevFP, TP_k_, FP_k_);
+
+		if (recordPoints_) {
+			if (numPoints_ == TP_.length) {
+				TP_ = Arrays.copyOf(TP_, 2*numPoints_);
+				FP_ = Arrays.copyOf(FP_, 2*numPoints_);
+			}
+			TP_[numPoints_] = TP_k_;
+			FP_[numPoints_] = FP_k_;
+		}
+		numPoints_++;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Add the given number of false positives at the next ranks in constant time.
+	 * The recall does not change, so they only add to the area under the ROC curve.
+	 * Not available when the points are recorded.
+	 */
+	public void addFalsePositives(int count) {
+
+		if (recordPoints_)
+			throw new RuntimeException("Runs of false positives cannot be added when the points are recorded");
+		if (count <= 0)
+			return;
+
+		// Each step adds a trapezoid of width 1/numNegatives_ and height recall (zero area at recall 0)
+		AUROC_ += count * (TP_k_ / numPositives_) / numNegatives_;
+		FP_k_ += count;
+		numPoints_ += count;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Extend the curves beyond the predicted ranks with a random discovery rate
+	 * for the remaining edges, if not all edges were included. The contributions
+	 * of the tail to the AUCs are computed in closed form, see tailAreaUnderPR().
+	 */
+	public void finish() {
+
+		if (finished_)
+			throw new RuntimeException("The curves have already been completed");
+		finished_ = true;
+
+		double remainingTP = numPositives_ - TP_k_;
+		double remainingFP = numNegatives_ - FP_k_;
+		tailLength_ = Math.round(remainingTP + remainingFP);
+		if (tailLength_ <= 0) {
+			tailLength_ = 0;
+			return;
+		}
+		prob_TP_ = remainingTP / tailLength_;
+		double prob_FP = 1 - prob_TP_;
+
+		// Without predictions, the first point of the tail is the first point of the curves
+		double startTP = TP_k_;
+		double startFP = FP_k_;
+		long numSteps = tailLength_;
+		if (startTP + startFP == 0) {
+			startTP = prob_TP_;
+			startFP = prob_FP;
+			numSteps--;
+		}
+
+		if (numSteps > 0) {
+			// The PR curve is nonlinear in the tail, the ROC curve is a straight line
+			AUPR_ += tailAreaUnderPR(startTP, startFP, numSteps);
+			AUROC_ += (1 - startFP/numNegatives_) * (startTP/numPositives_ + 1) / 2;
+		}
+		TP_k_ = numPositives_;
+		FP_k_ = numNegatives_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return H(x) = psi(x+1) + gamma, the harmonic number H_x for integer x, for any real x >= 0 */
+	public static double harmonic(double x) {
+
+		// Shift x up using H(x) = H(x+1) - 1/(x+1) until the asymptotic expansion is accurate
+		double result = 0;
+		while (x < 20) {
+			x += 1;
+			result -= 1/x;
+		}
+		double x2 = 1/(x*x);
+		return result + Math.log(x) + EULER_GAMMA + 0.5/x - x2*(1/12.0 - x2*(1/120.0 - x2/252.0));
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Add the trapezoids of the PR and ROC curves between the two given points */
+	private void addTrapezoids(double TP1, double FP1, double TP2, double FP2) {
+
+		double recall1 = TP1 / numPositives_;
+		double recall2 = TP2 / numPositives_;
+		double precision1 = TP1 / (TP1 + FP1);
+		double precision2 = TP2 / (TP2 + FP2);
+		double FPR1 = FP1 / numNegatives_;
+		double FPR2 = FP2 / numNegatives_;
+
+		AUPR_ += (recall2 - recall1) * (precision2 + precision1) / 2;
+		AUROC_ += (FPR2 - FPR1) * (recall2 + recall1) / 2; // true positive rate = recall
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Area under the PR curve for the tail starting at the given point, with
+	 * numSteps steps of unit mass. At step j the number of true positives is
+	 * TP_j = startTP + p*j and the mass is M_j = M_0 + j, so the precision is
+	 * p + d/(M_0 + j) with d = startTP - p*M_0. The recall increases by p/P
+	 * at each step, and summing the trapezoids gives harmonic differences.
+	 */
+	private double tailAreaUnderPR(double startTP, double startFP, long numSteps) {
+
+		double p = prob_TP_;
+		double M0 = startTP + startFP;
+		double d = startTP - p*M0;
+
+		// sum_{j=1..J} 1/(M0+j) + sum_{j=0..J-1} 1/(M0+j)
+		double sum = (harmonic(M0 + numSteps) - harmonic(M0)) + (harmonic(M0 + numSteps - 1) - harmonic(M0 - 1));
+
+		return p / numPositives_ * (numSteps*p + d*sum/2);
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** Area under the PR curve, normalized by the max possible value (see Performance.computeAreaUnderCurves()) */
+	public double getAUPR() { return AUPR_ / (1 - 1.0/numPositives_); }
+	public double getAUROC() { return AUROC_; }
+
+	public boolean isRecordingPoints() { return recordPoints_; }
+	public int getNumPoints() { return numPoints_; }
+	public double getTP(int k) { return TP_[k]; }
+	public double getFP(int k) { return FP_[k]; }
+	public long getTailLength() { return tailLength_; }
+	public double getProbTP() { return prob_TP_; }
+
+	public double getNumPositives() { return numPositives_; }
+	public double getNumNegatives() { return numNegatives_; }
+	public double getTP() { return TP_k_; }
+	public double getFP() { return FP_k_; }
+}
@@ -25,10 +25,6 @@ THE SOFTWARE.
  */
 package org.networkinference.eval;
 
-import java.util.HashSet;
-import java.util.Iterator;
-
-
 /**
  * Represents a directed edge between two nodes
  */
@@ -61,7 +57,7 @@ public class Edge implements Comparable<Edge> {
 	
 	/** Return true if this edge agrees with the information stored in TF_ and target_ */
 	public boolean isTruePositive() {
-		return TF_.regulates(target_);
+		return TF_.getGoldStandard().isEdge(TF_.getId(), target_.getId());
 	}
 
 	
@@ -77,11 +73,15 @@ public class Edge implements Comparable<Edge> {
 		if (isTruePositive())
 			return false;
 		
-		// The set of regulators of the target (the set of potential genes X in the path TF_->X->target_)
-		HashSet<Gene> X = target_.getRegulators();
-		Iterator<Gene> iter = X.iterator();
-		while (iter.hasNext())
-			if (iter.next().isRegulatedBy(TF_))
+		GoldStandard gold = TF_.getGoldStandard();
+		int TF = TF_.getId();
+		int target = target_.getId();
+		
+		// The regulators of the target (the potential genes X in the path TF_->X->target_)
+		int[] X = gold.getRegulators();
+		int[] offsets = gold.getRegulatorOffsets();
+		for (int i=offsets[target]; i<offsets[target+1]; i++)
+			if (gold.isEdge(TF, X[i]))
 				return true;
 		
 		return false;
@@ -100,11 +100,15 @@ public class Edge implements Comparable<Edge> {
 		if (isTruePositive())
 			return false;
 		
-		// The set of regulators of the target (the set of potential genes X such that X->TF and X->target)
-		HashSet<Gene> X = target_.getRegulators();
-		Iterator<Gene> iter = X.iterator();
-		while (iter.hasNext())
-			if (iter.next().regulates(TF_))
+		GoldStandard gold = TF_.getGoldStandard();
+		int TF = TF_.getId();
+		int target = target_.getId();
+		
+		// The regulators of the target (the potential genes X such that X->TF and X->target)
+		int[] X = gold.getRegulators();
+		int[] offsets = gold.getRegulatorOffsets();
+		for (int i=offsets[target]; i<offsets[target+1]; i++)
+			if (gold.isEdge(X[i], TF))
 				return true;
 		
 		return false;
@@ -0,0 +1,212 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * The transitive and co-regulation edges of a gold standard as bit matrices with
+ * the layout of the gold standard matrix (one row per regulator, one bit per
+ * gene). A transitive edge TF->target is not in the gold standard, but there is
+ * a path TF->X->target. A co-regulation edge TF->target is not in the gold
+ * standard, but there is a gene X with X->TF and X->target.
+ */
+public class ErrorMatrices {
+
+	/** The gold standard */
+	private GoldStandard gold_ = null;
+	/** Bit matrix of the transitive edges */
+	private long[] transitive_ = null;
+	/** Bit matrix of the co-regulation edges */
+	private long[] coregulation_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/**
+	 * Compute the bit matrices of the transitive and co-regulation edges (one row per
+	 * regulator, same layout as the gold standard matrix A). With rows A[X] for the
+	 * targets of X, the transitive row of TF is the OR of A[X] over the targets X of
+	 * TF (the boolean product A*A), and the co-regulation row of TF is the OR of A[X]
+	 * over the regulators X of TF (the boolean product A'*A). Gold standard edges are
+	 * removed from both. The rows are computed in parallel.
+	 */
+	public ErrorMatrices(GoldStandard gold, int numThreads) {
+
+		gold_ = gold;
+		transitive_ = new long[gold_.getMatrix().length];
+		coregulation_ = new long[gold_.getMatrix().length];
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			pool.invoke(new ErrorRowTask(0, gold_.getNumRegulators()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if TF->target is a transitive edge (gene ids, TF must be a regulator) */
+	public boolean isTransitive(int TF, int target) {
+		return (transitive_[gold_.getRegulatorIndex(TF)*gold_.getWordsPerRow() + (target >>> 6)] & (1L << target)) != 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if TF->target is a co-regulation edge (gene ids, TF must be a regulator) */
+	public boolean isCoregulation(int TF, int target) {
+		return (coregulation_[gold_.getRegulatorIndex(TF)*gold_.getWordsPerRow() + (target >>> 6)] & (1L << target)) != 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The number of transitive edges among all possible edges regulator->gene (self-loops excluded) */
+	public int countTransitive() {
+		return count(transitive_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The number of co-regulation edges among all possible edges regulator->gene (self-loops excluded) */
+	public int countCoregulation() {
+		return count(coregulation_);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Count the bits of the matrix, except the self-loops */
+	private int count(long[] matrix) {
+
+		int count = 0;
+		int wordsPerRow = gold_.getWordsPerRow();
+		int[] regulatorIds = gold_.getRegulatorIds();
+		for (int row=0; row<regulatorIds.length; row++) {
+			int TF = regulatorIds[row];
+			for (int w=0; w<wordsPerRow; w++) {
+				long mask = (w == (TF >>> 6)) ? ~(1L << TF) : -1L;
+				count += Long.bitCount(matrix[row*wordsPerRow + w] & mask);
+			}
+		}
+		return count;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the rows of the transitive and co-regulation matrices of the given regulator (matrix row) */
+	private void computeErrorRow(int row) {
+
+		long[] A = gold_.getMatrix();
+		int wordsPerRow = gold_.getWordsPerRow();
+		int offset = row*wordsPerRow;
+		int TF = gold_.getRegulatorIds()[row];
+
+		// Transitive: TF->X->target
+		int[] targets = gold_.getTargets();
+		int[] targetOffsets = gold_.getTargetOffsets();
+		for (int i=targetOffsets[TF]; i<targetOffsets[TF+1]; i++) {
+			int X = gold_.getRegulatorIndex(targets[i]);
+			if (X >= 0)
+				or(A, X*wordsPerRow, transitive_, offset, wordsPerRow);
+		}
+
+		// Co-regulation: X->TF and X->target
+		int[] regulators = gold_.getRegulators();
+		int[] regulatorOffsets = gold_.getRegulatorOffsets();
+		for (int i=regulatorOffsets[TF]; i<regulatorOffsets[TF+1]; i++)
+			or(A, gold_.getRegulatorIndex(regulators[i])*wordsPerRow, coregulation_, offset, wordsPerRow);
+
+		// Transitive and co-regulation edges are false positives
+		for (int w=0; w<wordsPerRow; w++) {
+			transitive_[offset + w] &= ~A[offset + w];
+			coregulation_[offset + w] &= ~A[offset + w];
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** OR the given number of words of source (from sourceOffset) into destination (from destinationOffset) */
+	private static void or(long[] source, int sourceOffset, long[] destination, int destinationOffset, int numWords) {
+
+		for (int w=0; w<numWords; w++)
+			destination[destinationOffset + w] |= source[sourceOffset + w];
+	}
+
+
+	// ============================================================================
+	// ERROR ROW TASK
+
+	/** Compute the rows start..end-1 of the error matrices, split recursively */
+	@SuppressWarnings("serial")
+	private class ErrorRowTask extends RecursiveAction {
+
+		/** The number of rows computed by one task */
+		private static final int ROWS_PER_TASK = 64;
+
+		/** The first row */
+		private int start_ = -1;
+		/** The last row (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public ErrorRowTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Compute the rows or split the range */
+		protected void compute() {
+
+			if (end_ - start_ <= ROWS_PER_TASK) {
+				for (int row=start_; row<end_; row++)
+					computeErrorRow(row);
+			} else {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new ErrorRowTask(start_, middle), new ErrorRowTask(middle, end_));
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** Bit matrix of the transitive edges (same layout as GoldStandard.getMatrix()) */
+	public long[] getTransitive() { return transitive_; }
+	/** Bit matrix of the co-regulation edges */
+	public long[] getCoregulation() { return coregulation_; }
+}
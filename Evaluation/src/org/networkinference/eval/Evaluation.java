@@ -25,6 +25,10 @@ THE SOFTWARE.
  */
 package org.networkinference.eval;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
@@ -42,12 +46,76 @@ public class Evaluation {
 	/** The file with the list of gold standard (true) edges */
 	private String goldStandardFile_ = null;
 
+	/** The prediction files / patterns of the batch mode (null if not in batch mode) */
+	private List<?> batchPatterns_ = null;
+	/** The port of the evaluation server (-1 if not in server mode) */
+	private int serverPort_ = -1;
+	/** The gold standards of the server mode, name=file or file (the name is then the file name without extension) */
+	private List<?> serverGoldStandards_ = null;
+	/** The output file of the batch mode */
+	private String batchOutputFile_ = "batch_AUC.txt";
+	/** The prediction in text format that is converted to the binary format (null if not in conversion mode) */
+	private String convertFile_ = null;
+	/** The binary prediction written in conversion mode (default: the name of the text file with extension .bin) */
+	private String binaryFile_ = null;
+
 	/** Set true to generate PR curves and AUPR */
 	private boolean PR_ = true;
 	/** Set true to generate ROC curves and AUROC */
 	private boolean ROC_ = true;
 	/** Set true to run the analysis of transitive and co-regulation edges */
 	private boolean motifs_ = false;
+	/** The size of the subgraphs of the motif census (3 or 4, 0 for no census) */
+	private int censusSize_ = 0;
+	/** The cutoffs of the sweep of systematic errors (null for no sweep) */
+	private int[] sweepCutoffs_ = null;
+	/** The step between the cutoffs of the sweep (0 to use sweepCutoffs_) */
+	private int sweepStep_ = 0;
+	
+	/** Set true to evaluate the prediction in a single pass without loading it (AUCs only) */
+	private boolean stream_ = false;
+	/** Set true to rank the predictions by score with an external merge sort (AUCs only) */
+	private boolean externalSort_ = false;
+	/** The maximum number of edges per sorted run of the external sort */
+	private int runSize_ = 1 << 22;
+	/** The directory of the runs of the external sort (default: java.io.tmpdir) */
+	private String tempDir_ = System.getProperty("java.io.tmpdir");
+	/** Set true to rank the predictions by score instead of using the order of the file */
+	private boolean rankByScore_ = false;
+	/** The number of edges to keep in top-K mode (0 to keep all edges) */
+	private int topK_ = 0;
+	/** Set true to write compact PR/ROC curves (breakpoints and downsampled tail) */
+	private boolean compactCurves_ = false;
+	/** The maximum number of points per curve in compact mode */
+	private int maxCurvePoints_ = 10000;
+	/** The maximum error of the curves in compact mode */
+	private double curveTolerance_ = 1e-4;
+	
+	/** The number of bootstrap resamples (0 for no bootstrap) */
+	private int numBootstrapResamples_ = 0;
+	/** The bootstrap resampling scheme (Bootstrap.REGULATORS or Bootstrap.EDGES) */
+	private int bootstrapMode_ = Bootstrap.REGULATORS;
+	/** The seed of the bootstrap */
+	private long seed_ = 42;
+	/** The confidence level of the bootstrap intervals */
+	private double confidence_ = 0.95;
+	
+	/** Set true to compute p-values of AUPR and AUROC */
+	private boolean pValues_ = false;
+	/** The number of random predictions of the null distribution */
+	private int numNullSamples_ = 10000;
+	/** The directory where the null distributions and gold standard snapshots are cached */
+	private String cacheDir_ = NullDistribution.getDefaultCacheDir();
+	/** Set true to use binary snapshots of the gold standard (see GoldStandardSnapshot) */
+	private boolean snapshot_ = true;
+	
+	/** The file where the metrics of the run are written as JSON (null for none) */
+	private String metricsFile_ = null;
+	/** The wall time of the phases of the run (see RunMetrics) */
+	private RunMetrics metrics_ = new RunMetrics();
+	
+	/** The number of threads */
+	private int numThreads_ = Runtime.getRuntime().availableProcessors();
 	
 	/** The performance assessment also contains the network instance */
 	private Performance judge_ = null;
@@ -103,26 +171,209 @@ public class Evaluation {
 		// Parse the arguments
 		parseArgs(args);
 
+		if (convertFile_ != null) {
+			// Write the prediction in binary format, no gold standard is needed
+			metrics_.beginPhase("convert");
+			BinaryPrediction.convert(convertFile_, binaryFile_, numThreads_);
+			metrics_.endPhase(-1);
+			finish();
+			return;
+		}
+		
+		if (serverPort_ >= 0) {
+			// Keep the gold standards in memory and score the predictions posted over HTTP
+			EvaluationServer server = new EvaluationServer(snapshot_ ? cacheDir_ : null, numThreads_);
+			server.setRankByScore(rankByScore_);
+			for (Object value : serverGoldStandards_) {
+				String spec = (String) value;
+				int equals = spec.indexOf('=');
+				if (equals > 0)
+					server.addGoldStandard(spec.substring(0, equals), spec.substring(equals + 1));
+				else
+					server.addGoldStandard(getFilenameWithoutPathAndExtension(spec), spec);
+			}
+			server.start(serverPort_);
+			return;
+		}
+		
+		if (batchPatterns_ != null) {
+			// Load the gold standard once and evaluate all files
+			GoldStandard gold = loadGoldStandard();
+			ArrayList<String> files = BatchEvaluation.expandFiles(batchPatterns_);
+			BatchEvaluation batch = new BatchEvaluation(gold, files, numThreads_);
+			batch.setRankByScore(rankByScore_);
+			batch.setTopK(topK_);
+			metrics_.beginPhase("batch");
+			batch.run();
+			metrics_.endPhase(files.size());
+			metrics_.beginPhase("output");
+			batch.output(batchOutputFile_);
+			metrics_.endPhase(-1);
+			finish();
+			return;
+		}
+		
+		if (stream_) {
+			// Load only the gold standard, the prediction is evaluated while reading it
+			Network network = new Network(loadGoldStandard(), numThreads_);
+			judge_ = new Performance(network);
+			judge_.setMetrics(metrics_);
+			judge_.assessStream(predictionFile_);
+			metrics_.setPredictionLines(judge_.getNumPredictionLines(), judge_.getNumPredictedEdges());
+			if (pValues_)
+				computePValues(network);
+			output();
+			finish();
+			return;
+		}
+		
+		if (externalSort_) {
+			// Sort the prediction in runs on disk, only the gold standard is loaded
+			Network network = new Network(loadGoldStandard(), numThreads_);
+			judge_ = new Performance(network);
+			judge_.setMetrics(metrics_);
+			ExternalSort sort = new ExternalSort(predictionFile_, network.getGoldStandard(), runSize_, tempDir_, numThreads_);
+			try {
+				judge_.assessSorted(sort);
+			} finally {
+				sort.close();
+			}
+			metrics_.setPredictionLines(judge_.getNumPredictionLines(), judge_.getNumPredictedEdges());
+			if (pValues_)
+				computePValues(network);
+			output();
+			finish();
+			return;
+		}
+		
 		// Load the gold standard and the prediction
-		Network network = new Network(predictionFile_, goldStandardFile_);
+		GoldStandard gold = loadGoldStandard();
+		metrics_.beginPhase("prediction");
+		Network network = new Network(gold, predictionFile_, numThreads_, topK_);
+		int numPredictedEdges = network.getPrediction().size();
+		metrics_.endPhase(network.getNumPredictionLines());
+		metrics_.setPredictionLines(network.getNumPredictionLines(), network.getNumRetainedEdges());
+		if (topK_ > 0)
+			Evaluation.println("Kept the " + numPredictedEdges + " best of " + network.getNumRetainedEdges() + " edges, the other edges are in random order");
+		// The top-K edges are already ranked by score
+		if (rankByScore_ && topK_ == 0) {
+			metrics_.beginPhase("rank");
+			network.getPrediction().sortByScore(numThreads_);
+			metrics_.endPhase(numPredictedEdges);
+		}
 		judge_ = new Performance(network);
+		judge_.setMetrics(metrics_);
+		judge_.setCompactCurves(compactCurves_, maxCurvePoints_, curveTolerance_);
 		
 		if (PR_ || ROC_) {
 			judge_.assess();
-			judge_.output(PR_, ROC_, getFilenameWithoutPathAndExtension(predictionFile_));
+			if (pValues_)
+				computePValues(network);
+			output();
+		}
+		if (numBootstrapResamples_ > 0) {
+			metrics_.beginPhase("bootstrap");
+			Bootstrap bootstrap = new Bootstrap(network.getGoldStandard(), network.getPrediction(), bootstrapMode_, numBootstrapResamples_, seed_, numThreads_);
+			bootstrap.run();
+			bootstrap.output(confidence_, getFilenameWithoutPathAndExtension(predictionFile_) + "_bootstrap.txt");
+			metrics_.endPhase(numBootstrapResamples_);
+		}
+		if (sweepCutoffs_ != null || sweepStep_ > 0) {
+			metrics_.beginPhase("sweep");
+			judge_.sweepErrors(getSweepCutoffs(numPredictedEdges), getFilenameWithoutPathAndExtension(predictionFile_));
+			metrics_.endPhase(numPredictedEdges);
 		}
-		if (motifs_)
+		if (motifs_) {
+			metrics_.beginPhase("errors");
+			// The counts of the negatives are computed once and then kept in the snapshot
+			if (snapshot_)
+				GoldStandardSnapshot.storeNegativeCounts(network.getGoldStandard(), goldStandardFile_, cacheDir_, numThreads_);
 			judge_.analyzeErrors();
+			metrics_.endPhase(numPredictedEdges);
+			metrics_.beginPhase("motifs");
+			judge_.analyzeMotifs(getFilenameWithoutPathAndExtension(predictionFile_), censusSize_);
+			metrics_.endPhase(numPredictedEdges);
+		}
 		
 		// Write the predictions to a file
 		//writeOutputFiles();
 		
-		System.out.println("Done!");
+		finish();
 	}
 
 	
 	// ============================================================================
 	// PRIVATE METHODS
+	
+	/** Load the gold standard, from its snapshot if available */
+	private GoldStandard loadGoldStandard() {
+		
+		metrics_.beginPhase("gold_standard");
+		GoldStandard gold = null;
+		if (snapshot_)
+			gold = GoldStandardSnapshot.load(goldStandardFile_, cacheDir_, numThreads_);
+		else
+			gold = GoldStandard.load(goldStandardFile_, numThreads_);
+		metrics_.endPhase(gold.getNumListedEdges());
+		return gold;
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** Display the AUCs and write the curves */
+	private void output() {
+		
+		metrics_.beginPhase("output");
+		judge_.output(PR_, ROC_, getFilenameWithoutPathAndExtension(predictionFile_));
+		metrics_.endPhase(-1);
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** Commit the metrics of the run and write them if requested */
+	private void finish() {
+		
+		metrics_.finish();
+		if (metricsFile_ != null)
+			metrics_.write(metricsFile_, predictionFile_, goldStandardFile_);
+		System.out.println("Done!");
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** Load or simulate the null distribution of the gold standard and compute the p-values */
+	private void computePValues(Network network) {
+		
+		metrics_.beginPhase("pvalues");
+		NullDistribution nulls = new NullDistribution(network.getGoldStandard(), network.getNumGoldStandardEdges(),
+				network.getNumPossibleEdges(), numNullSamples_, seed_, numThreads_);
+		nulls.compute(cacheDir_);
+		judge_.computePValues(nulls);
+		metrics_.endPhase(numNullSamples_);
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** The cutoffs of the sweep, the given ones (sorted) or multiples of the step and the number of edges */
+	private int[] getSweepCutoffs(int numEdges) {
+		
+		if (sweepStep_ == 0) {
+			int[] cutoffs = sweepCutoffs_.clone();
+			Arrays.sort(cutoffs);
+			return cutoffs;
+		}
+		int[] cutoffs = new int[(numEdges + sweepStep_ - 1) / sweepStep_];
+		for (int c=0; c<cutoffs.length; c++)
+			cutoffs[c] = Math.min((c + 1) * sweepStep_, numEdges);
+		return cutoffs;
+	}
+
+	
+	// ----------------------------------------------------------------------------
 		
 	/**  
 	 * Implementing this function is mandatory for your module. It will help us and
@@ -132,12 +383,48 @@ public class Evaluation {
 		
 		System.out.println("USAGE");
 		System.out.println("   java -jar Evaluation.jar --pred <file> --gold <file> [OPTIONS]");
+		System.out.println("   java -jar Evaluation.jar --batch <files> --gold <file> [--out <file>] [--threads <n>]");
+		System.out.println("   java -jar Evaluation.jar --server <port> --gold [name=]<file> [--gold ...] [--threads <n>]");
+		System.out.println("   java -jar Evaluation.jar --convert <file> [--out <file>]");
 		System.out.println("OPTIONS");
 		System.out.println("   --pred <file>   File with ranked list of predicted edges");
 		System.out.println("   --gold <file>   File with list of gold standard (true) edges");
+		System.out.println("   --batch <files> Evaluate many prediction files concurrently against the same gold standard;");
+		System.out.println("                   a file, a glob (e.g., 'pred/*.txt') or @list (one file per line), can be repeated");
+		System.out.println("   --server <port> Keep the gold standards (--gold [name=]file, can be repeated) in memory and evaluate");
+		System.out.println("                   predictions posted to http://127.0.0.1:<port>/evaluate?gold=<name> (JSON results)");
+		System.out.println("   --convert <file> Convert a prediction to the binary format (written to --out, default: <file>.bin);");
+		System.out.println("                   binary predictions are read like text predictions with --pred");
+		System.out.println("   --out <file>    Table with the AUCs of all files in batch mode (default: batch_AUC.txt)");
 		System.out.println("   --PR            Compute precision-recall (PR) curve and area under the curve (AUPR)");
 		System.out.println("   --ROC           Compute receiver operating characteristic (ROC) curve and area under the curve (AUROC)");
+		System.out.println("   --stream        Compute AUPR/AUROC in a single pass with constant memory (no curve files)");
+		System.out.println("   --sweep <k,..>  Count the transitive and co-regulation errors of the top k edges for each cutoff k");
+		System.out.println("   --sweepStep <n> Same as --sweep with the cutoffs n, 2n, 3n, ... (up to the number of edges)");
+		System.out.println("   --topK <k>      Keep only the k best edges of an unsorted prediction (by score), the other");
+		System.out.println("                   edges are in random order; the memory is bounded by k");
+		System.out.println("   --rank          Rank the edges by decreasing score instead of the order of the file,");
+		System.out.println("                   tied edges get their expected number of true/false positives");
+		System.out.println("   --externalSort  Rank the edges by score as --rank, sorting runs of the file on disk (no curve files);");
+		System.out.println("                   for predictions that do not fit into memory");
+		System.out.println("   --runSize <n>   Number of edges per sorted run of --externalSort (default: 4194304)");
+		System.out.println("   --tmp <dir>     Directory of the runs of --externalSort (default: the temporary directory)");
+		System.out.println("   --bootstrap <n> Confidence intervals for AUPR/AUROC from n bootstrap resamples");
+		System.out.println("   --resample <s>  Bootstrap resampling of 'regulators' (default) or gold standard 'edges'");
+		System.out.println("   --confidence <c> Confidence level of the bootstrap intervals (default: 0.95)");
+		System.out.println("   --seed <n>      Seed of the random number generator (default: 42)");
+		System.out.println("   --pvalues       P-values of AUPR/AUROC from a null distribution of random predictions");
+		System.out.println("   --nullSamples <n> Number of random predictions of the null distribution (default: 10000)");
+		System.out.println("   --cache <dir>   Directory for null distributions and gold standard snapshots (default: ~/.networkinference)");
+		System.out.println("   --noSnapshot    Always parse the gold standard file, do not read or write binary snapshots");
+		System.out.println("   --compact       Write only the breakpoints of the PR/ROC curves, downsampled with bounded error");
+		System.out.println("   --maxPoints <n> Maximum number of points per curve in compact mode (default: 10000)");
+		System.out.println("   --tolerance <e> Maximum error of the curves in compact mode (default: 1e-4)");
 		System.out.println("   --motifs        Analyze systematic prediction errors (transitive/indirect and co-regulation edges)");
+		System.out.println("   --census <k>    With --motifs, count the k-node subgraphs (k = 3 or 4) of the gold standard and the prediction");
+		System.out.println("   --metrics <file> Write the wall time of each phase, the prediction lines parsed/retained and");
+		System.out.println("                   the peak heap as JSON (the phases are also recorded as JFR events)");
+		System.out.println("   --threads <n>   Number of threads (default: number of processors)");
 		System.out.println("   --help          Display this usage information");
 	}
 
@@ -154,9 +441,35 @@ public class Evaluation {
 		parser_ = new OptionParser();
 		parser_.accepts("pred").withRequiredArg();
 		parser_.accepts("gold").withRequiredArg();
+		parser_.accepts("batch").withRequiredArg();
+		parser_.accepts("out").withRequiredArg();
+		parser_.accepts("convert").withRequiredArg();
+		parser_.accepts("server").withRequiredArg().ofType(Integer.class);
 		parser_.accepts("PR");
 		parser_.accepts("ROC");
+		parser_.accepts("stream");
+		parser_.accepts("rank");
+		parser_.accepts("topK").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("externalSort");
+		parser_.accepts("runSize").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("tmp").withRequiredArg();
+		parser_.accepts("bootstrap").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("resample").withRequiredArg();
+		parser_.accepts("confidence").withRequiredArg().ofType(Double.class);
+		parser_.accepts("seed").withRequiredArg().ofType(Long.class);
+		parser_.accepts("pvalues");
+		parser_.accepts("nullSamples").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("cache").withRequiredArg();
+		parser_.accepts("noSnapshot");
+		parser_.accepts("compact");
+		parser_.accepts("maxPoints").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("tolerance").withRequiredArg().ofType(Double.class);
 		parser_.accepts("motifs");
+		parser_.accepts("census").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("sweep").withRequiredArg().ofType(Integer.class).withValuesSeparatedBy(',');
+		parser_.accepts("sweepStep").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("metrics").withRequiredArg();
+		parser_.accepts("threads").withRequiredArg().ofType(Integer.class);
 		parser_.accepts("help");
 	}
 
@@ -180,19 +493,40 @@ public class Evaluation {
 		}
 		
 		// Check for required options
-		if (options.has("pred")) {
+		if (options.has("server")) {
+			serverPort_ = (Integer) options.valueOf("server");
+			if (!options.has("gold")) {
+				displayHelp();
+				throw new IllegalArgumentException("Missing argument '--gold [name=]<file>'");
+			}
+			serverGoldStandards_ = options.valuesOf("gold");
+		} else if (options.has("batch")) {
+			batchPatterns_ = options.valuesOf("batch");
+			if (options.has("out"))
+				batchOutputFile_ = (String) options.valueOf("out");
+		} else if (options.has("convert")) {
+			convertFile_ = (String) options.valueOf("convert");
+			binaryFile_ = options.has("out") ? (String) options.valueOf("out") : getFilenameWithoutPathAndExtension(convertFile_) + ".bin";
+		} else if (options.has("pred")) {
 			predictionFile_ = (String) options.valueOf("pred");
 		} else {
 			displayHelp();
 			throw new IllegalArgumentException("Missing argument '--pred <file>'");
 		}
 		
-		if (options.has("gold")) {
+		if (serverPort_ >= 0 || convertFile_ != null) {
+			// The gold standards were read above, or no gold standard is needed
+		} else if (options.has("gold")) {
 			goldStandardFile_ = (String) options.valueOf("gold");
 		} else {
 			displayHelp();
 			throw new IllegalArgumentException("Missing argument '--pred <gold>'");
 		}
+		if ((options.has("batch") || options.has("server")) && (options.has("stream") || options.has("bootstrap") || options.has("pvalues")
+				|| options.has("motifs") || options.has("externalSort") || options.has("sweep") || options.has("sweepStep"))) {
+			displayHelp();
+			throw new IllegalArgumentException("The options --batch and --server cannot be combined with --stream, --bootstrap, --pvalues, --motifs, --externalSort or --sweep");
+		}
 
 		if ((options.has("PR") || options.has("ROC")) && options.has("motifs")) {
 			displayHelp();
@@ -203,6 +537,125 @@ public class Evaluation {
 			ROC_ = false;
 		if (options.has("ROC") && !options.has("PR"))
 			PR_ = false;
+		if (options.has("stream") && options.has("motifs")) {
+			displayHelp();
+			throw new IllegalArgumentException("The analysis of prediction errors is not available in streaming mode");
+		}
+		if (options.has("stream"))
+			stream_ = true;
+		if (options.has("rank") && options.has("stream")) {
+			displayHelp();
+			throw new IllegalArgumentException("The predictions cannot be ranked by score in streaming mode (the file must be sorted)");
+		}
+		if (options.has("rank"))
+			rankByScore_ = true;
+		if (options.has("topK") && options.has("stream")) {
+			displayHelp();
+			throw new IllegalArgumentException("The options --topK and --stream cannot be combined (--topK also reads the file in a single pass)");
+		}
+		if (options.has("topK")) {
+			topK_ = (Integer) options.valueOf("topK");
+			if (topK_ < 1)
+				throw new IllegalArgumentException("The option --topK requires k >= 1");
+		}
+		if (options.has("externalSort") && (options.has("stream") || options.has("topK") || options.has("motifs") || options.has("bootstrap"))) {
+			displayHelp();
+			throw new IllegalArgumentException("The option --externalSort cannot be combined with --stream, --topK, --motifs or --bootstrap");
+		}
+		if (options.has("externalSort"))
+			externalSort_ = true;
+		if (options.has("runSize")) {
+			runSize_ = (Integer) options.valueOf("runSize");
+			if (runSize_ < 1)
+				throw new IllegalArgumentException("The option --runSize requires n >= 1");
+		}
+		if (options.has("tmp"))
+			tempDir_ = (String) options.valueOf("tmp");
+		if (options.has("bootstrap") && (options.has("stream") || options.has("motifs"))) {
+			displayHelp();
+			throw new IllegalArgumentException("The bootstrap is not available in streaming mode or for the analysis of prediction errors");
+		}
+		if (options.has("bootstrap")) {
+			numBootstrapResamples_ = (Integer) options.valueOf("bootstrap");
+			if (numBootstrapResamples_ < 1)
+				throw new IllegalArgumentException("The option --bootstrap requires n >= 1");
+		}
+		if (options.has("resample")) {
+			String mode = (String) options.valueOf("resample");
+			if (mode.equals("regulators"))
+				bootstrapMode_ = Bootstrap.REGULATORS;
+			else if (mode.equals("edges"))
+				bootstrapMode_ = Bootstrap.EDGES;
+			else
+				throw new IllegalArgumentException("Unknown resampling scheme '" + mode + "' (use 'regulators' or 'edges')");
+		}
+		if (options.has("confidence")) {
+			confidence_ = (Double) options.valueOf("confidence");
+			if (!(confidence_ > 0 && confidence_ < 1))
+				throw new IllegalArgumentException("The option --confidence requires a value > 0 and < 1");
+		}
+		if (options.has("seed"))
+			seed_ = (Long) options.valueOf("seed");
+		if (options.has("pvalues") && options.has("motifs")) {
+			displayHelp();
+			throw new IllegalArgumentException("The p-values are not available for the analysis of prediction errors");
+		}
+		if (options.has("pvalues"))
+			pValues_ = true;
+		if (options.has("nullSamples"))
+			numNullSamples_ = (Integer) options.valueOf("nullSamples");
+		if (options.has("cache"))
+			cacheDir_ = (String) options.valueOf("cache");
+		if (options.has("noSnapshot"))
+			snapshot_ = false;
+		if (options.has("compact"))
+			compactCurves_ = true;
+		if (options.has("maxPoints")) {
+			maxCurvePoints_ = (Integer) options.valueOf("maxPoints");
+			if (maxCurvePoints_ < 2)
+				throw new IllegalArgumentException("The option --maxPoints requires n >= 2");
+		}
+		if (options.has("tolerance")) {
+			curveTolerance_ = (Double) options.valueOf("tolerance");
+			if (!(curveTolerance_ > 0))
+				throw new IllegalArgumentException("The option --tolerance requires a value > 0");
+		}
+		if (options.has("metrics"))
+			metricsFile_ = (String) options.valueOf("metrics");
+		if (options.has("threads")) {
+			numThreads_ = (Integer) options.valueOf("threads");
+			if (numThreads_ < 1)
+				throw new IllegalArgumentException("The option --threads requires n >= 1");
+		}
+		if (options.has("census")) {
+			censusSize_ = (Integer) options.valueOf("census");
+			if (!options.has("motifs") || (censusSize_ != 3 && censusSize_ != 4)) {
+				displayHelp();
+				throw new IllegalArgumentException("The option --census <k> requires --motifs and k = 3 or 4");
+			}
+		}
+		if ((options.has("sweep") || options.has("sweepStep")) && (options.has("PR") || options.has("ROC") || options.has("stream") || options.has("externalSort") || options.has("pvalues"))) {
+			displayHelp();
+			throw new IllegalArgumentException("The sweep of prediction errors cannot be combined with --PR, --ROC, --stream, --externalSort or --pvalues");
+		}
+		if (options.has("sweep")) {
+			List<?> values = options.valuesOf("sweep");
+			sweepCutoffs_ = new int[values.size()];
+			for (int c=0; c<sweepCutoffs_.length; c++) {
+				sweepCutoffs_[c] = (Integer) values.get(c);
+				if (sweepCutoffs_[c] < 1)
+					throw new IllegalArgumentException("The cutoffs of the sweep must be positive");
+			}
+		}
+		if (options.has("sweepStep")) {
+			sweepStep_ = (Integer) options.valueOf("sweepStep");
+			if (sweepStep_ <= 0)
+				throw new IllegalArgumentException("The step of the sweep must be positive");
+		}
+		if (options.has("sweep") || options.has("sweepStep")) {
+			PR_ = false;
+			ROC_ = false;
+		}
 		if (options.has("motifs")) {
 			PR_ = false;
 			ROC_ = false;
@@ -213,8 +666,11 @@ public class Evaluation {
 	
 	// ----------------------------------------------------------------------------
 
-	/** Get prediction filename without path and extension */
+	/** Get prediction filename without path and extension (e.g., "pred" for "dir/pred.txt.gz") */
 	private String getFilenameWithoutPathAndExtension(String filename) {
+		
+		if (filename.endsWith(".gz"))
+			filename = filename.substring(0, filename.length() - 3);
 				
 		// The beginning of the filename (without the path) 
 		int start = filename.lastIndexOf("/") + 1;
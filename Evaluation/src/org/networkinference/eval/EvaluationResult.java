@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+
+/**
+ * The result of an in-memory evaluation (see Evaluator): AUPR, AUROC and,
+ * if requested, the PR/ROC curves at the ranks of the retained edges. The
+ * curves beyond the last predicted edge (the random tail) are included in
+ * the AUCs, but not in the points of the curves.
+ */
+public class EvaluationResult {
+
+	/** Area under the PR curve */
+	private double AUPR_ = -1;
+	/** Area under the ROC curve */
+	private double AUROC_ = -1;
+	/** The number of edges retained (regulators and genes of the gold standard) */
+	private int numPredictedEdges_ = 0;
+	/** The number of edges dropped */
+	private int numDroppedEdges_ = 0;
+	/** The curves (null if not requested) */
+	private Curves curves_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public EvaluationResult(double AUPR, double AUROC, int numPredictedEdges, int numDroppedEdges, Curves curves) {
+
+		AUPR_ = AUPR;
+		AUROC_ = AUROC;
+		numPredictedEdges_ = numPredictedEdges;
+		numDroppedEdges_ = numDroppedEdges;
+		curves_ = curves;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The precision at rank k (the top k+1 edges) */
+	public double getPrecision(int k) {
+
+		return getCurves().getTP(k) / (k + 1);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The recall (true positive rate) at rank k (the top k+1 edges) */
+	public double getRecall(int k) {
+
+		return getCurves().getTP(k) / curves_.getNumPositives();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The false positive rate at rank k (the top k+1 edges) */
+	public double getFalsePositiveRate(int k) {
+
+		return getCurves().getFP(k) / curves_.getNumNegatives();
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public double getAUPR() { return AUPR_; }
+	public double getAUROC() { return AUROC_; }
+	public int getNumPredictedEdges() { return numPredictedEdges_; }
+	public int getNumDroppedEdges() { return numDroppedEdges_; }
+	public boolean hasCurves() { return curves_ != null; }
+
+	/** The curves, the points 0..getNumPredictedEdges()-1 are the ranks of the retained edges */
+	public Curves getCurves() {
+		if (curves_ == null)
+			throw new IllegalStateException("The curves were not requested");
+		return curves_;
+	}
+}
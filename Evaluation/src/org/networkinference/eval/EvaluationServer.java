@@ -0,0 +1,362 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Long-running evaluation server. Named gold standards are loaded once and kept
+ * in memory, predictions are posted over HTTP on the loopback interface and
+ * scored concurrently by a pool of threads (see Evaluator), the results are
+ * returned as JSON. Before a gold standard is used, the size and modification
+ * time of its file are checked: if the file has changed, it is loaded again
+ * (requests that are running keep using the previous version). If the new file
+ * cannot be loaded, the previous version is kept and a warning is printed.
+ *
+ * Endpoints:
+ *    POST /evaluate?gold=<name>[&rank=true|false]  body: prediction (TF, target, score per line)
+ *    GET  /gold                                     the loaded gold standards
+ */
+public class EvaluationServer {
+
+	/** The gold standards by name */
+	private LinkedHashMap<String, GoldStandardEntry> goldStandards_ = new LinkedHashMap<String, GoldStandardEntry>();
+	/** The directory of the gold standard snapshots (null to always parse the files) */
+	private String cacheDir_ = null;
+	/** The number of threads that score requests */
+	private int numThreads_ = 1;
+	/** Rank the predictions by score if the request does not specify it */
+	private boolean rankByScore_ = false;
+
+	/** The HTTP server */
+	private HttpServer server_ = null;
+	/** The threads of the server */
+	private ExecutorService executor_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, cacheDir is the directory of the gold standard snapshots (null for none) */
+	public EvaluationServer(String cacheDir, int numThreads) {
+
+		cacheDir_ = cacheDir;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gold standard and make it available under the given name (before start()) */
+	public void addGoldStandard(String name, String file) {
+
+		if (goldStandards_.containsKey(name))
+			throw new IllegalArgumentException("Duplicate gold standard name '" + name + "'");
+		if (!new File(file).isFile())
+			throw new IllegalArgumentException("File not found: " + file);
+
+		GoldStandardEntry entry = new GoldStandardEntry(file);
+		entry.reload();
+		goldStandards_.put(name, entry);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Start the server on the given port of the loopback interface (0 for any free port) */
+	public void start(int port) {
+
+		if (goldStandards_.isEmpty())
+			throw new IllegalArgumentException("The server needs at least one gold standard");
+
+		try {
+			server_ = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot start the server on port " + port + ": " + e.getMessage(), e);
+		}
+		executor_ = Executors.newFixedThreadPool(numThreads_);
+		server_.setExecutor(executor_);
+		server_.createContext("/evaluate", new EvaluateHandler());
+		server_.createContext("/gold", new GoldHandler());
+		server_.start();
+
+		Evaluation.println("Evaluation server listening on http://127.0.0.1:" + getPort() + "/ with " + numThreads_ + " threads");
+		for (String name : goldStandards_.keySet())
+			Evaluation.println("   gold standard '" + name + "': " + goldStandards_.get(name).file_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Stop the server, the running requests are given at most the given number of seconds to finish */
+	public void stop(int delay) {
+
+		server_.stop(delay);
+		executor_.shutdown();
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Return the value of the given parameter in the query string, null if it is not given */
+	private static String getParameter(URI uri, String name) {
+
+		String query = uri.getRawQuery();
+		if (query == null)
+			return null;
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String key = (equals < 0) ? pair : pair.substring(0, equals);
+			if (key.equals(name))
+				return (equals < 0) ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+		}
+		return null;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Send the JSON response with the given status */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+
+		byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Send an error as JSON */
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+
+		send(exchange, status, "{\"error\": " + RunMetrics.quote(message) + "}");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** A double as JSON number (non-finite values are written as null) */
+	private static String number(double x) {
+
+		return (Double.isNaN(x) || Double.isInfinite(x)) ? "null" : Double.toString(x);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read the whole body of the request */
+	private static ByteBuffer readBody(HttpExchange exchange) throws IOException {
+
+		InputStream in = exchange.getRequestBody();
+		byte[] bytes = new byte[1 << 16];
+		int size = 0;
+		int n;
+		while ((n = in.read(bytes, size, bytes.length - size)) >= 0) {
+			size += n;
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, 2*bytes.length);
+		}
+		in.close();
+		return ByteBuffer.wrap(bytes, 0, size);
+	}
+
+
+	// ============================================================================
+	// GOLD STANDARD ENTRY
+
+	/** A named gold standard, reloaded when its file changes */
+	private class GoldStandardEntry {
+
+		/** The gold standard file */
+		private String file_ = null;
+		/** The evaluator of the current version (replaced when the file changes) */
+		private volatile Evaluator evaluator_ = null;
+		/** The size of the file when it was loaded */
+		private volatile long length_ = -1;
+		/** The modification time of the file when it was loaded */
+		private volatile long lastModified_ = -1;
+		/** The number of times the file was loaded */
+		private volatile int version_ = 0;
+
+		/** Constructor */
+		public GoldStandardEntry(String file) {
+			file_ = file;
+		}
+
+		/** Return the evaluator, the gold standard is loaded again if the file has changed */
+		public Evaluator getEvaluator() {
+
+			File file = new File(file_);
+			if (file.length() != length_ || file.lastModified() != lastModified_) {
+				synchronized (this) {
+					// Another thread may have reloaded it in the meantime
+					if (file.length() != length_ || file.lastModified() != lastModified_)
+						reload();
+				}
+			}
+			return evaluator_;
+		}
+
+		/** Load the gold standard, the previous version is kept if it fails */
+		public synchronized void reload() {
+
+			File file = new File(file_);
+			long length = file.length();
+			long lastModified = file.lastModified();
+			try {
+				if (!file.isFile() || !file.canRead())
+					throw new RuntimeException("Cannot read the file");
+				GoldStandard gold = (cacheDir_ != null) ? GoldStandardSnapshot.load(file_, cacheDir_, numThreads_) : GoldStandard.load(file_, numThreads_);
+				evaluator_ = new Evaluator(gold);
+				version_++;
+				if (version_ > 1)
+					Evaluation.println("Reloaded gold standard " + file_);
+			} catch (RuntimeException e) {
+				if (evaluator_ == null)
+					throw e;
+				System.err.println("Warning: the gold standard " + file_ + " could not be reloaded, the previous version is used: " + e.getMessage());
+			}
+			// Also on failure, so that the file is not parsed again for every request until it changes
+			length_ = length;
+			lastModified_ = lastModified;
+		}
+	}
+
+
+	// ============================================================================
+	// HANDLERS
+
+	/** Score the posted prediction */
+	private class EvaluateHandler implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+
+			try {
+				long start = System.nanoTime();
+				if (!exchange.getRequestMethod().equals("POST")) {
+					sendError(exchange, 405, "Use POST with the prediction in the body");
+					return;
+				}
+				String name = getParameter(exchange.getRequestURI(), "gold");
+				if (name == null && goldStandards_.size() == 1)
+					name = goldStandards_.keySet().iterator().next();
+				GoldStandardEntry entry = (name == null) ? null : goldStandards_.get(name);
+				if (entry == null) {
+					sendError(exchange, 404, "Unknown gold standard '" + name + "', use the parameter gold=<name>");
+					return;
+				}
+				String rank = getParameter(exchange.getRequestURI(), "rank");
+				boolean rankByScore = (rank == null) ? rankByScore_ : (rank.isEmpty() || rank.equals("true") || rank.equals("1"));
+
+				ByteBuffer body = readBody(exchange);
+				EvaluationResult result;
+				try {
+					result = entry.getEvaluator().evaluate(body, rankByScore, false);
+				} catch (IllegalArgumentException e) {
+					sendError(exchange, 400, e.getMessage());
+					return;
+				}
+
+				double milliseconds = (System.nanoTime() - start) / 1e6;
+				send(exchange, 200, "{\"gold\": " + RunMetrics.quote(name)
+						+ ", \"AUPR\": " + number(result.getAUPR())
+						+ ", \"AUROC\": " + number(result.getAUROC())
+						+ ", \"predicted_edges\": " + result.getNumPredictedEdges()
+						+ ", \"dropped_edges\": " + result.getNumDroppedEdges()
+						+ ", \"ranked_by_score\": " + rankByScore
+						+ ", \"milliseconds\": " + number(milliseconds) + "}");
+
+			} catch (RuntimeException e) {
+				// E.g., more edges than possible edges, the server keeps running
+				sendError(exchange, 500, e.toString());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** List the gold standards */
+	private class GoldHandler implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+
+			try {
+				StringBuilder json = new StringBuilder("{\"gold_standards\": [");
+				boolean first = true;
+				for (String name : goldStandards_.keySet()) {
+					GoldStandardEntry entry = goldStandards_.get(name);
+					GoldStandard gold = entry.getEvaluator().getGoldStandard();
+					json.append(first ? "" : ", ");
+					json.append("{\"name\": ").append(RunMetrics.quote(name));
+					json.append(", \"file\": ").append(RunMetrics.quote(entry.file_));
+					json.append(", \"genes\": ").append(gold.getNumGenes());
+					json.append(", \"regulators\": ").append(gold.getNumRegulators());
+					json.append(", \"edges\": ").append(gold.getNumListedEdges());
+					json.append(", \"version\": ").append(entry.version_).append("}");
+					first = false;
+				}
+				send(exchange, 200, json.append("]}").toString());
+			} catch (RuntimeException e) {
+				sendError(exchange, 500, e.toString());
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public void setRankByScore(boolean b) { rankByScore_ = b; }
+	public int getPort() { return server_.getAddress().getPort(); }
+}
@@ -0,0 +1,207 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+
+/**
+ * In-memory evaluation of predictions against a preloaded gold standard, for
+ * use as a library (e.g., after every run of a hyperparameter search). The
+ * predictions are given as primitive arrays of gene ids of the gold standard
+ * (see getGeneIds()), either with scores or in ranked order. Nothing is read
+ * or written, the program is never exited (errors are thrown as exceptions),
+ * and the methods can be called concurrently from many threads: the gold
+ * standard is immutable and every call uses its own prediction and curves.
+ *
+ * Edges whose regulator is not a regulator of the gold standard or whose
+ * target is not a gene of the gold standard (negative id) are dropped, as
+ * when a prediction file is loaded.
+ */
+public class Evaluator {
+
+	/** The gold standard (shared, read only) */
+	private GoldStandard gold_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public Evaluator(GoldStandard gold) {
+
+		if (gold == null)
+			throw new IllegalArgumentException("The gold standard is null");
+		gold_ = gold;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gold standard from the given file */
+	public static Evaluator load(String goldFile) {
+
+		// Only for a clearer message, the parser would also throw an exception
+		File file = new File(goldFile);
+		if (!file.isFile() || !file.canRead())
+			throw new IllegalArgumentException("Cannot read the gold standard file: " + goldFile);
+
+		return new Evaluator(GoldStandard.load(goldFile));
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the gold standard ids of the given gene names (-1 for genes that are not in the gold standard) */
+	public int[] getGeneIds(String[] names) {
+
+		SymbolTable symbols = gold_.getSymbols();
+		int[] ids = new int[names.length];
+		for (int i=0; i<names.length; i++)
+			ids[i] = symbols.find(names[i]);
+		return ids;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Evaluate the first n edges ranked by decreasing score (NaN last). Edges with
+	 * equal scores are tied (see Prediction.sortByScore()), so the result does not
+	 * depend on the order of the arrays. Set curves true to keep the PR/ROC curves.
+	 */
+	public EvaluationResult evaluate(int[] regulators, int[] targets, double[] scores, int n, boolean curves) {
+
+		if (scores == null || scores.length < n)
+			throw new IllegalArgumentException("The scores must have at least n elements");
+		Prediction prediction = createPrediction(regulators, targets, scores, null, n);
+		// The sort runs in the calling thread, concurrent calls are parallel already
+		prediction.sortByScore(1);
+		return evaluate(prediction, n, curves);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Evaluate the first n edges in ranked order: order[k] is the index of the edge
+	 * at rank k, or null if the arrays are already in ranked order. Set curves true
+	 * to keep the PR/ROC curves.
+	 */
+	public EvaluationResult evaluateRanked(int[] regulators, int[] targets, int[] order, int n, boolean curves) {
+
+		if (order != null && order.length < n)
+			throw new IllegalArgumentException("The order must have at least n elements");
+		Prediction prediction = createPrediction(regulators, targets, null, order, n);
+		return evaluate(prediction, n, curves);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Evaluate a prediction in the format of the prediction files (one edge per line:
+	 * regulator, target and score separated by tabs), e.g., received over the network.
+	 * The edges are ranked in the order of the lines, or by decreasing score if
+	 * rankByScore is set (see evaluate()).
+	 */
+	public EvaluationResult evaluate(ByteBuffer text, boolean rankByScore, boolean curves) {
+
+		SymbolTable symbols = gold_.getSymbols();
+		MappedFileParser parser = new MappedFileParser(text);
+		Prediction prediction = new Prediction();
+		int numLines = 0;
+		while (parser.nextLine()) {
+			// Empty lines (e.g., at the end of the text) are skipped
+			if (parser.getNumColumns() == 1 && parser.getString(0).isEmpty())
+				continue;
+			if (parser.getNumColumns() != 3)
+				throw new IllegalArgumentException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
+			numLines++;
+
+			int TF = parser.find(0, symbols);
+			int target = parser.find(1, symbols);
+			double score;
+			try {
+				score = parser.parseDouble(2);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Parse error at line " + parser.getLineCounter() + ": " + e.getMessage());
+			}
+			if (TF >= 0 && gold_.isRegulator(TF) && target >= 0)
+				prediction.add(TF, target, score);
+		}
+
+		if (rankByScore)
+			prediction.sortByScore(1);
+		return evaluate(prediction, numLines, curves);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Return the prediction with the retained edges in the given order (null for the order of the arrays) */
+	private Prediction createPrediction(int[] regulators, int[] targets, double[] scores, int[] order, int n) {
+
+		if (regulators == null || targets == null || regulators.length < n || targets.length < n || n < 0)
+			throw new IllegalArgumentException("The regulators and targets must have at least n elements (n >= 0)");
+
+		int numGenes = gold_.getNumGenes();
+		Prediction prediction = new Prediction(n);
+		for (int k=0; k<n; k++) {
+			int i = (order == null) ? k : order[k];
+			if (i < 0 || i >= n)
+				throw new IllegalArgumentException("Invalid index " + i + " at rank " + k + " of the order");
+
+			int TF = regulators[i];
+			int target = targets[i];
+			if (TF >= 0 && TF < numGenes && gold_.isRegulator(TF) && target >= 0 && target < numGenes)
+				prediction.add(TF, target, (scores == null) ? n - k : scores[i]);
+		}
+		return prediction;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the AUCs (and the curves) of the prediction */
+	private EvaluationResult evaluate(Prediction prediction, int n, boolean curves) {
+
+		Performance judge = new Performance(new Network(gold_, prediction));
+		judge.setRecordCurves(curves);
+		judge.assess();
+
+		return new EvaluationResult(judge.getAUPR(), judge.getAUROC(), prediction.size(),
+				n - prediction.size(), curves ? judge.getCurves() : null);
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public GoldStandard getGoldStandard() { return gold_; }
+}
@@ -0,0 +1,577 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * External merge sort of a prediction file by decreasing score, for files that
+ * do not fit into memory. The file is split into chunks that are parsed in
+ * parallel (one chunk per thread). Each chunk collects the edges between
+ * regulators and genes of the gold standard in a buffer of runSize edges; a
+ * full buffer is sorted (see ScoreSort) and spilled to a run file in binary
+ * form (score key and gene ids, 16 bytes per edge). The runs are then merged
+ * with a heap over the heads of the runs and read with nextEdge(), so the
+ * memory is bounded by the number of threads times runSize (and the buffers of
+ * the runs), whatever the size of the file. If there are more than MAX_FAN_IN
+ * runs, groups of runs are first merged into longer runs. A gzip-compressed
+ * file is parsed by a single task as it is decompressed (see GzipReader), the
+ * blocks of a binary prediction are split between the tasks (see BinaryPrediction).
+ *
+ * The order of edges with equal scores is not defined, they are tied when the
+ * curves are computed (see Performance.assessSorted()). The run files are
+ * written to a new directory in tempDir and deleted by close().
+ */
+public class ExternalSort {
+
+	/** The maximum number of runs that are merged at once */
+	private static final int MAX_FAN_IN = 256;
+	/** The size of the buffer of a run file when it is read or written */
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	/** The prediction file */
+	private String filename_ = null;
+	/** The gold standard, only edges between its regulators and genes are retained */
+	private GoldStandard gold_ = null;
+	/** The maximum number of edges that are sorted in memory at once per thread */
+	private int runSize_ = 1 << 22;
+	/** The directory of the run files */
+	private File runDir_ = null;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** The run files */
+	private ArrayList<File> runs_ = new ArrayList<File>();
+	/** The number of run files created (also the intermediate ones) */
+	private int numRunFiles_ = 0;
+	/** The number of lines of the file */
+	private long numLines_ = 0;
+	/** The number of retained edges */
+	private long numEdges_ = 0;
+
+	/** The runs that are merged by nextEdge() */
+	private Merger merger_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the run files are written to a new directory in tempDir */
+	public ExternalSort(String filename, GoldStandard gold, int runSize, String tempDir, int numThreads) {
+
+		if (runSize < 1)
+			throw new IllegalArgumentException("The run size must be at least 1");
+		filename_ = filename;
+		gold_ = gold;
+		runSize_ = runSize;
+		numThreads_ = Math.max(1, numThreads);
+
+		try {
+			runDir_ = Files.createTempDirectory(new File(tempDir).toPath(), "networkinference-sort").toFile();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot create a temporary directory in " + tempDir + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Create the sorted runs and prepare the merge, the edges are then read with nextEdge() */
+	public void sort() {
+
+		System.out.println("Reading file: " + filename_);
+		ArrayList<RunTask> tasks = new ArrayList<RunTask>();
+		BinaryPrediction binary = null;
+		if (BinaryPrediction.isBinary(filename_)) {
+			binary = new BinaryPrediction(filename_);
+			int[] geneIds = binary.getGeneIds(gold_.getSymbols());
+			int numBlocks = binary.getNumBlocks();
+			for (int i=0; i<numThreads_; i++)
+				tasks.add(new RunTask(binary, geneIds, (int) ((long) i*numBlocks/numThreads_), (int) ((long) (i+1)*numBlocks/numThreads_)));
+		} else if (GzipReader.isGzip(filename_)) {
+			tasks.add(new RunTask(new MappedFileParser(new GzipReader(filename_, numThreads_))));
+		} else {
+			long[] boundaries = PredictionLoader.findChunkBoundaries(filename_, numThreads_);
+			for (int i=0; i<boundaries.length-1; i++)
+				tasks.add(new RunTask(boundaries[i], boundaries[i+1]));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			for (RunTask task : tasks)
+				pool.execute(task);
+			for (RunTask task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+			if (binary != null)
+				binary.close();
+		}
+
+		// Collect the runs in file order, the first error in the file is reported
+		for (RunTask task : tasks) {
+			if (task.errorLine_ > 0) {
+				close();
+				throw new RuntimeException("Parse error at line " + (numLines_ + task.errorLine_) + ": expected three columns");
+			}
+			if (task.exception_ != null) {
+				close();
+				throw task.exception_;
+			}
+			runs_.addAll(task.runs_);
+			numLines_ += task.numLines_;
+			numEdges_ += task.numEdges_;
+		}
+		if (numLines_ == 0) {
+			close();
+			throw new RuntimeException("The file is empty!");
+		}
+		Evaluation.println("Sorted " + numEdges_ + " edges in " + runs_.size() + " runs of at most " + runSize_ + " edges");
+
+		// Reduce the number of runs to MAX_FAN_IN
+		while (runs_.size() > MAX_FAN_IN) {
+			ArrayList<File> group = new ArrayList<File>(runs_.subList(0, MAX_FAN_IN));
+			runs_.subList(0, MAX_FAN_IN).clear();
+			runs_.add(mergeRuns(group));
+		}
+		merger_ = new Merger(runs_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Move to the next edge in the order of decreasing scores, return false if there is none */
+	public boolean nextEdge() {
+
+		return merger_.next();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Close and delete the run files */
+	public void close() {
+
+		if (merger_ != null)
+			merger_.close();
+		File[] files = runDir_.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		runDir_.delete();
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Return a new run file */
+	private synchronized File newRunFile() {
+
+		return new File(runDir_, "run" + (numRunFiles_++) + ".bin");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Merge the runs into a new run, the merged runs are deleted */
+	private File mergeRuns(ArrayList<File> runs) {
+
+		File file = newRunFile();
+		Merger merger = new Merger(runs);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+			try {
+				while (merger.next())
+					writeEdge(out, merger.key_, merger.TF_, merger.target_);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write the run " + file + ": " + e.getMessage(), e);
+		} finally {
+			merger.close();
+		}
+		for (File run : runs)
+			run.delete();
+		return file;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write an edge of a run */
+	private static void writeEdge(DataOutputStream out, long key, int TF, int target) throws IOException {
+
+		out.writeLong(key);
+		out.writeInt(TF);
+		out.writeInt(target);
+	}
+
+
+	// ============================================================================
+	// RUN TASK
+
+	/** Parse a chunk of the file and spill its edges in sorted runs */
+	@SuppressWarnings("serial")
+	private class RunTask extends RecursiveAction {
+
+		/** The first byte of the chunk */
+		private long start_ = -1;
+		/** The end of the chunk (exclusive) */
+		private long end_ = -1;
+		/** The parser of a gzip file (null to parse start_..end_-1 of the file) */
+		private MappedFileParser parser_ = null;
+		/** The binary prediction, the chunk is the blocks start_..end_-1 (null for a text file) */
+		private BinaryPrediction binary_ = null;
+		/** The gold standard id of each gene of the binary prediction */
+		private int[] geneIds_ = null;
+
+		/** The runs of the chunk */
+		private ArrayList<File> runs_ = new ArrayList<File>();
+		/** The number of lines of the chunk */
+		private long numLines_ = 0;
+		/** The number of retained edges */
+		private long numEdges_ = 0;
+		/** The line of the chunk with a missing column (1 for the first line of the chunk), 0 if none */
+		private int errorLine_ = 0;
+		/** Other exception while parsing (e.g., malformed number) */
+		private RuntimeException exception_ = null;
+
+		/** The score keys of the buffer */
+		private long[] keys_ = null;
+		/** The regulators of the buffer */
+		private int[] regulators_ = null;
+		/** The targets of the buffer */
+		private int[] targets_ = null;
+		/** The number of edges in the buffer */
+		private int size_ = 0;
+
+		/** Constructor */
+		public RunTask(long start, long end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Constructor, parses the whole text of the parser (gzip file) */
+		public RunTask(MappedFileParser parser) {
+			parser_ = parser;
+		}
+
+		/** Constructor, reads the blocks start..end-1 of a binary prediction */
+		public RunTask(BinaryPrediction binary, int[] geneIds, int start, int end) {
+			binary_ = binary;
+			geneIds_ = geneIds;
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Parse the chunk, errors are stored and reported when the runs are collected */
+		protected void compute() {
+
+			if (binary_ != null) {
+				try {
+					readBlocks();
+				} catch (RuntimeException e) {
+					exception_ = e;
+				}
+				releaseBuffer();
+				return;
+			}
+			if (parser_ == null && end_ <= start_)
+				return;
+
+			MappedFileParser parser = (parser_ != null) ? parser_ : new MappedFileParser(filename_, start_, end_);
+			SymbolTable symbols = gold_.getSymbols();
+			try {
+				while (parser.nextLine()) {
+					// Check that the line has three columns
+					if (parser.getNumColumns() != 3) {
+						errorLine_ = parser.getLineCounter();
+						break;
+					}
+					int TF = parser.find(0, symbols);
+					int target = parser.find(1, symbols);
+
+					// Check that the TF is a regulator and the target is a gene of the gold standard
+					if (TF >= 0 && gold_.isRegulator(TF) && target >= 0)
+						add(TF, target, parser.parseDouble(2));
+				}
+				if (size_ > 0 && errorLine_ == 0)
+					spill();
+			} catch (RuntimeException e) {
+				exception_ = e;
+			}
+			numLines_ = parser.getLineCounter();
+			parser.close();
+			releaseBuffer();
+		}
+
+		/** Read the edges of the binary blocks, each edge counts as a line */
+		private void readBlocks() {
+
+			for (int b=(int) start_; b<end_; b++) {
+				BinaryPrediction.Block block = binary_.getBlock(b);
+				for (int k=0; k<block.size(); k++) {
+					int TF = geneIds_[block.getRegulator(k)];
+					int target = geneIds_[block.getTarget(k)];
+					if (TF >= 0 && gold_.isRegulator(TF) && target >= 0)
+						add(TF, target, block.getScore(k));
+				}
+				numLines_ += block.size();
+			}
+			if (size_ > 0)
+				spill();
+		}
+
+		/** Add an edge to the buffer, a full buffer is spilled first */
+		private void add(int TF, int target, double score) {
+
+			if (keys_ == null) {
+				int capacity = Math.min(runSize_, 1024);
+				keys_ = new long[capacity];
+				regulators_ = new int[capacity];
+				targets_ = new int[capacity];
+			} else if (size_ == keys_.length) {
+				if (size_ == runSize_)
+					spill();
+				else
+					grow();
+			}
+			keys_[size_] = ScoreSort.toKey(score);
+			regulators_[size_] = TF;
+			targets_[size_] = target;
+			size_++;
+			numEdges_++;
+		}
+
+		/** The buffer is not needed anymore */
+		private void releaseBuffer() {
+
+			keys_ = null;
+			regulators_ = null;
+			targets_ = null;
+		}
+
+		/** Sort the buffer and write it to a new run */
+		private void spill() {
+
+			int[] index = new int[size_];
+			for (int i=0; i<size_; i++)
+				index[i] = i;
+			// The chunks are already sorted in parallel
+			ScoreSort.sort(keys_, index, size_, 1);
+
+			File file = newRunFile();
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+				try {
+					for (int i=0; i<size_; i++)
+						writeEdge(out, keys_[i], regulators_[index[i]], targets_[index[i]]);
+				} finally {
+					out.close();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot write the run " + file + ": " + e.getMessage(), e);
+			}
+			runs_.add(file);
+			size_ = 0;
+		}
+
+		/** Double the size of the buffer (at most runSize_) */
+		private void grow() {
+
+			int capacity = (int) Math.min(runSize_, 2L*keys_.length);
+			keys_ = Arrays.copyOf(keys_, capacity);
+			regulators_ = Arrays.copyOf(regulators_, capacity);
+			targets_ = Arrays.copyOf(targets_, capacity);
+		}
+	}
+
+
+	// ============================================================================
+	// MERGER
+
+	/** K-way merge of sorted runs with a binary heap over the heads of the runs */
+	private class Merger {
+
+		/** The open runs */
+		private DataInputStream[] inputs_ = null;
+		/** The heap of the runs (indexes in inputs_), ordered by the key of their head */
+		private int[] heap_ = null;
+		/** The key of the head of each run */
+		private long[] headKeys_ = null;
+		/** The regulator of the head of each run */
+		private int[] headTFs_ = null;
+		/** The target of the head of each run */
+		private int[] headTargets_ = null;
+		/** The number of runs in the heap */
+		private int size_ = 0;
+
+		/** The key of the current edge */
+		private long key_ = 0;
+		/** The regulator of the current edge */
+		private int TF_ = -1;
+		/** The target of the current edge */
+		private int target_ = -1;
+
+		/** Constructor, opens the runs and reads their first edge */
+		public Merger(ArrayList<File> runs) {
+
+			int n = runs.size();
+			inputs_ = new DataInputStream[n];
+			heap_ = new int[n];
+			headKeys_ = new long[n];
+			headTFs_ = new int[n];
+			headTargets_ = new int[n];
+
+			for (int i=0; i<n; i++) {
+				try {
+					inputs_[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), IO_BUFFER_SIZE));
+				} catch (IOException e) {
+					close();
+					throw new RuntimeException("Cannot read the run " + runs.get(i) + ": " + e.getMessage(), e);
+				}
+				if (readHead(i)) {
+					heap_[size_] = i;
+					siftUp(size_++);
+				}
+			}
+		}
+
+		/** Move to the next edge, return false if all runs are exhausted */
+		public boolean next() {
+
+			if (size_ == 0)
+				return false;
+
+			int run = heap_[0];
+			key_ = headKeys_[run];
+			TF_ = headTFs_[run];
+			target_ = headTargets_[run];
+
+			if (!readHead(run))
+				heap_[0] = heap_[--size_];
+			if (size_ > 0)
+				siftDown(0);
+			return true;
+		}
+
+		/** Close the runs */
+		public void close() {
+
+			for (DataInputStream input : inputs_) {
+				try {
+					if (input != null)
+						input.close();
+				} catch (IOException e) {
+					// The files are deleted anyway
+				}
+			}
+		}
+
+		/** Read the next edge of the run, return false at the end of the run */
+		private boolean readHead(int run) {
+
+			try {
+				headKeys_[run] = inputs_[run].readLong();
+				headTFs_[run] = inputs_[run].readInt();
+				headTargets_[run] = inputs_[run].readInt();
+				return true;
+			} catch (EOFException e) {
+				return false;
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot read a run: " + e.getMessage(), e);
+			}
+		}
+
+		/** Move the run at i up until its parent has a smaller or equal key */
+		private void siftUp(int i) {
+
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (headKeys_[heap_[parent]] <= headKeys_[heap_[i]])
+					return;
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		/** Move the run at i down until its children have larger or equal keys */
+		private void siftDown(int i) {
+
+			while (true) {
+				int smallest = i;
+				int left = 2*i + 1;
+				int right = left + 1;
+				if (left < size_ && headKeys_[heap_[left]] < headKeys_[heap_[smallest]])
+					smallest = left;
+				if (right < size_ && headKeys_[heap_[right]] < headKeys_[heap_[smallest]])
+					smallest = right;
+				if (smallest == i)
+					return;
+				swap(i, smallest);
+				i = smallest;
+			}
+		}
+
+		/** Swap the runs at i and j of the heap */
+		private void swap(int i, int j) {
+
+			int run = heap_[i];
+			heap_[i] = heap_[j];
+			heap_[j] = run;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** The score key of the current edge (see ScoreSort.toKey()) */
+	public long getKey() { return merger_.key_; }
+	public double getScore() { return ScoreSort.toScore(merger_.key_); }
+	public int getRegulator() { return merger_.TF_; }
+	public int getTarget() { return merger_.target_; }
+
+	public long getNumLines() { return numLines_; }
+	public long getNumEdges() { return numEdges_; }
+	public int getNumRuns() { return runs_.size(); }
+}
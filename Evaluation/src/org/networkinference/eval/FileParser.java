@@ -29,12 +29,15 @@ import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
 
 
 /**
- * Parse a tab-separated value file (other separators than tab can also be set)
+ * Parse a tab-separated value file (other separators than tab can also be set).
+ * Gzip-compressed files are decompressed on the fly.
  */
 public class FileParser {
 
@@ -46,6 +49,8 @@ public class FileParser {
 	private int lineCounter_ = 0;
 	/** Next line */
 	private String nextLine_ = null;
+	/** The file */
+	private String filename_ = null;
 	
 	
 	// ============================================================================
@@ -54,13 +59,16 @@ public class FileParser {
 	/** Constructor */
 	public FileParser(String filename) {
 
+		filename_ = filename;
 		try {
 			System.out.println("Reading file: " + filename);
-			FileInputStream fstream = new FileInputStream(filename);
+			InputStream fstream = new FileInputStream(filename);
+			if (GzipReader.isGzip(filename))
+				fstream = new GZIPInputStream(fstream, 1 << 16);
 			DataInputStream in = new DataInputStream(fstream);
 			reader_ = new BufferedReader(new InputStreamReader(in));
-		} catch (Exception e) {
-			Evaluation.error(e);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename + ": " + e.getMessage(), e);
 		}
 	}
 	
@@ -74,7 +82,7 @@ public class FileParser {
 			lineCounter_++;
 			nextLine_ = reader_.readLine();
 		} catch (IOException e) {
-			Evaluation.error(e);
+			throw new RuntimeException("Cannot read " + filename_ + ": " + e.getMessage(), e);
 		}
 		
 		if (nextLine_ == null)
@@ -101,7 +109,7 @@ public class FileParser {
 				data.add(nextLine_.split(separator_));
 			}
 		} catch (IOException e) {
-			Evaluation.error(e);
+			throw new RuntimeException("Cannot read " + filename_ + ": " + e.getMessage(), e);
 		}
 		
 		return data;
@@ -116,7 +124,7 @@ public class FileParser {
 		try {
 			reader_.close();
 		} catch (IOException e) {
-			Evaluation.error(e);
+			throw new RuntimeException("Cannot close " + filename_ + ": " + e.getMessage(), e);
 		}
 	}
 	  
@@ -130,7 +138,7 @@ public class FileParser {
 			for (int i=0; i<N; i++)
 				reader_.readLine();
 		} catch (IOException e) {
-			Evaluation.error(e);
+			throw new RuntimeException("Cannot read " + filename_ + ": " + e.getMessage(), e);
 		}
 	}
 
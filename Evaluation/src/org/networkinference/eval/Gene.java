@@ -29,59 +29,44 @@ import java.util.HashSet;
 
 
 /**
- * Represents a node (gene) of the network
+ * Represents a node (gene) of the network. The gold standard edges are not
+ * stored in the gene itself, the gene is a view on the GoldStandard.
  */
 public class Gene {
 
 	/** The name of the gene (unique ID) */
 	private String name_ = null;
+	/** The integer id of the gene (index in the gold standard) */
+	private int id_ = -1;
 	
-	/** The regulators / incoming edges of this gene */
-	private HashSet<Gene> regulators_ = null;
-	/** The target genes / outgoing edges of this gene */
-	private HashSet<Gene> targets_ = null;
+	/** The gold standard that this gene is part of */
+	private GoldStandard gold_ = null;
 	
 	
 	// ============================================================================
 	// PUBLIC METHODS
 	    
 	/** Constructor */
-	public Gene(String name) {
+	public Gene(String name, int id, GoldStandard gold) {
 		
 		name_ = name;
-		regulators_ = new HashSet<Gene>();
-		targets_ = new HashSet<Gene>();
+		id_ = id;
+		gold_ = gold;
 	}
 	
-	
-    // ----------------------------------------------------------------------------
-
-	/** Add the given gene to the set of regulators */
-	public void addRegulator(Gene n) {
-		regulators_.add(n);
-	}
 
-	
     // ----------------------------------------------------------------------------
 
-	/** Add the given node to the set of targets */
-	public void addTarget(Gene n) {
-		targets_.add(n);
-	}
-
-
-    // ----------------------------------------------------------------------------
-
-	/** Return true if g is in the set of targets_ */
+	/** Return true if g is a target of this gene */
 	public boolean regulates(Gene g) {
-		return targets_.contains(g);
+		return gold_.isEdge(id_, g.id_);
 	}
 
     // ----------------------------------------------------------------------------
 
-	/** Return true if g is in the set of regulators_ */
+	/** Return true if g is a regulator of this gene */
 	public boolean isRegulatedBy(Gene g) {
-		return regulators_.contains(g);
+		return gold_.isEdge(g.id_, id_);
 	}
 
 	
@@ -89,21 +74,34 @@ public class Gene {
 
 	/** Return true if the gene has at least one target */
 	public boolean isRegulator() {
-		return targets_.size() > 0;
+		return gold_.isRegulator(id_);
 	}
 
 	
 	// ============================================================================
 	// PRIVATE METHODS
 
+	/** Return the genes of the given CSR list as a set */
+	private HashSet<Gene> toSet(int[] offsets, int[] list) {
+		
+		HashSet<Gene> set = new HashSet<Gene>();
+		for (int i=offsets[id_]; i<offsets[id_+1]; i++)
+			set.add(gold_.getGene(list[i]));
+		
+		return set;
+	}
+	
     
 	// ============================================================================
 	// SETTERS AND GETTERS
 
 	public String getName() { return name_; }
-	public HashSet<Gene> getRegulators() { return regulators_; }
-	public HashSet<Gene> getTargets() { return targets_; }
-
+	public int getId() { return id_; }
+	public GoldStandard getGoldStandard() { return gold_; }
 	
+	/** Return a new set with the regulators / incoming edges of this gene */
+	public HashSet<Gene> getRegulators() { return toSet(gold_.getRegulatorOffsets(), gold_.getRegulators()); }
+	/** Return a new set with the target genes / outgoing edges of this gene */
+	public HashSet<Gene> getTargets() { return toSet(gold_.getTargetOffsets(), gold_.getTargets()); }
 	
 }
@@ -0,0 +1,381 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * The gold standard network in a compact, immutable form. Genes are identified
+ * by dense integer ids (0..numGenes-1). The edges are stored twice:
+ *
+ * - As CSR (compressed sparse row) arrays, giving the sorted targets of each
+ *   gene and the sorted regulators of each gene.
+ * - As a packed bit matrix with one row per regulator and one bit per gene,
+ *   so that testing whether an edge is part of the gold standard is a single
+ *   bit lookup. For 1,600 regulators x 20,000 genes this takes 4 MB.
+ *
+ * Duplicate edges in the input are stored only once. The Gene objects are
+ * read-only views on this structure. A gold standard is never modified after
+ * construction, so it can be shared by threads evaluating different predictions.
+ */
+public class GoldStandard {
+
+	/** The number of edges listed in the file (duplicate edges are counted each time) */
+	private int numListedEdges_ = -1;
+	/** The names of the genes, the id of a gene is its index in the symbol table */
+	private SymbolTable symbols_ = null;
+	/** The genes, the index is the gene id (created on first use, see createGenes()) */
+	private volatile Gene[] genes_ = null;
+	/** The genes (the key is the name of the gene), set before genes_ */
+	private HashMap<String, Gene> geneMap_ = null;
+
+	/** The row of each gene in the bit matrix, -1 if the gene is not a regulator */
+	private int[] regulatorIndex_ = null;
+	/** The gene id of each row of the bit matrix (the regulators sorted by id) */
+	private int[] regulatorIds_ = null;
+
+	/** The number of 64-bit words per row of the bit matrix */
+	private int wordsPerRow_ = -1;
+	/** The regulator x gene bit matrix, row-major */
+	private long[] matrix_ = null;
+
+	/** CSR offsets of the targets, targets of gene i are targets_[targetOffsets_[i]..targetOffsets_[i+1]-1] */
+	private int[] targetOffsets_ = null;
+	/** CSR array with the targets of all genes */
+	private int[] targets_ = null;
+	/** CSR offsets of the regulators, regulators of gene i are regulators_[regulatorOffsets_[i]..regulatorOffsets_[i+1]-1] */
+	private int[] regulatorOffsets_ = null;
+	/** CSR array with the regulators of all genes */
+	private int[] regulators_ = null;
+
+	/** Hash of the content (gene names, edges and number of listed edges), identifies the gold standard in caches */
+	private long contentHash_ = 0;
+
+	/** The number of transitive edges among all negatives (see ErrorMatrices), -1 if not precomputed */
+	private int numTransitiveNegatives_ = -1;
+	/** The number of co-regulation edges among all negatives, -1 if not precomputed */
+	private int numCoregulationNegatives_ = -1;
+	/** The counts of the triads and 4-node closures of the negatives (see MotifAnalysis.countNegatives()), null if not precomputed */
+	private long[] negativeTriads_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/**
+	 * Constructor. The gene with id i has the name symbols.getName(i), the first
+	 * numEdges entries of TFs and targets give the edges (as gene ids). The symbol
+	 * table must not be modified afterwards.
+	 */
+	public GoldStandard(SymbolTable symbols, int[] TFs, int[] targets, int numEdges) {
+
+		numListedEdges_ = numEdges;
+		symbols_ = symbols;
+		int numGenes = symbols.size();
+
+		// Find the regulators, sorted by id
+		regulatorIndex_ = new int[numGenes];
+		for (int e=0; e<numEdges; e++)
+			regulatorIndex_[TFs[e]] = 1;
+		int numRegulators = 0;
+		for (int i=0; i<numGenes; i++)
+			numRegulators += regulatorIndex_[i];
+
+		regulatorIds_ = new int[numRegulators];
+		for (int i=0, row=0; i<numGenes; i++) {
+			if (regulatorIndex_[i] == 1) {
+				regulatorIds_[row] = i;
+				regulatorIndex_[i] = row++;
+			} else {
+				regulatorIndex_[i] = -1;
+			}
+		}
+
+		// Set the bits, this also removes duplicate edges
+		wordsPerRow_ = (numGenes + 63) >>> 6;
+		matrix_ = new long[numRegulators * wordsPerRow_];
+		for (int e=0; e<numEdges; e++)
+			matrix_[regulatorIndex_[TFs[e]]*wordsPerRow_ + (targets[e] >>> 6)] |= 1L << targets[e];
+
+		buildAdjacencyLists(numGenes);
+		contentHash_ = computeContentHash();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Constructor used to restore a snapshot, the arrays are those returned by the getters
+	 * (see GoldStandardSnapshot). The content hash is not recomputed, the snapshot has a checksum.
+	 */
+	GoldStandard(SymbolTable symbols, int numListedEdges, int[] regulatorIds, long[] matrix,
+			int[] targetOffsets, int[] targets, int[] regulatorOffsets, int[] regulators, long contentHash) {
+
+		numListedEdges_ = numListedEdges;
+		symbols_ = symbols;
+		regulatorIds_ = regulatorIds;
+		matrix_ = matrix;
+		targetOffsets_ = targetOffsets;
+		targets_ = targets;
+		regulatorOffsets_ = regulatorOffsets;
+		regulators_ = regulators;
+
+		int numGenes = symbols.size();
+		wordsPerRow_ = (numGenes + 63) >>> 6;
+		regulatorIndex_ = new int[numGenes];
+		Arrays.fill(regulatorIndex_, -1);
+		for (int row=0; row<regulatorIds.length; row++)
+			regulatorIndex_[regulatorIds[row]] = row;
+
+		contentHash_ = contentHash;
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/** Load the gold standard from the given file (the gene ids are assigned in the order of appearance) */
+	public static GoldStandard load(String file) {
+		
+		return load(file, Runtime.getRuntime().availableProcessors());
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/** Load the gold standard, a gzip-compressed file is decompressed with the given number of threads */
+	public static GoldStandard load(String file, int numThreads) {
+		
+		MappedFileParser parser = new MappedFileParser(file, numThreads);
+		if (!parser.nextLine())
+			throw new RuntimeException("The file is empty!");
+		
+		SymbolTable symbols = new SymbolTable();
+		int numEdges = 0;
+		int[] TFs = new int[1024];
+		int[] targets = new int[1024];
+		
+		boolean twoColumnFormat = (parser.getNumColumns() == 2);
+		boolean threeColumnFormat = (parser.getNumColumns() == 3);
+		
+		do {
+			// Check format: either two columns or three columns where the third column is always '1'
+			int numColumns = parser.getNumColumns();
+			if (twoColumnFormat && numColumns != 2)
+				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected two columns");
+			if (threeColumnFormat && numColumns != 3)
+				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
+			if (numColumns < 2)
+				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected two columns");
+			if (numColumns == 3 && parser.parseInt(2) != 1)
+				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": the third column must be '1'");
+
+			if (numEdges == TFs.length) {
+				TFs = Arrays.copyOf(TFs, 2*TFs.length);
+				targets = Arrays.copyOf(targets, 2*targets.length);
+			}
+			TFs[numEdges] = parser.add(0, symbols);
+			targets[numEdges] = parser.add(1, symbols);
+			numEdges++;
+			
+		} while (parser.nextLine());
+		parser.close();
+		
+		return new GoldStandard(symbols, TFs, targets, numEdges);
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/** Return true if TF->target is an edge of the gold standard (ids of the genes) */
+	public boolean isEdge(int TF, int target) {
+
+		int row = regulatorIndex_[TF];
+		return row >= 0 && (matrix_[row*wordsPerRow_ + (target >>> 6)] & (1L << target)) != 0;
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/** Return the index of the edge TF->target in the CSR target list (getTargets()), -1 if it is not an edge */
+	public int getEdgeIndex(int TF, int target) {
+
+		int index = Arrays.binarySearch(targets_, targetOffsets_[TF], targetOffsets_[TF+1], target);
+		return (index >= 0) ? index : -1;
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/** Return true if the given gene has at least one target */
+	public boolean isRegulator(int gene) {
+		return regulatorIndex_[gene] >= 0;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Return the gene views, they are created on first use (most evaluations only use the gene ids) */
+	private Gene[] getGenes() {
+
+		Gene[] genes = genes_;
+		if (genes == null)
+			genes = createGenes();
+		return genes;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Create the gene views (once, the gold standard may be shared by threads) */
+	private synchronized Gene[] createGenes() {
+
+		if (genes_ != null)
+			return genes_;
+
+		int numGenes = symbols_.size();
+		Gene[] genes = new Gene[numGenes];
+		geneMap_ = new HashMap<String, Gene>(2*numGenes);
+		for (int i=0; i<numGenes; i++) {
+			genes[i] = new Gene(symbols_.getName(i), i, this);
+			geneMap_.put(genes[i].getName(), genes[i]);
+		}
+		genes_ = genes;
+		return genes;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Build the CSR adjacency lists from the bit matrix (the lists are sorted by id) */
+	private void buildAdjacencyLists(int numGenes) {
+
+		targetOffsets_ = new int[numGenes + 1];
+		regulatorOffsets_ = new int[numGenes + 1];
+
+		// Count the out- and in-degrees
+		for (int row=0; row<regulatorIds_.length; row++) {
+			int TF = regulatorIds_[row];
+			for (int w=0; w<wordsPerRow_; w++) {
+				long word = matrix_[row*wordsPerRow_ + w];
+				targetOffsets_[TF+1] += Long.bitCount(word);
+				while (word != 0) {
+					regulatorOffsets_[(w << 6) + Long.numberOfTrailingZeros(word) + 1]++;
+					word &= word - 1;
+				}
+			}
+		}
+		for (int i=0; i<numGenes; i++) {
+			targetOffsets_[i+1] += targetOffsets_[i];
+			regulatorOffsets_[i+1] += regulatorOffsets_[i];
+		}
+
+		// Fill the lists, the rows are visited by increasing regulator id so both lists are sorted
+		targets_ = new int[targetOffsets_[numGenes]];
+		regulators_ = new int[regulatorOffsets_[numGenes]];
+		int[] nextRegulator = new int[numGenes];
+		System.arraycopy(regulatorOffsets_, 0, nextRegulator, 0, numGenes);
+
+		for (int row=0; row<regulatorIds_.length; row++) {
+			int TF = regulatorIds_[row];
+			int nextTarget = targetOffsets_[TF];
+			for (int w=0; w<wordsPerRow_; w++) {
+				long word = matrix_[row*wordsPerRow_ + w];
+				while (word != 0) {
+					int target = (w << 6) + Long.numberOfTrailingZeros(word);
+					targets_[nextTarget++] = target;
+					regulators_[nextRegulator[target]++] = TF;
+					word &= word - 1;
+				}
+			}
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** 64-bit FNV-1a hash of the gene names (in id order), the CSR target lists and the number of listed edges */
+	private long computeContentHash() {
+
+		long hash = 0xcbf29ce484222325L;
+		for (int i=0; i<symbols_.size(); i++) {
+			String name = symbols_.getName(i);
+			for (int c=0; c<name.length(); c++)
+				hash = (hash ^ name.charAt(c)) * 0x100000001b3L;
+			hash = (hash ^ 0x10000) * 0x100000001b3L; // separator, larger than any char
+		}
+		for (int i=0; i<targetOffsets_.length; i++)
+			hash = (hash ^ targetOffsets_[i]) * 0x100000001b3L;
+		for (int i=0; i<targets_.length; i++)
+			hash = (hash ^ targets_[i]) * 0x100000001b3L;
+		return (hash ^ numListedEdges_) * 0x100000001b3L;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int getNumGenes() { return symbols_.size(); }
+	public int getNumRegulators() { return regulatorIds_.length; }
+	/** The number of distinct edges (duplicate lines in the gold standard file are counted once) */
+	public int getNumEdges() { return targets_.length; }
+	public int getNumListedEdges() { return numListedEdges_; }
+
+	public Gene getGene(int id) { return getGenes()[id]; }
+	public Gene getGene(String name) { return getGeneMap().get(name); }
+	public HashMap<String, Gene> getGeneMap() { getGenes(); return geneMap_; }
+	public SymbolTable getSymbols() { return symbols_; }
+
+	public int getRegulatorIndex(int gene) { return regulatorIndex_[gene]; }
+	public int[] getRegulatorIds() { return regulatorIds_; }
+
+	public int getWordsPerRow() { return wordsPerRow_; }
+	public long[] getMatrix() { return matrix_; }
+
+	public int[] getTargetOffsets() { return targetOffsets_; }
+	public int[] getTargets() { return targets_; }
+	public int[] getRegulatorOffsets() { return regulatorOffsets_; }
+	public int[] getRegulators() { return regulators_; }
+
+	/** Hash of the gene names and edges, equal gold standards have the same hash */
+	public long getContentHash() { return contentHash_; }
+
+	public int getNumTransitiveNegatives() { return numTransitiveNegatives_; }
+	public int getNumCoregulationNegatives() { return numCoregulationNegatives_; }
+	public long[] getNegativeTriads() { return negativeTriads_; }
+
+	/**
+	 * Set the precomputed counts of the negatives (see GoldStandardSnapshot). They only
+	 * depend on the gold standard, so they are set once, before it is shared.
+	 */
+	public void setNegativeCounts(int numTransitive, int numCoregulation, long[] triads) {
+		numTransitiveNegatives_ = numTransitive;
+		numCoregulationNegatives_ = numCoregulation;
+		negativeTriads_ = triads;
+	}
+}
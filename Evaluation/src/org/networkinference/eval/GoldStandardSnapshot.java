@@ -0,0 +1,400 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+
+/**
+ * Binary snapshots of gold standards. The first time a gold standard file is
+ * loaded, its parsed form is written to the cache directory: the bit matrix,
+ * the CSR adjacency lists and the symbol table of the gene names, including
+ * its hash table. Later runs map the snapshot into memory and copy each array
+ * in bulk from the mapped file, nothing is parsed, hashed or decoded value by
+ * value. The values are little-endian (the native order of common platforms),
+ * and the arrays of longs come first so that they are aligned.
+ *
+ * The counts that only depend on the gold standard and are needed by --motifs
+ * (the transitive, co-regulation, triad and 4-node counts of the negatives) are not
+ * computed when the snapshot is written. They are computed by the first run
+ * that needs them and then added to the snapshot (see storeNegativeCounts()).
+ *
+ * A snapshot is used only if the size and the checksum (CRC32) of the bytes of
+ * the gold standard file are those recorded in the snapshot, and if the
+ * checksum of the content of the snapshot is valid. Otherwise the text file is
+ * parsed and the snapshot is written again. The checksum of the file is
+ * computed on the mapped file, so that an edit that keeps the size and the
+ * modification time of the file is also detected.
+ */
+public class GoldStandardSnapshot {
+
+	/** The first bytes of a snapshot */
+	private static final int MAGIC = 0x47534E50; // "GSNP"
+	/** The version of the snapshot format */
+	private static final int VERSION = 4;
+	/** The size of the header, the content starts at this (aligned) offset */
+	private static final int HEADER_SIZE = 64;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Load the gold standard from its snapshot in cacheDir, or parse the file and write the snapshot */
+	public static GoldStandard load(String goldFile, String cacheDir) {
+
+		return load(goldFile, cacheDir, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Same as load(goldFile, cacheDir), the file is parsed with the given number of threads (see GoldStandard.load()) */
+	public static GoldStandard load(String goldFile, String cacheDir, int numThreads) {
+
+		File source = new File(goldFile);
+		if (!source.isFile())
+			throw new RuntimeException("File not found: " + goldFile);
+		File snapshot = new File(cacheDir, getSnapshotFilename(source));
+
+		if (snapshot.isFile()) {
+			GoldStandard gold = read(snapshot, source);
+			if (gold != null) {
+				Evaluation.println("Reading gold standard snapshot: " + snapshot.getPath());
+				return gold;
+			}
+		}
+
+		// The size and checksum before parsing, so that a file modified meanwhile is parsed again next time
+		long length = source.length();
+		long sourceChecksum = -1;
+		try {
+			sourceChecksum = checksum(source);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + goldFile + ": " + e.getMessage(), e);
+		}
+		GoldStandard gold = GoldStandard.load(goldFile, numThreads);
+		write(gold, length, sourceChecksum, snapshot);
+		return gold;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Compute the counts of the negatives if the gold standard does not have them yet, and
+	 * add them to its snapshot in cacheDir (if the snapshot is up to date and of the same
+	 * gold standard). Must be called before the gold standard is shared by threads.
+	 */
+	public static void storeNegativeCounts(GoldStandard gold, String goldFile, String cacheDir, int numThreads) {
+
+		if (gold.getNegativeTriads() != null)
+			return;
+		computeNegativeCounts(gold, numThreads);
+
+		File source = new File(goldFile);
+		File snapshot = new File(cacheDir, getSnapshotFilename(source));
+		long[] header = readHeader(snapshot);
+		if (header != null && header[0] == source.length() && header[2] == gold.getContentHash())
+			write(gold, header[0], header[1], snapshot);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the counts of the negatives that are stored in the snapshot (see GoldStandard.setNegativeCounts()) */
+	public static void computeNegativeCounts(GoldStandard gold, int numThreads) {
+
+		ErrorMatrices errors = new ErrorMatrices(gold, numThreads);
+		long[] triads = new MotifAnalysis(gold, null, numThreads).countNegatives();
+		gold.setNegativeCounts(errors.countTransitive(), errors.countCoregulation(), triads);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** The name of the snapshot of the given file, based on a hash of its absolute path */
+	private static String getSnapshotFilename(File source) {
+
+		String path = source.getAbsolutePath();
+		long hash = 0xcbf29ce484222325L;
+		for (int i=0; i<path.length(); i++)
+			hash = (hash ^ path.charAt(i)) * 0x100000001b3L;
+
+		return String.format("gold_%s_%016x.snapshot", source.getName(), hash);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The size in bytes of a snapshot with the given dimensions */
+	private static long getSize(int numGenes, int numRegulators, int numEdges, int poolLength, int tableLength, int numTriads) {
+
+		long wordsPerRow = (numGenes + 63) >>> 6;
+		return HEADER_SIZE + 8*(numRegulators*wordsPerRow + Math.max(0, numTriads)) + 4*(2 + numRegulators
+				+ 2L*(numGenes + 1) + 2L*numEdges + (numGenes + 1) + numGenes + tableLength) + poolLength;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the size and checksum of the source and the content hash recorded in the snapshot, null if it is not valid */
+	private static long[] readHeader(File snapshot) {
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+			try {
+				if (file.length() < HEADER_SIZE)
+					return null;
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				file.getChannel().read(header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+					return null;
+				return new long[] { header.getLong(8), header.getLong(16), header.getLong(24) };
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Restore the gold standard from the snapshot, return null if it is invalid or outdated */
+	private static GoldStandard read(File snapshot, File source) {
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+			try {
+				long length = file.length();
+				if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+					return null;
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+				if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+					return null;
+				if (buffer.getLong() != source.length() || buffer.getLong() != checksum(source))
+					return null;
+				long contentHash = buffer.getLong();
+				int checksum = buffer.getInt();
+				int numGenes = buffer.getInt();
+				int numListedEdges = buffer.getInt();
+				int numRegulators = buffer.getInt();
+				int numEdges = buffer.getInt();
+				int poolLength = buffer.getInt();
+				int tableLength = buffer.getInt();
+				int numTriads = buffer.getInt();
+				if (numGenes < 0 || numRegulators < 0 || numEdges < 0 || poolLength < 0 || Integer.bitCount(tableLength) != 1
+						|| length != getSize(numGenes, numRegulators, numEdges, poolLength, tableLength, numTriads))
+					return null;
+
+				// The checksum of the content, computed on the mapped file
+				CRC32 crc = new CRC32();
+				buffer.position(HEADER_SIZE);
+				crc.update(buffer);
+				if ((int) crc.getValue() != checksum)
+					return null;
+				buffer.position(HEADER_SIZE);
+
+				int wordsPerRow = (numGenes + 63) >>> 6;
+				long[] matrix = readLongs(buffer, numRegulators*wordsPerRow);
+				long[] triads = (numTriads >= 0) ? readLongs(buffer, numTriads) : null;
+				int numTransitive = buffer.getInt();
+				int numCoregulation = buffer.getInt();
+
+				int[] regulatorIds = readInts(buffer, numRegulators);
+				int[] targetOffsets = readInts(buffer, numGenes + 1);
+				int[] targets = readInts(buffer, numEdges);
+				int[] regulatorOffsets = readInts(buffer, numGenes + 1);
+				int[] regulators = readInts(buffer, numEdges);
+
+				int[] nameOffsets = readInts(buffer, numGenes + 1);
+				int[] nameHashes = readInts(buffer, numGenes);
+				int[] table = readInts(buffer, tableLength);
+				byte[] pool = new byte[poolLength];
+				buffer.get(pool);
+				SymbolTable symbols = new SymbolTable(pool, nameOffsets, nameHashes, numGenes, table);
+
+				GoldStandard gold = new GoldStandard(symbols, numListedEdges, regulatorIds, matrix,
+						targetOffsets, targets, regulatorOffsets, regulators, contentHash);
+				if (triads != null)
+					gold.setNegativeCounts(numTransitive, numCoregulation, triads);
+				return gold;
+
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// Corrupt snapshot (e.g., buffer underflow), the file is parsed again
+			return null;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The checksum (CRC32) of the bytes of the file, computed on the mapped file */
+	private static long checksum(File source) throws IOException {
+
+		CRC32 crc = new CRC32();
+		RandomAccessFile file = new RandomAccessFile(source, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			// Files larger than 2 GB are mapped in several windows
+			for (long position=0; position<size; position+=Integer.MAX_VALUE)
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+		} finally {
+			file.close();
+		}
+		return crc.getValue();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Copy n ints at the position of the buffer in bulk and advance the position */
+	private static int[] readInts(ByteBuffer buffer, int n) {
+
+		int[] values = new int[n];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4*n);
+		return values;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Copy n longs at the position of the buffer in bulk and advance the position */
+	private static long[] readLongs(ByteBuffer buffer, int n) {
+
+		long[] values = new long[n];
+		buffer.asLongBuffer().get(values);
+		buffer.position(buffer.position() + 8*n);
+		return values;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the snapshot of the gold standard, given the size and checksum of its file (a failure only prints a warning) */
+	private static void write(GoldStandard gold, long sourceLength, long sourceChecksum, File snapshot) {
+
+		try {
+			int numGenes = gold.getNumGenes();
+			int numRegulators = gold.getNumRegulators();
+			int numEdges = gold.getNumEdges();
+			SymbolTable symbols = gold.getSymbols();
+			int[] nameOffsets = symbols.getOffsets();
+			int poolLength = nameOffsets[numGenes];
+			int tableLength = symbols.getTable().length;
+			long[] triads = gold.getNegativeTriads();
+			int numTriads = (triads == null) ? -1 : triads.length;
+			long size = getSize(numGenes, numRegulators, numEdges, poolLength, tableLength, numTriads);
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("The gold standard is too large for a snapshot");
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position(HEADER_SIZE);
+			putLongs(buffer, gold.getMatrix(), gold.getMatrix().length);
+			if (triads != null)
+				putLongs(buffer, triads, numTriads);
+			buffer.putInt(gold.getNumTransitiveNegatives());
+			buffer.putInt(gold.getNumCoregulationNegatives());
+
+			putInts(buffer, gold.getRegulatorIds(), numRegulators);
+			putInts(buffer, gold.getTargetOffsets(), numGenes + 1);
+			putInts(buffer, gold.getTargets(), numEdges);
+			putInts(buffer, gold.getRegulatorOffsets(), numGenes + 1);
+			putInts(buffer, gold.getRegulators(), numEdges);
+
+			putInts(buffer, nameOffsets, numGenes + 1);
+			putInts(buffer, symbols.getHashes(), numGenes);
+			putInts(buffer, symbols.getTable(), tableLength);
+			buffer.put(symbols.getPool(), 0, poolLength);
+
+			CRC32 crc = new CRC32();
+			crc.update(buffer.array(), HEADER_SIZE, (int) size - HEADER_SIZE);
+
+			buffer.position(0);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(sourceLength);
+			buffer.putLong(sourceChecksum);
+			buffer.putLong(gold.getContentHash());
+			buffer.putInt((int) crc.getValue());
+			buffer.putInt(numGenes);
+			buffer.putInt(gold.getNumListedEdges());
+			buffer.putInt(numRegulators);
+			buffer.putInt(numEdges);
+			buffer.putInt(poolLength);
+			buffer.putInt(tableLength);
+			buffer.putInt(numTriads);
+			buffer.position(0);
+
+			AtomicFile.write(snapshot, channel -> {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			});
+			Evaluation.println("Wrote gold standard snapshot: " + snapshot.getPath());
+
+		} catch (IOException e) {
+			System.err.println("Warning: the gold standard snapshot could not be written: " + e.getMessage());
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Put the first n values of the array in bulk */
+	private static void putInts(ByteBuffer buffer, int[] values, int n) {
+
+		buffer.asIntBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 4*n);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Put the first n values of the array in bulk */
+	private static void putLongs(ByteBuffer buffer, long[] values, int n) {
+
+		buffer.asLongBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 8*n);
+	}
+}
@@ -0,0 +1,513 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+
+/**
+ * Decompress a gzip file in the background and return its text in blocks that
+ * end at a line boundary, so that each block can be tokenized on its own (see
+ * MappedFileParser and PredictionLoader). The blocks go through a bounded queue:
+ * decompression runs ahead of the parser by at most a few blocks.
+ *
+ * Multi-member files in BGZF format (bgzip, members of at most 64 KB with their
+ * compressed size in the header) are decompressed in parallel: a reader thread
+ * splits the file into groups of members, which are inflated by a pool of
+ * threads and queued in file order. The members of other gzip files can only
+ * be found by inflating them, such files are decompressed by a single
+ * background thread while the text is parsed.
+ */
+public class GzipReader {
+
+	/** The uncompressed size of a block (before it is aligned to a line boundary) */
+	private static final int BLOCK_SIZE = 1 << 22;
+	/** Extra space at the end of a block for the end of its last line */
+	private static final int SLACK = 1 << 16;
+	/** The number of blocks that are queued or decompressed per thread */
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	/** The gzip header flags (RFC 1952) */
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	/** The file */
+	private String filename_ = null;
+	/** True if the file is in BGZF format */
+	private boolean bgzf_ = false;
+
+	/** The decompressed blocks in file order, a block with null data marks the end */
+	private ArrayBlockingQueue<Future<Block>> queue_ = null;
+	/** The threads that inflate the members of a BGZF file (null otherwise) */
+	private ExecutorService inflaters_ = null;
+	/** The thread that reads the file */
+	private Thread reader_ = null;
+	/** Set when the reader is closed */
+	private volatile boolean closed_ = false;
+
+	/** The text that has not been returned yet (pendingStart_..pendingEnd_-1) */
+	private byte[] pending_ = null;
+	/** The start of the pending text */
+	private int pendingStart_ = 0;
+	/** The end of the pending text (exclusive) */
+	private int pendingEnd_ = 0;
+	/** Set when the last block has been taken from the queue */
+	private boolean finished_ = false;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, starts the decompression with the given number of threads (BGZF files) */
+	public GzipReader(String filename, int numThreads) {
+
+		filename_ = filename;
+		numThreads = Math.max(1, numThreads);
+		queue_ = new ArrayBlockingQueue<Future<Block>>(BLOCKS_PER_THREAD*numThreads);
+
+		try {
+			bgzf_ = isBgzf(filename);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename + ": " + e.getMessage(), e);
+		}
+		if (bgzf_) {
+			inflaters_ = Executors.newFixedThreadPool(numThreads, runnable -> {
+				Thread thread = new Thread(runnable, "gzip-inflater");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reader_ = new Thread(this::readMembers, "gzip-reader");
+		} else {
+			reader_ = new Thread(this::readStream, "gzip-reader");
+		}
+		reader_.setDaemon(true);
+		reader_.start();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the file starts with the gzip magic number */
+	public static boolean isGzip(String filename) {
+
+		try {
+			InputStream in = new FileInputStream(filename);
+			try {
+				return in.read() == 0x1f && in.read() == 0x8b;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// Reported when the file is opened by the parser
+			return false;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Return the next block of text, which ends after a newline (except the last block),
+	 * or null at the end of the file. A line is never split across blocks.
+	 */
+	public ByteBuffer nextBlock() {
+
+		if (pending_ == null) {
+			if (finished_)
+				return null;
+			Block block = take();
+			if (block == null)
+				return null;
+			pending_ = block.data_;
+			pendingStart_ = 0;
+			pendingEnd_ = block.length_;
+		}
+
+		while (true) {
+			Block next = take();
+			if (next == null) {
+				// The rest of the file (the last line may not end with a newline)
+				ByteBuffer text = ByteBuffer.wrap(pending_, pendingStart_, pendingEnd_ - pendingStart_).slice();
+				pending_ = null;
+				return text.hasRemaining() ? text : null;
+			}
+
+			// Move the end of the last line from the next block to the pending text
+			int newline = indexOf(next.data_, next.length_, (byte) '\n');
+			int head = (newline < 0) ? next.length_ : newline + 1;
+			if (pendingEnd_ + head > pending_.length) {
+				pending_ = Arrays.copyOfRange(pending_, pendingStart_, pendingEnd_ + head + SLACK);
+				pendingEnd_ -= pendingStart_;
+				pendingStart_ = 0;
+			}
+			System.arraycopy(next.data_, 0, pending_, pendingEnd_, head);
+			pendingEnd_ += head;
+			// The line continues in the following block
+			if (newline < 0)
+				continue;
+
+			ByteBuffer text = ByteBuffer.wrap(pending_, pendingStart_, pendingEnd_ - pendingStart_).slice();
+			pending_ = next.data_;
+			pendingStart_ = head;
+			pendingEnd_ = next.length_;
+			return text;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Stop the decompression */
+	public void close() {
+
+		closed_ = true;
+		reader_.interrupt();
+		if (inflaters_ != null)
+			inflaters_.shutdownNow();
+		queue_.clear();
+		pending_ = null;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Take the next block from the queue, return null at the end of the file */
+	private Block take() {
+
+		if (finished_)
+			return null;
+		try {
+			Block block = queue_.take().get();
+			if (block.data_ == null) {
+				finished_ = true;
+				return null;
+			}
+			return block;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while reading " + filename_, e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot decompress " + filename_ + ": " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Queue a block, return false if the reader is closed */
+	private boolean put(Future<Block> block) {
+
+		try {
+			queue_.put(block);
+			return !closed_;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Queue an error (e.g., truncated file), it is thrown by nextBlock() */
+	private void putError(Throwable e) {
+
+		CompletableFuture<Block> error = new CompletableFuture<Block>();
+		error.completeExceptionally(e);
+		put(error);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Decompress a gzip file of any kind in the reader thread */
+	private void readStream() {
+
+		try {
+			InputStream in = new GZIPInputStream(new FileInputStream(filename_), 1 << 16);
+			try {
+				while (!closed_) {
+					Block block = new Block(new byte[BLOCK_SIZE + SLACK], 0);
+					int n = 0;
+					while (block.length_ < BLOCK_SIZE && (n = in.read(block.data_, block.length_, BLOCK_SIZE - block.length_)) > 0)
+						block.length_ += n;
+					if (block.length_ > 0 && !put(CompletableFuture.completedFuture(block)))
+						return;
+					if (n < 0)
+						break;
+				}
+			} finally {
+				in.close();
+			}
+			put(CompletableFuture.completedFuture(new Block(null, 0)));
+		} catch (IOException e) {
+			if (!closed_)
+				putError(e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Split a BGZF file into groups of members in the reader thread, the groups are inflated in parallel */
+	private void readMembers() {
+
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(filename_), 1 << 16);
+			try {
+				byte[] group = new byte[BLOCK_SIZE];
+				int groupLength = 0;
+				int uncompressedSize = 0;
+				byte[] header = new byte[12];
+
+				while (!closed_) {
+					// The fixed part of the header and the length of the extra field
+					int n = in.readNBytes(header, 0, 12);
+					if (n == 0)
+						break;
+					if (n < 12 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || (header[3] & FEXTRA) == 0)
+						throw new IOException("Invalid BGZF member at compressed offset " + groupLength);
+					int extraLength = readShort(header, 10);
+					byte[] extra = in.readNBytes(extraLength);
+					int size = getBlockSize(extra);
+					if (size < 0 || extra.length < extraLength)
+						throw new IOException("Invalid BGZF member (missing block size)");
+
+					// The rest of the member
+					int memberLength = size + 1;
+					if (groupLength + memberLength > group.length)
+						group = Arrays.copyOf(group, Math.max(2*group.length, groupLength + memberLength));
+					System.arraycopy(header, 0, group, groupLength, 12);
+					System.arraycopy(extra, 0, group, groupLength + 12, extraLength);
+					int rest = memberLength - 12 - extraLength;
+					if (rest < 8 || in.readNBytes(group, groupLength + 12 + extraLength, rest) < rest)
+						throw new EOFException("Truncated BGZF member");
+					groupLength += memberLength;
+					uncompressedSize += readInt(group, groupLength - 4);
+
+					if (uncompressedSize >= BLOCK_SIZE) {
+						if (!put(inflaters_.submit(new InflateTask(group, groupLength, uncompressedSize))))
+							return;
+						group = new byte[group.length];
+						groupLength = 0;
+						uncompressedSize = 0;
+					}
+				}
+				if (groupLength > 0 && !put(inflaters_.submit(new InflateTask(group, groupLength, uncompressedSize))))
+					return;
+			} finally {
+				in.close();
+			}
+			put(CompletableFuture.completedFuture(new Block(null, 0)));
+		} catch (IOException e) {
+			if (!closed_)
+				putError(e);
+		} finally {
+			inflaters_.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the first member of the file has a BGZF block size */
+	private static boolean isBgzf(String filename) throws IOException {
+
+		InputStream in = new FileInputStream(filename);
+		try {
+			byte[] header = in.readNBytes(12);
+			if (header.length < 12 || (header[3] & FEXTRA) == 0)
+				return false;
+			return getBlockSize(in.readNBytes(readShort(header, 10))) >= 0;
+		} finally {
+			in.close();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the BGZF block size (the size of the member minus 1) from the extra field, -1 if not found */
+	private static int getBlockSize(byte[] extra) {
+
+		// Subfields: SI1 SI2 SLEN(2) data, BGZF uses SI1 = 'B', SI2 = 'C', SLEN = 2
+		for (int i=0; i+4<=extra.length; ) {
+			int length = readShort(extra, i+2);
+			if (extra[i] == 'B' && extra[i+1] == 'C' && length == 2 && i+6 <= extra.length)
+				return readShort(extra, i+4);
+			i += 4 + length;
+		}
+		return -1;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the length of the gzip header of the member at the given offset */
+	private static int getHeaderLength(byte[] data, int offset) throws IOException {
+
+		if ((data[offset] & 0xff) != 0x1f || (data[offset+1] & 0xff) != 0x8b || data[offset+2] != 8)
+			throw new IOException("Invalid gzip member header");
+		int flags = data[offset+3];
+		int i = offset + 10;
+		if ((flags & FEXTRA) != 0)
+			i += 2 + readShort(data, i);
+		if ((flags & FNAME) != 0)
+			while (data[i++] != 0);
+		if ((flags & FCOMMENT) != 0)
+			while (data[i++] != 0);
+		if ((flags & FHCRC) != 0)
+			i += 2;
+		return i - offset;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read a little-endian unsigned short */
+	private static int readShort(byte[] data, int i) {
+		return (data[i] & 0xff) | ((data[i+1] & 0xff) << 8);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read a little-endian int */
+	private static int readInt(byte[] data, int i) {
+		return readShort(data, i) | (readShort(data, i+2) << 16);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the index of the first occurrence of b in data[0..length-1], -1 if none */
+	private static int indexOf(byte[] data, int length, byte b) {
+
+		for (int i=0; i<length; i++)
+			if (data[i] == b)
+				return i;
+		return -1;
+	}
+
+
+	// ============================================================================
+	// BLOCK
+
+	/** Decompressed text data_[0..length_-1] (data_ has SLACK extra bytes) */
+	private static class Block {
+
+		/** The text, null for the end of the file */
+		private byte[] data_ = null;
+		/** The number of bytes of text */
+		private int length_ = 0;
+
+		/** Constructor */
+		public Block(byte[] data, int length) {
+			data_ = data;
+			length_ = length;
+		}
+	}
+
+
+	// ============================================================================
+	// INFLATE TASK
+
+	/** Inflate a group of complete gzip members and check their CRC and size */
+	private static class InflateTask implements Callable<Block> {
+
+		/** The compressed members */
+		private byte[] members_ = null;
+		/** The length of the members */
+		private int length_ = 0;
+		/** The total uncompressed size of the members */
+		private int uncompressedSize_ = 0;
+
+		/** Constructor */
+		public InflateTask(byte[] members, int length, int uncompressedSize) {
+			members_ = members;
+			length_ = length;
+			uncompressedSize_ = uncompressedSize;
+		}
+
+		/** Inflate the members */
+		public Block call() throws IOException {
+
+			Block block = new Block(new byte[uncompressedSize_ + SLACK], 0);
+			Inflater inflater = new Inflater(true);
+			CRC32 crc = new CRC32();
+			try {
+				for (int offset=0; offset<length_; ) {
+					int start = offset + getHeaderLength(members_, offset);
+					inflater.reset();
+					inflater.setInput(members_, start, length_ - start);
+					int memberStart = block.length_;
+					while (true) {
+						// The slack leaves room to detect members that are larger than their recorded size
+						int space = block.data_.length - block.length_;
+						int n = inflater.inflate(block.data_, block.length_, space);
+						block.length_ += n;
+						if (inflater.finished())
+							break;
+						if (n == 0 && (inflater.needsInput() || inflater.needsDictionary() || space == 0))
+							throw new IOException("Corrupt gzip member (truncated or larger than its recorded size)");
+					}
+
+					// The trailer: CRC32 and size of the member
+					int trailer = length_ - inflater.getRemaining();
+					crc.reset();
+					crc.update(block.data_, memberStart, block.length_ - memberStart);
+					if ((int) crc.getValue() != readInt(members_, trailer) || block.length_ - memberStart != readInt(members_, trailer + 4))
+						throw new IOException("Corrupt gzip member (CRC error)");
+					offset = trailer + 8;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt gzip member: " + e.getMessage(), e);
+			} finally {
+				inflater.end();
+			}
+			return block;
+		}
+	}
+}
@@ -0,0 +1,444 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Parse a tab-separated value file that is memory-mapped. The lines are tokenized
+ * directly on the bytes of the file: no String is created per line or column.
+ * Names are resolved through a SymbolTable and numbers are parsed with a fast path
+ * for the common short decimal formats. The file is mapped in windows of at most
+ * WINDOW_SIZE bytes (a line must fit into a window). Lines can end with "\n" or "\r\n".
+ * The same parser can be used on bytes that are already in memory (e.g., a
+ * prediction received by the EvaluationServer). Gzip-compressed files are
+ * detected by their magic number and parsed block by block as they are
+ * decompressed in the background (see GzipReader).
+ */
+public class MappedFileParser {
+
+	/** The maximum number of bytes that are mapped at once */
+	public static final long WINDOW_SIZE = 1L << 28;
+
+	/** Exact powers of ten for the fast path of parseDouble() */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** The file (null when parsing a buffer in memory or a gzip file) */
+	private String filename_ = null;
+	/** The file channel (null when parsing a buffer in memory) */
+	private FileChannel channel_ = null;
+	/** The decompressed blocks of a gzip file (null for a plain file) */
+	private GzipReader gzip_ = null;
+	/** The end of the part of the file that is parsed (exclusive) */
+	private long end_ = -1;
+
+	/** The currently mapped window (or the buffer in memory) */
+	private ByteBuffer buffer_ = null;
+	/** The position of the window in the file */
+	private long bufferStart_ = 0;
+	/** The size of the window */
+	private int limit_ = 0;
+	/** The start of the next line in the window */
+	private int position_ = 0;
+
+	/** Line counter */
+	private int lineCounter_ = 0;
+	/** The number of columns of the current line */
+	private int numColumns_ = 0;
+	/** The start of the columns of the current line in the window */
+	private int[] columnStarts_ = null;
+	/** The end of the columns of the current line in the window (exclusive) */
+	private int[] columnEnds_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, gzip-compressed files are decompressed with one thread per processor (BGZF files) */
+	public MappedFileParser(String filename) {
+
+		this(filename, Runtime.getRuntime().availableProcessors());
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor, gzip-compressed files are decompressed with the given number of threads (BGZF files) */
+	public MappedFileParser(String filename, int numThreads) {
+
+		System.out.println("Reading file: " + filename);
+		if (GzipReader.isGzip(filename))
+			openGzip(new GzipReader(filename, numThreads));
+		else
+			open(filename, 0, -1);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor, parses the text of a gzip file */
+	public MappedFileParser(GzipReader gzip) {
+
+		openGzip(gzip);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Constructor, parses only the bytes start..end-1 of the file. The range must start at the
+	 * beginning of a line and end after a newline (or at the end of the file).
+	 */
+	public MappedFileParser(String filename, long start, long end) {
+
+		open(filename, start, end);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor, parses the bytes of the buffer from its position to its limit */
+	public MappedFileParser(ByteBuffer buffer) {
+
+		columnStarts_ = new int[8];
+		columnEnds_ = new int[8];
+		buffer_ = buffer.slice();
+		limit_ = buffer_.limit();
+		end_ = limit_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Tokenize the next line. Returns false if there is no more line to read. */
+	public boolean nextLine() {
+
+		while (true) {
+			if (position_ >= limit_) {
+				if (!nextWindow())
+					return false;
+				continue;
+			}
+
+			numColumns_ = 0;
+			int columnStart = position_;
+			int i = position_;
+			for (; i<limit_; i++) {
+				byte b = buffer_.get(i);
+				if (b == '\n')
+					break;
+				if (b == '\t') {
+					addColumn(columnStart, i);
+					columnStart = i + 1;
+				}
+			}
+
+			// The line continues beyond the window, map again starting at the beginning of the line
+			if (i == limit_ && gzip_ == null && bufferStart_ + limit_ < end_) {
+				if (position_ == 0)
+					throw new RuntimeException("Parse error at line " + (lineCounter_+1) + ": the line is longer than " + WINDOW_SIZE + " bytes");
+				map(bufferStart_ + position_);
+				continue;
+			}
+
+			int lineEnd = i;
+			if (lineEnd > columnStart && buffer_.get(lineEnd-1) == '\r')
+				lineEnd--;
+			addColumn(columnStart, lineEnd);
+
+			position_ = i + 1;
+			lineCounter_++;
+			return true;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the name in the given column, -1 if it is not in the symbol table */
+	public int find(int column, SymbolTable symbols) {
+		checkColumn(column);
+		return symbols.find(buffer_, columnStarts_[column], columnEnds_[column]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the name in the given column, the name is added to the symbol table if needed */
+	public int add(int column, SymbolTable symbols) {
+		checkColumn(column);
+		return symbols.add(buffer_, columnStarts_[column], columnEnds_[column]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Parse the given column as double. Decimals with at most 15 significant digits and
+	 * a decimal exponent within +-22 are converted exactly without creating a String
+	 * (the mantissa and the power of ten are both exact doubles). Everything else is
+	 * passed to Double.parseDouble(), which also reports malformed numbers.
+	 */
+	public double parseDouble(int column) {
+
+		checkColumn(column);
+		int i = columnStarts_[column];
+		int end = columnEnds_[column];
+
+		boolean negative = false;
+		if (i < end && (buffer_.get(i) == '-' || buffer_.get(i) == '+'))
+			negative = buffer_.get(i++) == '-';
+
+		long mantissa = 0;
+		int numDigits = 0; // significant digits
+		int exponent = 0;
+		boolean hasDigits = false;
+
+		// Integer part
+		for (; i<end; i++) {
+			int digit = buffer_.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				break;
+			hasDigits = true;
+			if (mantissa != 0 || digit != 0) {
+				mantissa = 10*mantissa + digit;
+				numDigits++;
+			}
+		}
+		// Fraction
+		if (i < end && buffer_.get(i) == '.') {
+			for (i++; i<end; i++) {
+				int digit = buffer_.get(i) - '0';
+				if (digit < 0 || digit > 9)
+					break;
+				hasDigits = true;
+				if (mantissa != 0 || digit != 0) {
+					mantissa = 10*mantissa + digit;
+					numDigits++;
+				}
+				exponent--;
+			}
+		}
+		// Exponent
+		if (hasDigits && i < end && (buffer_.get(i) == 'e' || buffer_.get(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buffer_.get(i) == '-' || buffer_.get(i) == '+'))
+				negativeExponent = buffer_.get(i++) == '-';
+			int e = 0;
+			boolean hasExponentDigits = false;
+			for (; i<end && e < 1000; i++) {
+				int digit = buffer_.get(i) - '0';
+				if (digit < 0 || digit > 9)
+					break;
+				hasExponentDigits = true;
+				e = 10*e + digit;
+			}
+			if (!hasExponentDigits)
+				hasDigits = false;
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (!hasDigits || i != end || numDigits > 15 || (mantissa != 0 && (exponent < -22 || exponent > 22)))
+			return Double.parseDouble(getString(column));
+
+		double value = mantissa;
+		if (exponent < 0)
+			value /= POWERS_OF_TEN[-exponent];
+		else if (exponent > 0)
+			value *= POWERS_OF_TEN[exponent];
+
+		return negative ? -value : value;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Parse the given column as integer (malformed numbers are reported by Integer.parseInt()) */
+	public int parseInt(int column) {
+
+		checkColumn(column);
+		int i = columnStarts_[column];
+		int end = columnEnds_[column];
+
+		boolean negative = false;
+		if (i < end && (buffer_.get(i) == '-' || buffer_.get(i) == '+'))
+			negative = buffer_.get(i++) == '-';
+
+		if (i == end || end - i > 9)
+			return Integer.parseInt(getString(column));
+
+		int value = 0;
+		for (; i<end; i++) {
+			int digit = buffer_.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				return Integer.parseInt(getString(column));
+			value = 10*value + digit;
+		}
+		return negative ? -value : value;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the given column as String */
+	public String getString(int column) {
+
+		checkColumn(column);
+		byte[] bytes = new byte[columnEnds_[column] - columnStarts_[column]];
+		for (int i=0; i<bytes.length; i++)
+			bytes[i] = buffer_.get(columnStarts_[column] + i);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Be polite and close the file when you're done */
+	public void close() {
+
+		try {
+			if (channel_ != null)
+				channel_.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot close " + filename_ + ": " + e.getMessage(), e);
+		}
+		if (gzip_ != null)
+			gzip_.close();
+		buffer_ = null;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Open the file and map the first window, end is -1 to parse until the end of the file */
+	private void open(String filename, long start, long end) {
+
+		columnStarts_ = new int[8];
+		columnEnds_ = new int[8];
+
+		filename_ = filename;
+		try {
+			channel_ = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			end_ = (end < 0) ? channel_.size() : end;
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename + ": " + e.getMessage(), e);
+		}
+		map(start);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Start parsing the blocks of a gzip file */
+	private void openGzip(GzipReader gzip) {
+
+		columnStarts_ = new int[8];
+		columnEnds_ = new int[8];
+		gzip_ = gzip;
+		buffer_ = ByteBuffer.allocate(0);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Move to the next window of the file (or block of a gzip file), return false at the end */
+	private boolean nextWindow() {
+
+		if (gzip_ != null) {
+			ByteBuffer block = gzip_.nextBlock();
+			if (block == null)
+				return false;
+			// The blocks end at line boundaries, so lines are never split
+			buffer_ = block;
+			limit_ = block.limit();
+			position_ = 0;
+			return true;
+		}
+		if (bufferStart_ + limit_ >= end_)
+			return false;
+		map(bufferStart_ + limit_);
+		return true;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Map the window starting at the given position of the file */
+	private void map(long start) {
+
+		try {
+			limit_ = (int) Math.min(WINDOW_SIZE, end_ - start);
+			buffer_ = channel_.map(FileChannel.MapMode.READ_ONLY, start, limit_);
+			bufferStart_ = start;
+			position_ = 0;
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename_ + ": " + e.getMessage(), e);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Throw an exception if the current line does not have the given column (its offsets would be those of an earlier line) */
+	private void checkColumn(int column) {
+
+		if (column < 0 || column >= numColumns_)
+			throw new RuntimeException("Parse error at line " + lineCounter_ + ": missing column " + (column + 1) + " (the line has " + numColumns_ + ")");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add a column of the current line */
+	private void addColumn(int start, int end) {
+
+		if (numColumns_ == columnStarts_.length) {
+			columnStarts_ = Arrays.copyOf(columnStarts_, 2*numColumns_);
+			columnEnds_ = Arrays.copyOf(columnEnds_, 2*numColumns_);
+		}
+		columnStarts_[numColumns_] = start;
+		columnEnds_[numColumns_] = end;
+		numColumns_++;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int getNumColumns() { return numColumns_; }
+	public int getLineCounter() { return lineCounter_; }
+}
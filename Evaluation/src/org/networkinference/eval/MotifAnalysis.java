@@ -0,0 +1,633 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Generalization of the transitive and co-regulation analysis to all 3-node
+ * motifs. Each false positive TF->target forms a triad with every gene X that
+ * is connected to the TF or the target in the gold standard. The triad is
+ * classified by the gold standard edges among TF, target and X (32 patterns),
+ * and by the motif it forms together with the false positive (mfinder/FANMOD
+ * id, see MotifCensus). For example, a transitive edge (TF->X->target) and a
+ * co-regulation edge (X->TF, X->target) both close a feed-forward loop, in
+ * different positions.
+ *
+ * The observed number of triads of each pattern is compared to the number
+ * expected for the same number of false positives drawn at random among all
+ * negatives. The expected numbers are counted over all negatives with bitsets:
+ * for a regulator TF and a neighbor X, the targets of all its negatives are
+ * classified at once with AND/popcount over the rows of the gold standard. The
+ * regulators are processed in parallel.
+ *
+ * The 4-node motifs bi-fan and bi-parallel are analyzed in the same way. A
+ * false positive TF->target closes such a motif with two other genes X and Y
+ * if the three other edges of the motif are in the gold standard, e.g., a
+ * bi-fan with TF->X, Y->X and Y->target. The bi-parallel is closed in two
+ * positions: as the first edge of one of its paths (TF->X, X->Y, target->Y)
+ * and as the last edge (X->TF, X->Y, Y->target). These closures are counted
+ * regardless of the other gold standard edges among the four genes. For all
+ * negatives of a regulator TF, each gene Y is weighted by the number of its
+ * paths to the TF through a gene X, so the targets are never enumerated pair
+ * by pair.
+ */
+public class MotifAnalysis {
+
+	/** The number of patterns (5 bits, see getPattern()) */
+	public static final int NUM_PATTERNS = 32;
+	/** The number of 4-node closures (see CLOSURE_EDGES) */
+	public static final int NUM_CLOSURES = 3;
+	/** The number of counts of the negatives: the patterns, the number of negatives and the closures */
+	public static final int NUM_COUNTS = NUM_PATTERNS + 1 + NUM_CLOSURES;
+
+	/**
+	 * The gold standard edges of each closure of a false positive TF->target with the genes
+	 * X and Y: the direction of the edges TF-X, X-Y and Y-target (true for TF->X, X->Y, Y->target).
+	 * The closures are the bi-fan, the bi-parallel with the false positive as first edge of a
+	 * path and the bi-parallel with the false positive as last edge of a path.
+	 */
+	private static final boolean[][] CLOSURE_EDGES = {
+		{ true, false, true },
+		{ true, true, false },
+		{ false, true, true }
+	};
+
+	/** The number of regulators per task of the fork-join pool */
+	private static final int REGULATORS_PER_TASK = 16;
+
+	/** The gold standard */
+	private GoldStandard gold_ = null;
+	/** The prediction */
+	private Prediction prediction_ = null;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** CSR offsets of the sorted neighbors of each gene in the gold standard (both directions, no self-loops) */
+	private int[] neighborOffsets_ = null;
+	/** CSR array of the neighbors */
+	private int[] neighbors_ = null;
+
+	/**
+	 * For each gene, the number of neighbors X with only gene->X (index 4*gene+2),
+	 * only X->gene (4*gene+1) and both (4*gene+3)
+	 */
+	private int[] neighborStats_ = null;
+
+	/** The number of false positives (self-loops excluded) */
+	private long numFalsePositives_ = 0;
+	/** The number of negatives (possible edges that are not in the gold standard, self-loops excluded) */
+	private long numNegatives_ = 0;
+	/** The number of triads of each pattern formed by the false positives */
+	private long[] observed_ = null;
+	/** The number of triads of each pattern formed by all negatives */
+	private long[] total_ = null;
+	/** The number of 4-node motifs of each closure formed by the false positives */
+	private long[] observedClosures_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public MotifAnalysis(GoldStandard gold, Prediction prediction, int numThreads) {
+
+		gold_ = gold;
+		prediction_ = prediction;
+		numThreads_ = Math.max(1, numThreads);
+		buildNeighbors();
+		buildNeighborStats();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the triads of the false positives and of all negatives */
+	public void run() {
+
+		countObserved();
+
+		// The counts of the negatives only depend on the gold standard and may have been precomputed
+		total_ = gold_.getNegativeTriads();
+		if (total_ == null || total_.length != NUM_COUNTS)
+			total_ = countNegatives();
+		numNegatives_ = total_[NUM_PATTERNS];
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Count the triads and 4-node closures of all negatives, the prediction is not used.
+	 * Return the counts of the patterns, followed by the number of negatives and the
+	 * counts of the closures (NUM_COUNTS values).
+	 */
+	public long[] countNegatives() {
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			return pool.invoke(new NegativeTask(0, gold_.getNumRegulators()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Display the patterns with observed or expected triads and write them to a file */
+	public void output(String filename) {
+
+		String header = "Gold standard edges\tMotif\tName\tObserved\tExpected\tRatio";
+		FileExport writer = new FileExport(filename);
+		writer.println(header);
+
+		Evaluation.println("");
+		Evaluation.println("TRIADS OF FALSE POSITIVES TF->target WITH A THIRD GENE X (BY GOLD STANDARD EDGES)");
+		Evaluation.println(header);
+
+		// Sort the patterns by motif id
+		long[] keys = new long[NUM_PATTERNS];
+		for (int pattern=0; pattern<NUM_PATTERNS; pattern++)
+			keys[pattern] = getMotifId(pattern)*(long) NUM_PATTERNS + pattern;
+		Arrays.sort(keys);
+
+		for (long key : keys) {
+			int id = (int) (key / NUM_PATTERNS);
+			int pattern = (int) (key % NUM_PATTERNS);
+			double expected = getExpected(pattern);
+			if (observed_[pattern] == 0 && expected == 0)
+				continue;
+
+			String line = getDescription(pattern) + "\t" + id + "\t" + MotifCensus.getName(id, 3) + "\t"
+					+ observed_[pattern] + "\t" + expected + "\t" + observed_[pattern]/expected;
+			Evaluation.println(line);
+			writer.println(line);
+		}
+		Evaluation.println("");
+		writer.close();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Display the 4-node motifs closed by the false positives and write them to a file */
+	public void outputClosures(String filename) {
+
+		String header = "Gold standard edges\tMotif\tName\tObserved\tExpected\tRatio";
+		FileExport writer = new FileExport(filename);
+		writer.println(header);
+
+		Evaluation.println("");
+		Evaluation.println("4-NODE MOTIFS CLOSED BY FALSE POSITIVES TF->target WITH GENES X AND Y (BY GOLD STANDARD EDGES)");
+		Evaluation.println(header);
+
+		for (int closure=0; closure<NUM_CLOSURES; closure++) {
+			int id = getClosureMotifId(closure);
+			double expected = getExpectedClosures(closure);
+			String line = getClosureDescription(closure) + "\t" + id + "\t" + MotifCensus.getName(id, 4) + "\t"
+					+ observedClosures_[closure] + "\t" + expected + "\t" + observedClosures_[closure]/expected;
+			Evaluation.println(line);
+			writer.println(line);
+		}
+		Evaluation.println("");
+		writer.close();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Return the pattern of the triad TF->target, X given the gold standard edges:
+	 * bit 4: TF->X, bit 3: X->TF, bit 2: target->X, bit 1: X->target, bit 0: target->TF
+	 */
+	public static int getPattern(boolean TFtoX, boolean XtoTF, boolean targetToX, boolean XtoTarget, boolean targetToTF) {
+		return (TFtoX ? 16 : 0) | (XtoTF ? 8 : 0) | (targetToX ? 4 : 0) | (XtoTarget ? 2 : 0) | (targetToTF ? 1 : 0);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the motif id of the triad with the given pattern, including the edge TF->target (nodes TF, target, X) */
+	public static int getMotifId(int pattern) {
+
+		// Row-major 3x3 adjacency matrix, entry (0,0) is bit 8
+		int matrix = 1 << 7; // TF->target
+		if ((pattern & 16) != 0) matrix |= 1 << 6; // TF->X
+		if ((pattern & 8) != 0) matrix |= 1 << 2; // X->TF
+		if ((pattern & 4) != 0) matrix |= 1 << 3; // target->X
+		if ((pattern & 2) != 0) matrix |= 1 << 1; // X->target
+		if ((pattern & 1) != 0) matrix |= 1 << 5; // target->TF
+		return MotifCensus.getId(matrix, 3);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the gold standard edges of the given pattern, e.g., "TF->X, X->target" */
+	public static String getDescription(int pattern) {
+
+		String[] edges = { "target->TF", "X->target", "target->X", "X->TF", "TF->X" };
+		String description = "";
+		for (int b=4; b>=0; b--)
+			if ((pattern & (1 << b)) != 0)
+				description += (description.length() > 0 ? ", " : "") + edges[b];
+		return description;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the motif id of the given closure, including the edge TF->target (nodes TF, target, X, Y) */
+	public static int getClosureMotifId(int closure) {
+
+		// Row-major 4x4 adjacency matrix, entry (i,j) is bit 15 - (4*i + j)
+		boolean[] edges = CLOSURE_EDGES[closure];
+		int matrix = 1 << (15 - 1); // TF->target
+		matrix |= 1 << (15 - (edges[0] ? 4*0 + 2 : 4*2 + 0)); // TF-X
+		matrix |= 1 << (15 - (edges[1] ? 4*2 + 3 : 4*3 + 2)); // X-Y
+		matrix |= 1 << (15 - (edges[2] ? 4*3 + 1 : 4*1 + 3)); // Y-target
+		return MotifCensus.getId(matrix, 4);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the gold standard edges of the given closure, e.g., "TF->X, Y->X, Y->target" */
+	public static String getClosureDescription(int closure) {
+
+		boolean[] edges = CLOSURE_EDGES[closure];
+		return (edges[0] ? "TF->X" : "X->TF") + ", " + (edges[1] ? "X->Y" : "Y->X") + ", " + (edges[2] ? "Y->target" : "target->Y");
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Build the neighbor lists by merging the sorted target and regulator lists of the gold standard */
+	private void buildNeighbors() {
+
+		int numGenes = gold_.getNumGenes();
+		int[] targetOffsets = gold_.getTargetOffsets();
+		int[] targets = gold_.getTargets();
+		int[] regulatorOffsets = gold_.getRegulatorOffsets();
+		int[] regulators = gold_.getRegulators();
+
+		neighborOffsets_ = new int[numGenes + 1];
+		neighbors_ = new int[targets.length + regulators.length];
+		int next = 0;
+		for (int i=0; i<numGenes; i++) {
+			int t = targetOffsets[i];
+			int r = regulatorOffsets[i];
+			int last = -1;
+			while (t < targetOffsets[i+1] || r < regulatorOffsets[i+1]) {
+				int neighbor;
+				if (r == regulatorOffsets[i+1] || (t < targetOffsets[i+1] && targets[t] <= regulators[r]))
+					neighbor = targets[t++];
+				else
+					neighbor = regulators[r++];
+				if (neighbor != last && neighbor != i)
+					neighbors_[next++] = neighbor;
+				last = neighbor;
+			}
+			neighborOffsets_[i+1] = next;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the neighbors of each gene by the direction of the edges (see neighborStats_) */
+	private void buildNeighborStats() {
+
+		int numGenes = gold_.getNumGenes();
+		neighborStats_ = new int[4*numGenes];
+		for (int gene=0; gene<numGenes; gene++) {
+			for (int i=neighborOffsets_[gene]; i<neighborOffsets_[gene+1]; i++) {
+				int X = neighbors_[i];
+				neighborStats_[4*gene + ((gold_.isEdge(gene, X) ? 2 : 0) | (gold_.isEdge(X, gene) ? 1 : 0))]++;
+			}
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the two genes are connected in the gold standard (either direction) */
+	private boolean isNeighbor(int gene1, int gene2) {
+		return Arrays.binarySearch(neighbors_, neighborOffsets_[gene1], neighborOffsets_[gene1+1], gene2) >= 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the triads and 4-node closures of the false positives (the edges are enumerated directly) */
+	private void countObserved() {
+
+		observed_ = new long[NUM_PATTERNS];
+		observedClosures_ = new long[NUM_CLOSURES];
+		numFalsePositives_ = 0;
+
+		int[] targetOffsets = gold_.getTargetOffsets();
+		int[] targets = gold_.getTargets();
+		int[] regulatorOffsets = gold_.getRegulatorOffsets();
+		int[] regulators = gold_.getRegulators();
+		long[] regulatorsOfTarget = new long[gold_.getWordsPerRow()];
+		long[] targetsOfTarget = new long[gold_.getWordsPerRow()];
+
+		for (int k=0; k<prediction_.size(); k++) {
+			int TF = prediction_.getRegulator(k);
+			int target = prediction_.getTarget(k);
+			if (TF == target || gold_.isEdge(TF, target))
+				continue;
+			numFalsePositives_++;
+
+			boolean targetToTF = gold_.isEdge(target, TF);
+			for (int i=neighborOffsets_[TF]; i<neighborOffsets_[TF+1]; i++) {
+				int X = neighbors_[i];
+				if (X != target)
+					observed_[getPattern(gold_.isEdge(TF, X), gold_.isEdge(X, TF), gold_.isEdge(target, X), gold_.isEdge(X, target), targetToTF)]++;
+			}
+			// Neighbors of the target that are not neighbors of the TF (the edges with the TF are absent)
+			for (int i=neighborOffsets_[target]; i<neighborOffsets_[target+1]; i++) {
+				int X = neighbors_[i];
+				if (X != TF && !isNeighbor(TF, X))
+					observed_[getPattern(false, false, gold_.isEdge(target, X), gold_.isEdge(X, target), targetToTF)]++;
+			}
+
+			// The genes Y with Y->target or target->Y
+			setBits(regulatorsOfTarget, regulators, regulatorOffsets[target], regulatorOffsets[target+1], true);
+			setBits(targetsOfTarget, targets, targetOffsets[target], targetOffsets[target+1], true);
+			for (int closure=0; closure<NUM_CLOSURES; closure++)
+				observedClosures_[closure] += countClosures(closure, TF, target, CLOSURE_EDGES[closure][2] ? regulatorsOfTarget : targetsOfTarget);
+			setBits(regulatorsOfTarget, regulators, regulatorOffsets[target], regulatorOffsets[target+1], false);
+			setBits(targetsOfTarget, targets, targetOffsets[target], targetOffsets[target+1], false);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the pairs X, Y with which the edge TF->target closes the given 4-node motif (genesY: the possible Y of the target) */
+	private long countClosures(int closure, int TF, int target, long[] genesY) {
+
+		boolean[] edges = CLOSURE_EDGES[closure];
+		int[] offsetsX = edges[0] ? gold_.getTargetOffsets() : gold_.getRegulatorOffsets();
+		int[] listX = edges[0] ? gold_.getTargets() : gold_.getRegulators();
+		int[] offsetsY = edges[1] ? gold_.getTargetOffsets() : gold_.getRegulatorOffsets();
+		int[] listY = edges[1] ? gold_.getTargets() : gold_.getRegulators();
+
+		long count = 0;
+		for (int i=offsetsX[TF]; i<offsetsX[TF+1]; i++) {
+			int X = listX[i];
+			if (X == TF || X == target)
+				continue;
+			for (int j=offsetsY[X]; j<offsetsY[X+1]; j++) {
+				int Y = listY[j];
+				if (Y != TF && Y != X && Y != target && (genesY[Y >>> 6] & (1L << Y)) != 0)
+					count++;
+			}
+		}
+		return count;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Count the triads of all negatives TF->target of the regulator in the given row,
+	 * added to counts[0..NUM_PATTERNS-1], and the number of negatives to counts[NUM_PATTERNS].
+	 * The work arrays have one word per 64 genes.
+	 */
+	private void countRegulatorNegatives(int row, long[] counts, long[] negatives, long[] regulatorsOfTF, long[] regulatorsOfX) {
+
+		int numGenes = gold_.getNumGenes();
+		int wordsPerRow = gold_.getWordsPerRow();
+		long[] matrix = gold_.getMatrix();
+		int[] regulatorOffsets = gold_.getRegulatorOffsets();
+		int[] regulators = gold_.getRegulators();
+		int TF = gold_.getRegulatorIds()[row];
+
+		// The negatives of the TF: all genes except its targets and itself
+		for (int w=0; w<wordsPerRow; w++)
+			negatives[w] = ~matrix[row*wordsPerRow + w];
+		negatives[TF >>> 6] &= ~(1L << TF);
+		if ((numGenes & 63) != 0)
+			negatives[wordsPerRow - 1] &= (1L << numGenes) - 1;
+		setBits(regulatorsOfTF, regulators, regulatorOffsets[TF], regulatorOffsets[TF+1], true);
+
+		// Triads with a neighbor X of the TF, all targets are classified at once
+		long[] overlap = new long[8];
+		for (int i=neighborOffsets_[TF]; i<neighborOffsets_[TF+1]; i++) {
+			int X = neighbors_[i];
+			int rowX = gold_.getRegulatorIndex(X);
+			setBits(regulatorsOfX, regulators, regulatorOffsets[X], regulatorOffsets[X+1], true);
+
+			long[] local = new long[8];
+			for (int w=0; w<wordsPerRow; w++) {
+				long n = negatives[w];
+				if (w == (X >>> 6))
+					n &= ~(1L << X);
+				if (n == 0)
+					continue;
+				long targetToX = regulatorsOfX[w];
+				long XtoTarget = (rowX >= 0) ? matrix[rowX*wordsPerRow + w] : 0;
+				long targetToTF = regulatorsOfTF[w];
+				for (int c=0; c<8; c++) {
+					long bits = n & (((c & 4) != 0) ? targetToX : ~targetToX) & (((c & 2) != 0) ? XtoTarget : ~XtoTarget)
+							& (((c & 1) != 0) ? targetToTF : ~targetToTF);
+					local[c] += Long.bitCount(bits);
+				}
+			}
+			setBits(regulatorsOfX, regulators, regulatorOffsets[X], regulatorOffsets[X+1], false);
+
+			int high = getPattern(gold_.isEdge(TF, X), gold_.isEdge(X, TF), false, false, false);
+			for (int c=0; c<8; c++) {
+				counts[high | c] += local[c];
+				overlap[c] += local[c];
+			}
+		}
+
+		// Triads with a neighbor X of the target that is not a neighbor of the TF: all neighbors
+		// of the targets, minus the neighbors of the TF (counted above) and minus X = TF
+		long[] byTarget = new long[8];
+		long numNegatives = 0;
+		for (int w=0; w<wordsPerRow; w++) {
+			long n = negatives[w];
+			numNegatives += Long.bitCount(n);
+			while (n != 0) {
+				int target = (w << 6) + Long.numberOfTrailingZeros(n);
+				int targetToTF = ((regulatorsOfTF[w] & (n & -n)) != 0) ? 1 : 0;
+				for (int c=1; c<4; c++)
+					byTarget[(c << 1) | targetToTF] += neighborStats_[4*target + c];
+				n &= n - 1;
+			}
+		}
+		for (int c=2; c<8; c++)
+			counts[c] += byTarget[c] - overlap[c];
+		// X = TF is a neighbor of the targets that regulate the TF (target->X, X->target is a true positive)
+		long regulatorsNegatives = 0;
+		for (int w=0; w<wordsPerRow; w++)
+			regulatorsNegatives += Long.bitCount(negatives[w] & regulatorsOfTF[w]);
+		counts[getPattern(false, false, true, false, true)] -= regulatorsNegatives;
+
+		setBits(regulatorsOfTF, regulators, regulatorOffsets[TF], regulatorOffsets[TF+1], false);
+		counts[NUM_PATTERNS] += numNegatives;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Count the 4-node closures of all negatives TF->target of the TF (negatives: the bits
+	 * of the negative targets of the TF). Each gene Y gets the number of genes X that connect
+	 * it to the TF (weights), each negative target of Y then closes as many motifs. The
+	 * pairs where the target is X itself are subtracted. The weights are zero on return.
+	 */
+	private long countClosureNegatives(int closure, int TF, long[] negatives, int[] weights, int[] genesY) {
+
+		boolean[] edges = CLOSURE_EDGES[closure];
+		int[] offsetsX = edges[0] ? gold_.getTargetOffsets() : gold_.getRegulatorOffsets();
+		int[] listX = edges[0] ? gold_.getTargets() : gold_.getRegulators();
+		int[] offsetsY = edges[1] ? gold_.getTargetOffsets() : gold_.getRegulatorOffsets();
+		int[] listY = edges[1] ? gold_.getTargets() : gold_.getRegulators();
+		int[] offsetsTarget = edges[2] ? gold_.getTargetOffsets() : gold_.getRegulatorOffsets();
+		int[] listTarget = edges[2] ? gold_.getTargets() : gold_.getRegulators();
+
+		long count = 0;
+		int numY = 0;
+		for (int i=offsetsX[TF]; i<offsetsX[TF+1]; i++) {
+			int X = listX[i];
+			if (X == TF)
+				continue;
+			boolean negativeX = (negatives[X >>> 6] & (1L << X)) != 0;
+			for (int j=offsetsY[X]; j<offsetsY[X+1]; j++) {
+				int Y = listY[j];
+				if (Y == TF || Y == X)
+					continue;
+				if (weights[Y]++ == 0)
+					genesY[numY++] = Y;
+				// The target X is not a distinct gene
+				if (negativeX && (edges[2] ? gold_.isEdge(Y, X) : gold_.isEdge(X, Y)))
+					count--;
+			}
+		}
+
+		for (int k=0; k<numY; k++) {
+			int Y = genesY[k];
+			int numTargets = 0;
+			for (int i=offsetsTarget[Y]; i<offsetsTarget[Y+1]; i++) {
+				int target = listTarget[i];
+				if (target != Y && (negatives[target >>> 6] & (1L << target)) != 0)
+					numTargets++;
+			}
+			count += (long) weights[Y] * numTargets;
+			weights[Y] = 0;
+		}
+		return count;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Set or clear the bits of the genes list[start..end-1] */
+	private static void setBits(long[] bits, int[] list, int start, int end, boolean set) {
+
+		for (int i=start; i<end; i++) {
+			if (set)
+				bits[list[i] >>> 6] |= 1L << list[i];
+			else
+				bits[list[i] >>> 6] &= ~(1L << list[i]);
+		}
+	}
+
+
+	// ============================================================================
+	// NEGATIVE TASK
+
+	/** Count the triads of the negatives of the regulators (rows) start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class NegativeTask extends RecursiveTask<long[]> {
+
+		/** The first row */
+		private int start_ = -1;
+		/** The last row (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public NegativeTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Count or split the range, return the counts of the patterns and the number of negatives */
+		protected long[] compute() {
+
+			if (end_ - start_ > REGULATORS_PER_TASK) {
+				int middle = (start_ + end_) >>> 1;
+				NegativeTask second = new NegativeTask(middle, end_);
+				second.fork();
+				long[] counts = new NegativeTask(start_, middle).compute();
+				long[] counts2 = second.join();
+				for (int c=0; c<counts.length; c++)
+					counts[c] += counts2[c];
+				return counts;
+			}
+
+			int wordsPerRow = gold_.getWordsPerRow();
+			long[] counts = new long[NUM_COUNTS];
+			long[] negatives = new long[wordsPerRow];
+			long[] regulatorsOfTF = new long[wordsPerRow];
+			long[] regulatorsOfX = new long[wordsPerRow];
+			int[] weights = new int[gold_.getNumGenes()];
+			int[] genesY = new int[gold_.getNumGenes()];
+			for (int row=start_; row<end_; row++) {
+				countRegulatorNegatives(row, counts, negatives, regulatorsOfTF, regulatorsOfX);
+				// countRegulatorNegatives() leaves the negatives of the TF in the work array
+				int TF = gold_.getRegulatorIds()[row];
+				for (int closure=0; closure<NUM_CLOSURES; closure++)
+					counts[NUM_PATTERNS + 1 + closure] += countClosureNegatives(closure, TF, negatives, weights, genesY);
+			}
+			return counts;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public long getNumFalsePositives() { return numFalsePositives_; }
+	public long getNumNegatives() { return numNegatives_; }
+	public long getObserved(int pattern) { return observed_[pattern]; }
+	/** The expected number of triads with the given pattern for numFalsePositives_ random negatives */
+	public double getExpected(int pattern) { return total_[pattern] * (double) numFalsePositives_ / numNegatives_; }
+	public long getObservedClosures(int closure) { return observedClosures_[closure]; }
+	/** The expected number of 4-node motifs of the given closure for numFalsePositives_ random negatives */
+	public double getExpectedClosures(int closure) { return total_[NUM_PATTERNS + 1 + closure] * (double) numFalsePositives_ / numNegatives_; }
+}
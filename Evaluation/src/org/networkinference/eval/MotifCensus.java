@@ -0,0 +1,414 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Count the connected 3-node or 4-node subgraphs of a directed network (the
+ * census used to find network motifs). The subgraphs are enumerated with the
+ * ESU algorithm of Wernicke (2006), which finds each connected subgraph exactly
+ * once from its smallest node. The enumeration is split by root node and runs
+ * in parallel on a fork-join pool.
+ *
+ * The subgraphs are classified by the id used by mfinder and FANMOD: the
+ * adjacency matrix read row by row as a binary number (the first entry is the
+ * most significant bit), minimized over all orderings of the nodes. For
+ * example, the feed-forward loop is 38 and the bi-fan is 204.
+ */
+public class MotifCensus {
+
+	/** The number of root nodes per task of the fork-join pool */
+	private static final int ROOTS_PER_TASK = 32;
+
+	/** The size of the subgraphs (3 or 4) */
+	private int size_ = 3;
+	/** The number of nodes */
+	private int numNodes_ = 0;
+
+	/** CSR offsets of the sorted targets of each node */
+	private int[] outOffsets_ = null;
+	/** CSR array of the targets */
+	private int[] out_ = null;
+	/** CSR offsets of the sorted neighbors of each node (ignoring the direction) */
+	private int[] neighborOffsets_ = null;
+	/** CSR array of the neighbors */
+	private int[] neighbors_ = null;
+	/** The largest number of neighbors of a node */
+	private int maxDegree_ = 0;
+
+	/** The index of the class of each adjacency matrix (see getId()), -1 if not connected */
+	private int[] classIndex_ = null;
+	/** The motif id of each class */
+	private int[] classIds_ = null;
+	/** The number of subgraphs of each class */
+	private long[] counts_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the first numEdges entries of sources and targets are the edges (node ids 0..numNodes-1) */
+	public MotifCensus(int size, int numNodes, int[] sources, int[] targets, int numEdges) {
+
+		if (size != 3 && size != 4)
+			throw new IllegalArgumentException("The subgraph size must be 3 or 4");
+
+		size_ = size;
+		numNodes_ = numNodes;
+		buildAdjacencyLists(sources, targets, numEdges);
+		buildClasses();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the subgraphs using the given number of threads */
+	public void run(int numThreads) {
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			counts_ = pool.invoke(new CensusTask(0, numNodes_));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the motif id of the given adjacency matrix of n nodes (the bit of entry (i,j) is 1 << (n*n-1 - (i*n+j))) */
+	public static int getId(int matrix, int n) {
+
+		int min = Integer.MAX_VALUE;
+		int[] order = new int[n];
+		for (int i=0; i<n; i++)
+			order[i] = i;
+
+		// Heap's algorithm over all orderings of the nodes
+		int[] c = new int[n];
+		min = Math.min(min, permute(matrix, n, order));
+		for (int i=0; i<n; ) {
+			if (c[i] < i) {
+				int j = (i % 2 == 0) ? 0 : c[i];
+				int swap = order[j];
+				order[j] = order[i];
+				order[i] = swap;
+				min = Math.min(min, permute(matrix, n, order));
+				c[i]++;
+				i = 0;
+			} else {
+				c[i] = 0;
+				i++;
+			}
+		}
+		return min;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the common name of the motif with the given id, or "-" */
+	public static String getName(int id, int n) {
+
+		if (n == 3) {
+			switch (id) {
+			case 6: return "fan-out (co-regulation)";
+			case 12: return "cascade";
+			case 36: return "fan-in";
+			case 38: return "feed-forward loop";
+			case 98: return "feedback loop";
+			case 238: return "clique";
+			}
+		} else if (n == 4) {
+			switch (id) {
+			case 204: return "bi-fan";
+			case 904: return "bi-parallel";
+			}
+		}
+		return "-";
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Return the id of the matrix with the nodes in the given order */
+	private static int permute(int matrix, int n, int[] order) {
+
+		int id = 0;
+		for (int i=0; i<n; i++)
+			for (int j=0; j<n; j++)
+				id = (id << 1) | ((matrix >>> (n*n-1 - (order[i]*n + order[j]))) & 1);
+		return id;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Build the sorted out-lists and neighbor lists, self-loops and duplicate edges are removed */
+	private void buildAdjacencyLists(int[] sources, int[] targets, int numEdges) {
+
+		outOffsets_ = new int[numNodes_ + 1];
+		neighborOffsets_ = new int[numNodes_ + 1];
+		for (int e=0; e<numEdges; e++) {
+			if (sources[e] == targets[e])
+				continue;
+			outOffsets_[sources[e] + 1]++;
+			neighborOffsets_[sources[e] + 1]++;
+			neighborOffsets_[targets[e] + 1]++;
+		}
+		for (int i=0; i<numNodes_; i++) {
+			outOffsets_[i+1] += outOffsets_[i];
+			neighborOffsets_[i+1] += neighborOffsets_[i];
+		}
+
+		out_ = new int[outOffsets_[numNodes_]];
+		neighbors_ = new int[neighborOffsets_[numNodes_]];
+		int[] nextOut = Arrays.copyOf(outOffsets_, numNodes_);
+		int[] nextNeighbor = Arrays.copyOf(neighborOffsets_, numNodes_);
+		for (int e=0; e<numEdges; e++) {
+			if (sources[e] == targets[e])
+				continue;
+			out_[nextOut[sources[e]]++] = targets[e];
+			neighbors_[nextNeighbor[sources[e]]++] = targets[e];
+			neighbors_[nextNeighbor[targets[e]]++] = sources[e];
+		}
+
+		outOffsets_ = sortAndCompact(outOffsets_, out_);
+		out_ = Arrays.copyOf(out_, outOffsets_[numNodes_]);
+		neighborOffsets_ = sortAndCompact(neighborOffsets_, neighbors_);
+		neighbors_ = Arrays.copyOf(neighbors_, neighborOffsets_[numNodes_]);
+
+		for (int i=0; i<numNodes_; i++)
+			maxDegree_ = Math.max(maxDegree_, neighborOffsets_[i+1] - neighborOffsets_[i]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Sort each list and remove duplicates, the lists are moved to the front of the array, return the new offsets */
+	private int[] sortAndCompact(int[] offsets, int[] lists) {
+
+		int[] newOffsets = new int[offsets.length];
+		int next = 0;
+		for (int i=0; i<numNodes_; i++) {
+			Arrays.sort(lists, offsets[i], offsets[i+1]);
+			for (int k=offsets[i]; k<offsets[i+1]; k++)
+				if (k == offsets[i] || lists[k] != lists[k-1])
+					lists[next++] = lists[k];
+			newOffsets[i+1] = next;
+		}
+		return newOffsets;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Find the classes of the connected adjacency matrices of size_ nodes */
+	private void buildClasses() {
+
+		int n = size_;
+		classIndex_ = new int[1 << (n*n)];
+		int[] ids = new int[1 << (n*n)];
+		int numClasses = 0;
+
+		for (int matrix=0; matrix<classIndex_.length; matrix++) {
+			classIndex_[matrix] = -1;
+			if (!isConnected(matrix, n))
+				continue;
+			int id = getId(matrix, n);
+			if (id == matrix)
+				ids[numClasses++] = id; // the smallest matrix of a class is its id
+		}
+		classIds_ = Arrays.copyOf(ids, numClasses);
+
+		for (int matrix=0; matrix<classIndex_.length; matrix++)
+			if (isConnected(matrix, n))
+				classIndex_[matrix] = Arrays.binarySearch(classIds_, getId(matrix, n));
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the matrix has no self-loops and the graph is weakly connected */
+	private static boolean isConnected(int matrix, int n) {
+
+		for (int i=0; i<n; i++)
+			if (bit(matrix, n, i, i))
+				return false;
+
+		int reached = 1;
+		for (int step=0; step<n; step++)
+			for (int i=0; i<n; i++)
+				if ((reached & (1 << i)) != 0)
+					for (int j=0; j<n; j++)
+						if (bit(matrix, n, i, j) || bit(matrix, n, j, i))
+							reached |= 1 << j;
+		return reached == (1 << n) - 1;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the entry (i,j) of the matrix */
+	private static boolean bit(int matrix, int n, int i, int j) {
+		return ((matrix >>> (n*n-1 - (i*n + j))) & 1) != 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the edge source->target exists */
+	private boolean isEdge(int source, int target) {
+		return Arrays.binarySearch(out_, outOffsets_[source], outOffsets_[source+1], target) >= 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the two nodes are connected in either direction */
+	private boolean isNeighbor(int node1, int node2) {
+		return Arrays.binarySearch(neighbors_, neighborOffsets_[node1], neighborOffsets_[node1+1], node2) >= 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Recursive step of ESU. The subgraph has the nodes sub[0..depth-1], the extension
+	 * is ext[depth][0..extSize-1]. Each node of the extension is added in turn, together
+	 * with its exclusive neighbors (larger than the root and not adjacent to the subgraph).
+	 */
+	private void extend(int[] sub, int depth, int[][] ext, int extSize, long[] counts) {
+
+		if (depth == size_) {
+			int matrix = 0;
+			for (int i=0; i<size_; i++)
+				for (int j=0; j<size_; j++)
+					matrix = (matrix << 1) | ((i != j && isEdge(sub[i], sub[j])) ? 1 : 0);
+			counts[classIndex_[matrix]]++;
+			return;
+		}
+
+		int root = sub[0];
+		int[] current = ext[depth];
+		int[] next = ext[depth + 1];
+		while (extSize > 0) {
+			int w = current[--extSize];
+			System.arraycopy(current, 0, next, 0, extSize);
+			int nextSize = extSize;
+
+			// The exclusive neighbors of w
+			if (depth + 1 < size_) {
+				for (int k=neighborOffsets_[w]; k<neighborOffsets_[w+1]; k++) {
+					int u = neighbors_[k];
+					if (u <= root)
+						continue;
+					boolean exclusive = true;
+					for (int i=0; i<depth && exclusive; i++)
+						exclusive = (u != sub[i] && !isNeighbor(u, sub[i]));
+					if (exclusive)
+						next[nextSize++] = u;
+				}
+			}
+
+			sub[depth] = w;
+			extend(sub, depth + 1, ext, nextSize, counts);
+		}
+	}
+
+
+	// ============================================================================
+	// CENSUS TASK
+
+	/** Enumerate the subgraphs of the root nodes start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class CensusTask extends RecursiveTask<long[]> {
+
+		/** The first root node */
+		private int start_ = -1;
+		/** The last root node (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public CensusTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Count the subgraphs or split the range, return the counts per class */
+		protected long[] compute() {
+
+			if (end_ - start_ > ROOTS_PER_TASK) {
+				int middle = (start_ + end_) >>> 1;
+				CensusTask second = new CensusTask(middle, end_);
+				second.fork();
+				long[] counts = new CensusTask(start_, middle).compute();
+				long[] counts2 = second.join();
+				for (int c=0; c<counts.length; c++)
+					counts[c] += counts2[c];
+				return counts;
+			}
+
+			long[] counts = new long[classIds_.length];
+			int[] sub = new int[size_];
+			// The extension grows by at most maxDegree_ nodes per level
+			int[][] ext = new int[size_ + 1][size_*maxDegree_ + 1];
+			for (int root=start_; root<end_; root++) {
+				int extSize = 0;
+				for (int k=neighborOffsets_[root]; k<neighborOffsets_[root+1]; k++)
+					if (neighbors_[k] > root)
+						ext[1][extSize++] = neighbors_[k];
+				sub[0] = root;
+				extend(sub, 1, ext, extSize, counts);
+			}
+			return counts;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int getSize() { return size_; }
+	/** The motif ids (sorted) */
+	public int[] getIds() { return classIds_; }
+	/** The number of subgraphs of each motif id (same order as getIds()) */
+	public long[] getCounts() { return counts_; }
+
+	/** The total number of connected subgraphs */
+	public long getNumSubgraphs() {
+
+		long total = 0;
+		for (long count : counts_)
+			total += count;
+		return total;
+	}
+}
@@ -39,14 +39,10 @@ import java.util.HashSet;
  */
 public class Network {
 
-	/** 
-	 * The genes of the gold standard (the key is the name of the gene).
-	 * Note, the gold standard edges are stored in the genes themselves
-	 * (see Gene.regulators_, Gene.targets_).
-	 */
-	private HashMap<String, Gene> genes_ = null;
-	
-	/** The set of regulators in the gold standard (a subset of genes_) */
+	/** The gold standard network (genes are identified by dense integer ids) */
+	private GoldStandard gold_ = null;
+
+	/** The set of regulators in the gold standard (created on first use, see getRegulators()) */
 	private HashSet<Gene> regulators_ = null;
 	
 	/** The number of edges in the gold standard */
@@ -56,7 +52,15 @@ public class Network {
 	 * The list of predicted edges, filtered to include only edges that
 	 * connect regulators and genes that are part of the gold standard 
 	 */
-	private ArrayList<Edge> predictionList_ = null;
+	private Prediction prediction_ = null;
+	/** The number of lines of the prediction file (retained or not) */
+	private int numPredictionLines_ = 0;
+	/** The number of edges between regulators and genes of the gold standard in the prediction file */
+	private long numRetainedEdges_ = 0;
+	/** The number of edges to keep in top-K mode (0 to keep all edges, see PredictionLoader) */
+	private int topK_ = 0;
+	/** The number of threads used to load the prediction */
+	private int numThreads_ = 1;
 	
 	
 	// ============================================================================
@@ -64,67 +68,106 @@ public class Network {
 	
 	/** Constructor, loads the network from the given file */
 	public Network(String predictionFile, String goldFile) {
+		this(predictionFile, goldFile, Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Constructor, loads only the gold standard (see Performance.assessStream()) */
+	public Network(String goldFile) {
 		
-		genes_ = new HashMap<String, Gene>();
-		regulators_ = new HashSet<Gene>();
-		numGoldStandardEdges_ = 0;
-		predictionList_ = new ArrayList<Edge>();
-		
-		// Load the gold standard
+		numThreads_ = Runtime.getRuntime().availableProcessors();
 		loadGoldStandard(goldFile);
-		// Load the prediction, only edges in the "universe" of the gold standard are included
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Constructor with the given gold standard only (see Performance.assessStream()) */
+	public Network(GoldStandard gold) {
+		
+		setGoldStandard(gold);
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Constructor with the given gold standard only, the prediction is read with the given number of threads */
+	public Network(GoldStandard gold, int numThreads) {
+		
+		numThreads_ = numThreads;
+		setGoldStandard(gold);
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Constructor, loads the prediction for the given (shared) gold standard */
+	public Network(GoldStandard gold, String predictionFile, int numThreads) {
+		
+		numThreads_ = numThreads;
+		setGoldStandard(gold);
 		loadPrediction(predictionFile);
 	}
 	
 	
     // ----------------------------------------------------------------------------
 
-	/** If the gene exists already return it, otherwise create and add it to genes_ */
-	public Gene addGene(String name) {
+	/** Constructor, loads only the K best edges of the (unsorted) prediction for the given gold standard */
+	public Network(GoldStandard gold, String predictionFile, int numThreads, int topK) {
 		
-		Gene gene = genes_.get(name);
-		if (gene == null) {
-			gene = new Gene(name);
-			genes_.put(name, gene);
-		}
-			
-		return gene;
+		numThreads_ = numThreads;
+		topK_ = topK;
+		setGoldStandard(gold);
+		loadPrediction(predictionFile);
 	}
+	
+	
+    // ----------------------------------------------------------------------------
 
+	/** Constructor with the given gold standard and prediction (see Evaluator) */
+	public Network(GoldStandard gold, Prediction prediction) {
+		
+		setGoldStandard(gold);
+		prediction_ = prediction;
+		numPredictionLines_ = prediction.size();
+		numRetainedEdges_ = prediction.size();
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Constructor, loads the network from the given file using the given number of threads */
+	public Network(String predictionFile, String goldFile, int numThreads) {
+		
+		numThreads_ = numThreads;
+		
+		// Load the gold standard
+		loadGoldStandard(goldFile);
+		// Load the prediction, only edges in the "universe" of the gold standard are included
+		loadPrediction(predictionFile);
+	}
+	
 	
 	// ============================================================================
 	// PRIVATE METHODS
 
-	/** Load the gold standard */
+	/** Load the gold standard (see GoldStandard.load()) */
 	public void loadGoldStandard(String file) {
 		
-		FileParser parser = new FileParser(file);
-		String[] nextLine = parser.readLine();
-		if (nextLine == null)
-			throw new RuntimeException("The file is empty!");
-		
-		boolean twoColumnFormat = (nextLine.length == 2);
-		boolean threeColumnFormat = (nextLine.length == 3);
+		setGoldStandard(GoldStandard.load(file, numThreads_));
+	}
+
+	
+    // ----------------------------------------------------------------------------
+
+	/** Set the gold standard, it is immutable and can be shared between networks */
+	private void setGoldStandard(GoldStandard gold) {
 		
-		while (nextLine != null) {
-			// Check format: either two columns or three columns where the third column is always '1'
-			if (twoColumnFormat && nextLine.length != 2)
-				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected two columns");
-			if (threeColumnFormat && nextLine.length != 3)
-				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
-			if (nextLine.length == 3 && Integer.parseInt(nextLine[2]) != 1)
-				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": the third column must be '1'");
-
-			Gene TF = addGene(nextLine[0]);
-			regulators_.add(TF);
-			Gene target = addGene(nextLine[1]);
-			TF.addTarget(target);
-			target.addRegulator(TF);
-			numGoldStandardEdges_++;
-			
-			nextLine = parser.readLine();
-		}
-		parser.close();
+		gold_ = gold;
+		numGoldStandardEdges_ = gold_.getNumListedEdges();
+		regulators_ = null;
 	}
 
 	
@@ -132,41 +175,54 @@ public class Network {
 
 	/** 
 	 * Load the prediction file, filtered to include only edges that
-	 * connect regulators and genes that are part of the gold standard
+	 * connect regulators and genes that are part of the gold standard.
+	 * Large files are parsed in parallel (see PredictionLoader).
 	 */
 	public void loadPrediction(String file) {
 		
-		FileParser parser = new FileParser(file);
-		String[] nextLine = parser.readLine();
-		if (nextLine == null)
-			throw new RuntimeException("The file is empty!");
-		
-		while (nextLine != null) {
-			// Check that the line has three columns
-			if (nextLine.length != 3)
-				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
-
-			Gene TF = genes_.get(nextLine[0]);
-			Gene target = genes_.get(nextLine[1]);
-			
-			// Check that the TF is a regulator and the target is a gene of the gold standard
-			if (TF != null && TF.isRegulator() && target != null) {
-				double score = Double.parseDouble(nextLine[2]);
-				Edge edge = new Edge(TF, target, score);
-				predictionList_.add(edge);
-			}
-			nextLine = parser.readLine();
-		}
+		PredictionLoader loader = new PredictionLoader(file, gold_, numThreads_);
+		loader.setTopK(topK_);
+		prediction_ = loader.load();
+		numPredictionLines_ = loader.getNumLines();
+		numRetainedEdges_ = loader.getNumRetained();
 	}
 
 	
 	// ============================================================================
 	// GETTERS AND SETTERS
 
-	public int getNumPossibleEdges() { return regulators_.size()*(genes_.size() - 1); }
+	public int getNumPossibleEdges() { return gold_.getNumRegulators()*(gold_.getNumGenes() - 1); }
 	public int getNumGoldStandardEdges() { return numGoldStandardEdges_; }
+	public GoldStandard getGoldStandard() { return gold_; }
+	public int getNumThreads() { return numThreads_; }
+	public int getNumPredictionLines() { return numPredictionLines_; }
+	public long getNumRetainedEdges() { return numRetainedEdges_; }
 				   
-	public ArrayList<Edge> getPredictionList() { return predictionList_; }
-	public HashSet<Gene> getRegulators() { return regulators_; }
-	public HashMap<String, Gene> getGenes() { return genes_; }
+	public Prediction getPrediction() { return prediction_; }
+	/**
+	 * The genes of the gold standard (the key is the name of the gene).
+	 * Note, the gold standard edges are not stored in the genes themselves,
+	 * the genes are views on the gold standard.
+	 */
+	public HashMap<String, Gene> getGenes() { return gold_.getGeneMap(); }
+
+	/** The set of regulators in the gold standard (a subset of getGenes()) */
+	public HashSet<Gene> getRegulators() {
+		if (regulators_ == null) {
+			regulators_ = new HashSet<Gene>();
+			for (int id : gold_.getRegulatorIds())
+				regulators_.add(gold_.getGene(id));
+		}
+		return regulators_;
+	}
+	
+	/** Return a new list with the predicted edges as Edge objects */
+	public ArrayList<Edge> getPredictionList() {
+		
+		ArrayList<Edge> list = new ArrayList<Edge>(prediction_.size());
+		for (int k=0; k<prediction_.size(); k++)
+			list.add(new Edge(gold_.getGene(prediction_.getRegulator(k)), gold_.getGene(prediction_.getTarget(k)), prediction_.getScore(k)));
+		
+		return list;
+	}
 }
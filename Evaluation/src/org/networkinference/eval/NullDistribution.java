@@ -0,0 +1,417 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Null distributions of AUPR and AUROC, used to compute p-values as in the
+ * DREAM challenges. Each sample is a random ranking of all possible edges: the
+ * ranks of the gold standard edges are drawn uniformly without replacement and
+ * the AUCs are computed with Curves, adding the runs of false positives between
+ * two true positives in constant time. The samples run in parallel on a
+ * fork-join pool, each with its own seed, so the result does not depend on the
+ * number of threads.
+ *
+ * The distributions are stored as histograms. They only depend on the gold
+ * standard, so they are cached on disk (one file per gold standard hash, number
+ * of possible edges, number of samples and seed) and later runs skip the
+ * simulation.
+ */
+public class NullDistribution {
+
+	/** The number of bins of the histograms */
+	public static final int NUM_BINS = 1000;
+
+	/** The first bytes of a cache file */
+	private static final int MAGIC = 0x4E554C4C; // "NULL"
+	/** The version of the cache file format */
+	private static final int VERSION = 1;
+	/** The number of samples per task of the fork-join pool */
+	private static final int SAMPLES_PER_TASK = 16;
+
+	/** Hash of the gold standard (GoldStandard.getContentHash()) */
+	private long goldHash_ = 0;
+	/** The number of gold standard edges (positives) */
+	private int numPositives_ = -1;
+	/** The number of possible edges */
+	private int numPossibleEdges_ = -1;
+	/** The number of samples */
+	private int numSamples_ = 10000;
+	/** The base seed */
+	private long seed_ = 42;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** Lower bound of the AUPR histogram */
+	private double AUPRMin_ = 0;
+	/** Upper bound of the AUPR histogram */
+	private double AUPRMax_ = 0;
+	/** The number of samples in each bin of the AUPR histogram */
+	private int[] AUPRCounts_ = null;
+	/** Lower bound of the AUROC histogram */
+	private double AUROCMin_ = 0;
+	/** Upper bound of the AUROC histogram */
+	private double AUROCMax_ = 0;
+	/** The number of samples in each bin of the AUROC histogram */
+	private int[] AUROCCounts_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public NullDistribution(GoldStandard gold, int numPositives, int numPossibleEdges, int numSamples, long seed, int numThreads) {
+
+		if (numSamples < 1)
+			throw new IllegalArgumentException("The number of samples of the null distribution must be at least 1");
+
+		goldHash_ = gold.getContentHash();
+		numPositives_ = numPositives;
+		numPossibleEdges_ = numPossibleEdges;
+		numSamples_ = numSamples;
+		seed_ = seed;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the histograms from the cache directory, or simulate them and save them to the cache */
+	public void compute(String cacheDir) {
+
+		File file = new File(cacheDir, getCacheFilename());
+		if (file.exists() && load(file)) {
+			Evaluation.println("Loaded null distribution: " + file.getPath());
+			return;
+		}
+
+		Evaluation.println("Simulating null distribution (" + numSamples_ + " random predictions)");
+		run();
+		save(file);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Simulate the random predictions and build the histograms */
+	public void run() {
+
+		double[] AUPR = new double[numSamples_];
+		double[] AUROC = new double[numSamples_];
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			pool.invoke(new SampleTask(AUPR, AUROC, 0, numSamples_));
+		} finally {
+			pool.shutdown();
+		}
+
+		AUPRMin_ = min(AUPR);
+		AUPRMax_ = max(AUPR);
+		AUPRCounts_ = histogram(AUPR, AUPRMin_, AUPRMax_);
+		AUROCMin_ = min(AUROC);
+		AUROCMax_ = max(AUROC);
+		AUROCCounts_ = histogram(AUROC, AUROCMin_, AUROCMax_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the probability that a random prediction has an AUPR at least as high as the given value */
+	public double getAUPRPValue(double AUPR) {
+		return pValue(AUPR, AUPRMin_, AUPRMax_, AUPRCounts_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the probability that a random prediction has an AUROC at least as high as the given value */
+	public double getAUROCPValue(double AUROC) {
+		return pValue(AUROC, AUROCMin_, AUROCMax_, AUROCCounts_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The name of the cache file for this gold standard, number of samples and seed */
+	public String getCacheFilename() {
+		return String.format("null_%016x_%d_%d_%d.bin", goldHash_, numPossibleEdges_, numSamples_, seed_);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The default cache directory (~/.networkinference) */
+	public static String getDefaultCacheDir() {
+		return System.getProperty("user.home") + File.separator + ".networkinference";
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Compute the AUCs of the random ranking i */
+	private void sample(int i, double[] AUPR, double[] AUROC, long[] drawn, int[] ranks) {
+
+		SplittableRandom random = new SplittableRandom(Bootstrap.seed(seed_, i));
+		int N = numPossibleEdges_;
+		int G = numPositives_;
+
+		// Floyd's algorithm: G distinct ranks in 0..N-1, the bit set marks the drawn ranks
+		for (int j=N-G, g=0; j<N; j++, g++) {
+			int rank = random.nextInt(j + 1);
+			if ((drawn[rank >>> 6] & (1L << rank)) != 0)
+				rank = j;
+			drawn[rank >>> 6] |= 1L << rank;
+			ranks[g] = rank;
+		}
+		Arrays.sort(ranks);
+
+		Curves curves = new Curves(G, N - G, false);
+		int previous = -1;
+		for (int g=0; g<G; g++) {
+			curves.addFalsePositives(ranks[g] - previous - 1);
+			curves.add(true);
+			previous = ranks[g];
+			drawn[ranks[g] >>> 6] = 0; // clear for the next sample
+		}
+		curves.addFalsePositives(N - 1 - previous);
+		curves.finish();
+
+		AUPR[i] = curves.getAUPR();
+		AUROC[i] = curves.getAUROC();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the fraction of the samples of the histogram that are >= x, interpolated linearly within the bin of x */
+	private double pValue(double x, double min, double max, int[] counts) {
+
+		if (counts == null)
+			throw new RuntimeException("The null distribution has not been computed");
+		if (x <= min)
+			return 1;
+		if (x > max)
+			return 0;
+
+		double position = (max > min) ? (x - min) / (max - min) * NUM_BINS : 0;
+		int bin = Math.min((int) position, NUM_BINS - 1);
+		double above = counts[bin] * (1 - (position - bin));
+		for (int b=bin+1; b<NUM_BINS; b++)
+			above += counts[b];
+
+		return above / numSamples_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Count the values in NUM_BINS bins of equal width between min and max */
+	private static int[] histogram(double[] values, double min, double max) {
+
+		int[] counts = new int[NUM_BINS];
+		for (double value : values) {
+			int bin = (max > min) ? (int) ((value - min) / (max - min) * NUM_BINS) : 0;
+			counts[Math.min(bin, NUM_BINS - 1)]++;
+		}
+		return counts;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Smallest value */
+	private static double min(double[] values) {
+
+		double min = Double.POSITIVE_INFINITY;
+		for (double value : values)
+			min = Math.min(min, value);
+		return min;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Largest value */
+	private static double max(double[] values) {
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values)
+			max = Math.max(max, value);
+		return max;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read the histograms from the given cache file, return false if the file is invalid or does not match */
+	private boolean load(File file) {
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					return false;
+				if (in.readLong() != goldHash_ || in.readInt() != numPositives_ || in.readInt() != numPossibleEdges_
+						|| in.readInt() != numSamples_ || in.readLong() != seed_ || in.readInt() != NUM_BINS)
+					return false;
+
+				double AUPRMin = in.readDouble();
+				double AUPRMax = in.readDouble();
+				int[] AUPRCounts = readCounts(in);
+				double AUROCMin = in.readDouble();
+				double AUROCMax = in.readDouble();
+				int[] AUROCCounts = readCounts(in);
+				if (AUPRCounts == null || AUROCCounts == null)
+					return false;
+
+				AUPRMin_ = AUPRMin;
+				AUPRMax_ = AUPRMax;
+				AUPRCounts_ = AUPRCounts;
+				AUROCMin_ = AUROCMin;
+				AUROCMax_ = AUROCMax;
+				AUROCCounts_ = AUROCCounts;
+				return true;
+
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// Truncated or unreadable file, the distribution is simulated again
+			return false;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read the counts of a histogram, return null if they do not sum to the number of samples */
+	private int[] readCounts(DataInputStream in) throws IOException {
+
+		int[] counts = new int[NUM_BINS];
+		long sum = 0;
+		for (int b=0; b<NUM_BINS; b++) {
+			counts[b] = in.readInt();
+			sum += counts[b];
+		}
+		return (sum == numSamples_) ? counts : null;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the histograms to the given cache file (a failure only prints a warning) */
+	private void save(File file) {
+
+		try {
+			AtomicFile.write(file, channel -> {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(goldHash_);
+				out.writeInt(numPositives_);
+				out.writeInt(numPossibleEdges_);
+				out.writeInt(numSamples_);
+				out.writeLong(seed_);
+				out.writeInt(NUM_BINS);
+				out.writeDouble(AUPRMin_);
+				out.writeDouble(AUPRMax_);
+				for (int count : AUPRCounts_)
+					out.writeInt(count);
+				out.writeDouble(AUROCMin_);
+				out.writeDouble(AUROCMax_);
+				for (int count : AUROCCounts_)
+					out.writeInt(count);
+				out.flush();
+			});
+			Evaluation.println("Saved null distribution: " + file.getPath());
+
+		} catch (IOException e) {
+			System.err.println("Warning: the null distribution could not be cached: " + e.getMessage());
+		}
+	}
+
+
+	// ============================================================================
+	// SAMPLE TASK
+
+	/** Compute the samples start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class SampleTask extends RecursiveAction {
+
+		/** AUPR of each sample */
+		private double[] AUPR_ = null;
+		/** AUROC of each sample */
+		private double[] AUROC_ = null;
+		/** The first sample */
+		private int start_ = -1;
+		/** The last sample (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public SampleTask(double[] AUPR, double[] AUROC, int start, int end) {
+			AUPR_ = AUPR;
+			AUROC_ = AUROC;
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Compute the samples or split the range */
+		protected void compute() {
+
+			if (end_ - start_ <= SAMPLES_PER_TASK) {
+				long[] drawn = new long[(numPossibleEdges_ + 63) >>> 6];
+				int[] ranks = new int[numPositives_];
+				for (int i=start_; i<end_; i++)
+					sample(i, AUPR_, AUROC_, drawn, ranks);
+			} else {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new SampleTask(AUPR_, AUROC_, start_, middle), new SampleTask(AUPR_, AUROC_, middle, end_));
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int getNumSamples() { return numSamples_; }
+	public long getSeed() { return seed_; }
+}
@@ -25,9 +25,7 @@ THE SOFTWARE.
  */
 package org.networkinference.eval;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 
 
 /**
@@ -37,8 +35,10 @@ public class Performance {
 	
 	/** The network that is being assessed */
 	private Network network_ = null;
+	/** The gold standard */
+	private GoldStandard gold_ = null;
 	/** The prediction list */
-	private ArrayList<Edge> predictionList_ = null;
+	private Prediction prediction_ = null;
 	
 	/** The number of gold standard edges */
 	private int numGoldStandardEdges_ = -1;
@@ -47,15 +47,33 @@ public class Performance {
 	/** The total number of possible edges */
 	private int numPossibleEdges_ = -1;
 	
-	/** PR curve */
-	private double[][] PR_ = null;
-	/** ROC curve */
-	private double[][] ROC_ = null;
+	/** PR and ROC curves (only the points of the predicted edges are stored) */
+	private Curves curves_ = null;
 	/** Area under PR curve */
 	private double AUPR_ = -1;
 	/** Area under ROC curve */
 	private double AUROC_ = -1;
+	/** P-value of the AUPR (NaN if not computed) */
+	private double AUPRPValue_ = Double.NaN;
+	/** P-value of the AUROC (NaN if not computed) */
+	private double AUROCPValue_ = Double.NaN;
 	
+	/** The timing of the phases (see RunMetrics) */
+	private RunMetrics metrics_ = new RunMetrics();
+	/** The number of lines of the prediction file in streaming mode */
+	private int numPredictionLines_ = 0;
+	
+	/** Set false to compute only the AUCs, without storing the points of the curves */
+	private boolean recordCurves_ = true;
+	/** Set true to write only the breakpoints of the curves, downsampled with error bound curveTolerance_ */
+	private boolean compactCurves_ = false;
+	/** The maximum number of points per curve in compact mode (the tolerance is increased if needed) */
+	private int maxCurvePoints_ = 10000;
+	/** The maximum distance between the written and the exact curve in compact mode */
+	private double curveTolerance_ = 1e-4;
+	
+	/** The transitive and co-regulation edges of the gold standard */
+	private ErrorMatrices errors_ = null;
 	/** The number of transitive edges */
 	private int numTransitive_ = -1;
 	/** The number of co-regulation edges */
@@ -63,9 +81,9 @@ public class Performance {
 	/** The total number of false positives */
 	private int numFalsePositives_ = -1;
 
-	/** The expected number of transitive edges in a randomized prediction with the same number of true/false positives */
+	/** The number of transitive edges among all possible edges (self-loops excluded) */
 	private int numTransitiveRand_ = -1;
-	/** The number of co-regulation edges */
+	/** The number of co-regulation edges among all possible edges (self-loops excluded) */
 	private int numCoregulationRand_ = -1;
 
 	
@@ -76,8 +94,9 @@ public class Performance {
 	public Performance(Network network) {
 		
 		network_ = network;
-		predictionList_ = network.getPredictionList();
-		numPredictedEdges_ = predictionList_.size();
+		gold_ = network.getGoldStandard();
+		prediction_ = network.getPrediction();
+		numPredictedEdges_ = (prediction_ == null) ? 0 : prediction_.size();
 		numGoldStandardEdges_ = network_.getNumGoldStandardEdges();
 		numPossibleEdges_ = network.getNumPossibleEdges();
 	}
@@ -88,8 +107,119 @@ public class Performance {
 	/** Compute PR and ROC curves, as well as AUPR and AUROC values */
 	public void assess() {
 		
+		metrics_.beginPhase("curves");
 		computeCurves();
+		metrics_.endPhase(numPredictedEdges_);
+		metrics_.beginPhase("auc");
+		computeAreaUnderCurves();
+		metrics_.endPhase(numPredictedEdges_);
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** 
+	 * Compute AUPR and AUROC in a single pass over the given prediction file, without
+	 * loading the prediction (the network must be created with the gold standard only).
+	 * Each line is classified against the gold standard and added to the running sums,
+	 * so the memory does not depend on the number of predictions. The curves are not
+	 * stored and cannot be written.
+	 */
+	public void assessStream(String predictionFile) {
+		
+		metrics_.beginPhase("stream");
+		curves_ = new Curves(numGoldStandardEdges_, numPossibleEdges_ - numGoldStandardEdges_, false);
+		numPredictedEdges_ = 0;
+		if (BinaryPrediction.isBinary(predictionFile)) {
+			streamBinary(predictionFile);
+			return;
+		}
+		
+		MappedFileParser parser = new MappedFileParser(predictionFile, network_.getNumThreads());
+		if (!parser.nextLine())
+			throw new RuntimeException("The file is empty!");
+		
+		SymbolTable symbols = gold_.getSymbols();
+		do {
+			// Check that the line has three columns
+			if (parser.getNumColumns() != 3)
+				throw new RuntimeException("Parse error at line " + parser.getLineCounter() + ": expected three columns");
+			
+			int TF = parser.find(0, symbols);
+			int target = parser.find(1, symbols);
+			
+			// Check that the TF is a regulator and the target is a gene of the gold standard
+			if (TF >= 0 && gold_.isRegulator(TF) && target >= 0) {
+				parser.parseDouble(2); // the score is not needed, but malformed scores are reported
+				if (++numPredictedEdges_ > numPossibleEdges_)
+					throw new RuntimeException("The prediction has more edges than there are possible edges (duplicate edges?)");
+				curves_.add(gold_.isEdge(TF, target));
+			}
+		} while (parser.nextLine());
+		numPredictionLines_ = parser.getLineCounter();
+		parser.close();
+		
+		curves_.finish();
+		metrics_.endPhase(numPredictionLines_);
+		metrics_.beginPhase("auc");
+		computeAreaUnderCurves();
+		metrics_.endPhase(numPredictedEdges_);
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Compute AUPR and AUROC from the edges of an external sort, read in the order of
+	 * decreasing scores (the network must be created with the gold standard only). Edges
+	 * with equal scores are tied as with a prediction ranked in memory (see addTiedBlocks()).
+	 * Only the current block of tied edges is kept, the curves are not stored.
+	 */
+	public void assessSorted(ExternalSort sort) {
+		
+		metrics_.beginPhase("sort");
+		sort.sort();
+		numPredictionLines_ = (int) sort.getNumLines();
+		metrics_.endPhase(numPredictionLines_);
+		
+		metrics_.beginPhase("curves");
+		if (sort.getNumEdges() > numPossibleEdges_)
+			throw new RuntimeException("The prediction has more edges than there are possible edges (duplicate edges?)");
+		numPredictedEdges_ = (int) sort.getNumEdges();
+		curves_ = new Curves(numGoldStandardEdges_, numPossibleEdges_ - numGoldStandardEdges_, false);
+		
+		boolean hasEdge = sort.nextEdge();
+		while (hasEdge) {
+			long key = sort.getKey();
+			int numEdges = 0;
+			int numTruePositives = 0;
+			do {
+				numEdges++;
+				if (gold_.isEdge(sort.getRegulator(), sort.getTarget()))
+					numTruePositives++;
+				hasEdge = sort.nextEdge();
+			} while (hasEdge && sort.getKey() == key);
+			
+			double TP = numTruePositives / (double) numEdges;
+			for (int k=0; k<numEdges; k++)
+				curves_.add(TP, 1 - TP);
+		}
+		curves_.finish();
+		metrics_.endPhase(numPredictedEdges_);
+		
+		metrics_.beginPhase("auc");
 		computeAreaUnderCurves();
+		metrics_.endPhase(numPredictedEdges_);
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** Compute the p-values of AUPR and AUROC from the given null distribution (after assess()) */
+	public void computePValues(NullDistribution nulls) {
+		
+		AUPRPValue_ = nulls.getAUPRPValue(AUPR_);
+		AUROCPValue_ = nulls.getAUROCPValue(AUROC_);
 	}
 
 	
@@ -116,17 +246,35 @@ public class Performance {
 			Evaluation.println("AUROC:\t0.5");
 		Evaluation.println("");
 		
+		boolean pValues = !Double.isNaN(AUPRPValue_);
+		if (pValues) {
+			Evaluation.println("P-VALUES (PROBABILITY THAT A RANDOM PREDICTION IS AT LEAST AS GOOD)");
+			if (PR)
+				Evaluation.println("AUPR:\t" + AUPRPValue_);
+			if (ROC)
+				Evaluation.println("AUROC:\t" + AUROCPValue_);
+			Evaluation.println("");
+		}
+		
 		// PR curve
-		if (PR)
-			writeCurve(PR_, filename + "_PR.txt");
-		if (ROC)
-			writeCurve(ROC_, filename + "_ROC.txt");
+		if (!curves_.isRecordingPoints()) {
+			Evaluation.println("The curves are not written in streaming mode");
+		} else {
+			if (PR)
+				writeCurve(true, filename + "_PR.txt");
+			if (ROC)
+				writeCurve(false, filename + "_ROC.txt");
+		}
 		
 		// AUCs
 		FileExport writer = new FileExport(filename + "_AUC.txt");
 		writer.println("AUPR\t" + AUPR_);
 		writer.println("AUROC\t" + AUROC_);
 		writer.println("AUPR_random\t" + AUPR_rand);
+		if (pValues) {
+			writer.println("AUPR_pvalue\t" + AUPRPValue_);
+			writer.println("AUROC_pvalue\t" + AUROCPValue_);
+		}
 		writer.close();
 	}
 
@@ -136,6 +284,7 @@ public class Performance {
 	/** Evaluate transitive and co-regulation edges */
 	public void analyzeErrors() {
 		
+		errors_ = new ErrorMatrices(gold_, network_.getNumThreads());
 		countErrors();
 		countExpectedErrors();
 		
@@ -157,59 +306,207 @@ public class Performance {
 	}
 
 	
-	// ============================================================================
-	// PRIVATE METHODS
+    // ----------------------------------------------------------------------------
 
-	/** Compute PR and ROC curves */
-	private void computeCurves() {
+	/**
+	 * Count the false positives, transitive and co-regulation edges of the top k edges
+	 * of the prediction for every cutoff k (increasing). The counts are accumulated in
+	 * a single pass over the list, the error matrices are computed only once. The table
+	 * is written to filename + "_sweep.txt".
+	 */
+	public void sweepErrors(int[] cutoffs, String filename) {
+		
+		if (errors_ == null)
+			errors_ = new ErrorMatrices(gold_, network_.getNumThreads());
+		countExpectedErrors();
 		
-		// Define some constants
-		int numGoldStandardNegatives = numPossibleEdges_ - numGoldStandardEdges_; // The total number of negatives
-		if (numGoldStandardNegatives == 0)
-			throw new RuntimeException("There are no negatives in the gold standard!");
+		int numNegatives = numPossibleEdges_ - numGoldStandardEdges_;
+		double fractionTransitive = numTransitiveRand_/(double)numNegatives;
+		double fractionCoregulation = numCoregulationRand_/(double)numNegatives;
 		
-		PR_ = new double[numPossibleEdges_][2];
-		ROC_ = new double[numPossibleEdges_][2];
-
-		double TP_k = 0; // Number of true positives at rank k
-		double FP_k = 0; // Number of false positives at rank k
+		String header = "Cutoff	True positives	False positives	Transitive	Expected	Co-regulation	Expected";
+		Evaluation.println("");
+		Evaluation.println("SYSTEMATIC PREDICTION ERRORS AT EACH CUTOFF");
+		Evaluation.println(header);
+		FileExport writer = new FileExport(filename + "_sweep.txt");
+		writer.println(header);
 		
+		// Running counts of the top k edges
+		int numFalsePositives = 0;
+		int numTransitive = 0;
+		int numCoregulation = 0;
 		int k = 0;
-		for (; k<numPredictedEdges_; k++) {
-			Edge edge_k = predictionList_.get(k);
-			if (edge_k.isTruePositive())
-				TP_k++;
-			else
-				FP_k++;
+		for (int c=0; c<cutoffs.length; c++) {
+			if (cutoffs[c] < 1)
+				throw new IllegalArgumentException("The cutoffs must be positive");
+			int cutoff = Math.min(cutoffs[c], numPredictedEdges_);
+			if (cutoff < k)
+				throw new IllegalArgumentException("The cutoffs must be increasing");
 			
-			PR_[k][0] = TP_k / numGoldStandardEdges_; // recall
-			PR_[k][1] = TP_k / (k+1); // precision
-			ROC_[k][0] = FP_k / numGoldStandardNegatives; // false positive rate
-			ROC_[k][1] = PR_[k][0]; // true positive rate = recall
+			for (; k<cutoff; k++) {
+				int TF = prediction_.getRegulator(k);
+				int target = prediction_.getTarget(k);
+				
+				if (!gold_.isEdge(TF, target))
+					numFalsePositives++;
+				if (errors_.isTransitive(TF, target))
+					numTransitive++;
+				if (errors_.isCoregulation(TF, target))
+					numCoregulation++;
+			}
+			String line = cutoff + "\t" + (cutoff - numFalsePositives) + "\t" + numFalsePositives
+					+ "\t" + numTransitive + "\t" + fractionTransitive*numFalsePositives
+					+ "\t" + numCoregulation + "\t" + fractionCoregulation*numFalsePositives;
+			Evaluation.println(line);
+			writer.println(line);
 		}
+		Evaluation.println("");
+		writer.close();
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Classify the triads formed by the false positives with the gold standard and
+	 * count the bi-fans and bi-parallels that they close (see MotifAnalysis). If
+	 * censusSize is 3 or 4, also count the subgraphs of that size in the gold
+	 * standard and the predicted network (see MotifCensus). The census is not
+	 * restricted to the false positives, the ratio only compares the motif
+	 * frequencies of the two networks (NaN if the motif is not in the gold standard).
+	 */
+	public void analyzeMotifs(String filename, int censusSize) {
+		
+		MotifAnalysis analysis = new MotifAnalysis(gold_, prediction_, network_.getNumThreads());
+		analysis.run();
+		analysis.output(filename + "_motifs.txt");
+		analysis.outputClosures(filename + "_motifs4.txt");
+		
+		if (censusSize == 0)
+			return;
+		
+		// The gold standard edges from the CSR lists
+		int numGoldEdges = gold_.getNumEdges();
+		int[] sources = new int[numGoldEdges];
+		int[] targetOffsets = gold_.getTargetOffsets();
+		for (int i=0; i<gold_.getNumGenes(); i++)
+			Arrays.fill(sources, targetOffsets[i], targetOffsets[i+1], i);
+		
+		MotifCensus goldCensus = new MotifCensus(censusSize, gold_.getNumGenes(), sources, gold_.getTargets(), numGoldEdges);
+		goldCensus.run(network_.getNumThreads());
+		MotifCensus predictionCensus = new MotifCensus(censusSize, gold_.getNumGenes(), prediction_.getRegulators(), prediction_.getTargets(), numPredictedEdges_);
+		predictionCensus.run(network_.getNumThreads());
+		
+		String header = "Motif\tName\tGold standard\tFraction\tPrediction\tFraction\tRatio";
+		Evaluation.println("");
+		Evaluation.println(censusSize + "-NODE SUBGRAPHS OF THE GOLD STANDARD AND THE PREDICTION");
+		Evaluation.println(header);
+		FileExport writer = new FileExport(filename + "_census.txt");
+		writer.println(header);
+		
+		int[] ids = goldCensus.getIds();
+		long[] goldCounts = goldCensus.getCounts();
+		long[] predictionCounts = predictionCensus.getCounts();
+		double goldTotal = goldCensus.getNumSubgraphs();
+		double predictionTotal = predictionCensus.getNumSubgraphs();
+		for (int c=0; c<ids.length; c++) {
+			if (goldCounts[c] == 0 && predictionCounts[c] == 0)
+				continue;
+			double goldFraction = goldCounts[c] / goldTotal;
+			double predictionFraction = predictionCounts[c] / predictionTotal;
+			double ratio = (goldCounts[c] > 0) ? predictionFraction/goldFraction : Double.NaN;
+			String line = ids[c] + "\t" + MotifCensus.getName(ids[c], censusSize) + "\t" + goldCounts[c] + "\t" + goldFraction
+					+ "\t" + predictionCounts[c] + "\t" + predictionFraction + "\t" + ratio;
+			Evaluation.println(line);
+			writer.println(line);
+		}
+		Evaluation.println("");
+		writer.close();
+	}
+
+	
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** 
+	 * Compute PR and ROC curves. Only the points of the predicted edges are stored,
+	 * the random tail beyond the list of predicted edges is handled analytically
+	 * (see Curves.finish())
+	 */
+	private void computeCurves() {
+		
+		if (numPredictedEdges_ > numPossibleEdges_)
+			throw new RuntimeException("The prediction has more edges than there are possible edges (duplicate edges?)");
+		
+		curves_ = new Curves(numGoldStandardEdges_, numPossibleEdges_ - numGoldStandardEdges_, recordCurves_);
 		
-		// Random discovery rate for the remaining edges, if not all edges were included
-		double prob_TP = -1;
-		double prob_FP = -1;
-		if (k < numPossibleEdges_) {
-			prob_TP = (numGoldStandardEdges_ - TP_k) / (double)(numPossibleEdges_ - k);
-			prob_FP = 1 - prob_TP;
+		if (prediction_.isRankedByScore()) {
+			addTiedBlocks();
+		} else {
+			for (int k=0; k<numPredictedEdges_; k++)
+				curves_.add(gold_.isEdge(prediction_.getRegulator(k), prediction_.getTarget(k)));
 		}
 		
 		// Extend beyond the list of predicted edges if it does not include all possible edges
-		for (; k<numPossibleEdges_; k++) {
-			TP_k += prob_TP;
-			FP_k += prob_FP;
+		curves_.finish();
+		
+		assert Evaluation.assertEquals(curves_.getNumPoints() + curves_.getTailLength(), numPossibleEdges_);
+		assert Evaluation.assertEquals(curves_.getTP(), numGoldStandardEdges_);
+		assert Evaluation.assertEquals(curves_.getFP(), numPossibleEdges_ - numGoldStandardEdges_);
+	}
+
+
+    // ----------------------------------------------------------------------------
+
+	/**
+	 * Add the edges of a prediction ranked by score to the curves. The order of edges
+	 * with equal scores is arbitrary, so each rank of a block of m tied edges with t
+	 * true positives gets the expected mass t/m of true positives and 1 - t/m of false
+	 * positives. The result does not depend on the order of the edges in the file.
+	 */
+	private void addTiedBlocks() {
+		
+		double[] scores = prediction_.getScores();
+		for (int start=0, end=0; start<numPredictedEdges_; start=end) {
+			int numTruePositives = 0;
+			for (end=start; end<numPredictedEdges_ && Double.compare(scores[end], scores[start]) == 0; end++)
+				if (gold_.isEdge(prediction_.getRegulator(end), prediction_.getTarget(end)))
+					numTruePositives++;
 			
-			PR_[k][0] = TP_k / numGoldStandardEdges_; // recall
-			PR_[k][1] = TP_k / (k+1); // precision
-			ROC_[k][0] = FP_k / numGoldStandardNegatives; // false positive rate
-			ROC_[k][1] = PR_[k][0]; // true positive rate = recall			
+			double TP = numTruePositives / (double) (end - start);
+			for (int k=start; k<end; k++)
+				curves_.add(TP, 1 - TP);
+		}
+	}
+
+	
+	// ----------------------------------------------------------------------------
+
+	/** Same as assessStream() for a binary prediction, the blocks are read from the mapped file */
+	private void streamBinary(String predictionFile) {
+		
+		BinaryPrediction binary = new BinaryPrediction(predictionFile);
+		int[] geneIds = binary.getGeneIds(gold_.getSymbols());
+		for (int b=0; b<binary.getNumBlocks(); b++) {
+			BinaryPrediction.Block block = binary.getBlock(b);
+			for (int k=0; k<block.size(); k++) {
+				int TF = geneIds[block.getRegulator(k)];
+				int target = geneIds[block.getTarget(k)];
+				if (TF >= 0 && gold_.isRegulator(TF) && target >= 0) {
+					if (++numPredictedEdges_ > numPossibleEdges_)
+						throw new RuntimeException("The prediction has more edges than there are possible edges (duplicate edges?)");
+					curves_.add(gold_.isEdge(TF, target));
+				}
+			}
 		}
+		numPredictionLines_ = (int) binary.getNumEdges();
+		binary.close();
 		
-		assert Evaluation.assertEquals(TP_k + FP_k, numPossibleEdges_);
-		assert Evaluation.assertEquals(TP_k, numGoldStandardEdges_);
-		assert Evaluation.assertEquals(FP_k, numGoldStandardNegatives);
+		curves_.finish();
+		metrics_.endPhase(numPredictionLines_);
+		metrics_.beginPhase("auc");
+		computeAreaUnderCurves();
+		metrics_.endPhase(numPredictedEdges_);
 	}
 
 
@@ -232,15 +529,9 @@ public class Performance {
 	 */
 	private void computeAreaUnderCurves() {
 		
-		AUPR_ = 0;
-		AUROC_ = 0;
-		
-		for (int k=0; k<numPossibleEdges_-1; k++) {
-			AUPR_ += (PR_[k+1][0] - PR_[k][0]) * (PR_[k+1][1] + PR_[k][1]) / 2;
-			AUROC_ += (ROC_[k+1][0] - ROC_[k][0]) * (ROC_[k+1][1] + ROC_[k][1]) / 2;
-		}
-		// Normalize AUPR by max possible value
-		AUPR_ = AUPR_ / (1 - 1.0/network_.getNumGoldStandardEdges());
+		// The trapezoids are summed while the curves are computed, the AUPR is normalized by max possible value
+		AUPR_ = curves_.getAUPR();
+		AUROC_ = curves_.getAUROC();
 	}
 
 
@@ -254,13 +545,14 @@ public class Performance {
 		numCoregulation_ = 0;
 		
 		for (int k=0; k<numPredictedEdges_; k++) {
-			Edge edge_k = predictionList_.get(k);
+			int TF = prediction_.getRegulator(k);
+			int target = prediction_.getTarget(k);
 			
-			if (!edge_k.isTruePositive())
+			if (!gold_.isEdge(TF, target))
 				numFalsePositives_++;
-			if (edge_k.isTransitive())
+			if (errors_.isTransitive(TF, target))
 				numTransitive_++;
-			if (edge_k.isCoregulation())
+			if (errors_.isCoregulation(TF, target))
 				numCoregulation_++;
 		}
 	}
@@ -271,41 +563,165 @@ public class Performance {
 	/** Count the number of expected transitive and co-regulation edges in a randomized prediction with the same number of TPs/FPs */
 	private void countExpectedErrors() {
 
-		HashSet<Gene> regulators = network_.getRegulators();
-		Iterator<Gene> regIter = regulators.iterator();
-		// Iterate over all regulators
-		while (regIter.hasNext()) {
-			Gene TF = regIter.next();
-
-			// Iterate over all genes
-			Iterator<Gene> targetIter = network_.getGenes().values().iterator();
-			while (targetIter.hasNext()) {
-				Gene target = targetIter.next();
-				// self-loop
-				if (TF.equals(target))
-					continue;
-				
-				Edge edge = new Edge (TF, target);
-				if (edge.isTransitive())
-					numTransitiveRand_++;
-				if (edge.isCoregulation())
-					numCoregulationRand_++;
-			}
+		// The counts only depend on the gold standard and may have been precomputed (see GoldStandardSnapshot)
+		if (gold_.getNumTransitiveNegatives() >= 0) {
+			numTransitiveRand_ = gold_.getNumTransitiveNegatives();
+			numCoregulationRand_ = gold_.getNumCoregulationNegatives();
+		} else {
+			numTransitiveRand_ = errors_.countTransitive();
+			numCoregulationRand_ = errors_.countCoregulation();
 		}
 	}
 
 	
     // ----------------------------------------------------------------------------
 
-	/** Write PR/ROC curve */
-	private void writeCurve(double[][] curve, String filename) {
+	/** 
+	 * Write PR/ROC curve (all points, or only the breakpoints and samples of the tail
+	 * in compact mode). The points of the random tail are generated while writing,
+	 * in the same way as they were generated before the tail was handled analytically.
+	 */
+	private void writeCurve(boolean PR, String filename) {
+		
+		if (compactCurves_) {
+			writeCompactCurve(PR, filename);
+			return;
+		}
 		
+		int numGoldStandardNegatives = numPossibleEdges_ - numGoldStandardEdges_;
 		FileExport writer = new FileExport(filename);
-		for (int i=0; i<numPossibleEdges_; i++)
-			writer.println(curve[i][0] + "\t" + curve[i][1]);	
+		
+		double TP_k = 0; // Number of true positives at rank k
+		double FP_k = 0; // Number of false positives at rank k
+		double prob_TP = curves_.getProbTP();
+		double prob_FP = 1 - prob_TP;
+		
+		for (int k=0; k<numPossibleEdges_; k++) {
+			if (k < curves_.getNumPoints()) {
+				TP_k = curves_.getTP(k);
+				FP_k = curves_.getFP(k);
+			} else {
+				TP_k += prob_TP;
+				FP_k += prob_FP;
+			}
+			
+			double recall = TP_k / numGoldStandardEdges_;
+			if (PR)
+				writer.println(recall + "\t" + TP_k / (k+1)); // recall, precision
+			else
+				writer.println(FP_k / numGoldStandardNegatives + "\t" + recall); // false positive rate, true positive rate
+		}
 		
 		writer.println("");
 		writer.close();
 	}
 
+
+    // ----------------------------------------------------------------------------
+
+	/** 
+	 * Write PR/ROC curve in compact mode. The candidate points are the breakpoints
+	 * of the predicted ranks (where the slope of TP/FP changes) and samples of the
+	 * random tail. The ROC curve is linear between breakpoints and in the tail. The
+	 * PR curve is not, so all predicted ranks are candidates and the tail is sampled
+	 * densely enough that linear interpolation is within curveTolerance_/2. The
+	 * candidates are then downsampled with tolerance curveTolerance_/2.
+	 */
+	private void writeCompactCurve(boolean PR, String filename) {
+		
+		int n = curves_.getNumPoints();
+		long N = numPossibleEdges_;
+		double numGoldStandardNegatives = numPossibleEdges_ - numGoldStandardEdges_;
+		
+		double[] x = new double[n + 1024];
+		double[] y = new double[n + 1024];
+		int m = 0;
+		
+		// Predicted ranks
+		for (int k=0; k<n; k++) {
+			if (!PR && k > 0 && k < n-1 && !isBreakpoint(k))
+				continue;
+			
+			double TP_k = curves_.getTP(k);
+			x[m] = PR ? TP_k / numGoldStandardEdges_ : curves_.getFP(k) / numGoldStandardNegatives;
+			y[m] = PR ? TP_k / (k+1) : TP_k / numGoldStandardEdges_;
+			m++;
+		}
+		
+		// Random tail, the precision at rank k is prob_TP + d/(k+1)
+		if (n < N) {
+			double TP_n = (n > 0) ? curves_.getTP(n-1) : 0;
+			double FP_n = (n > 0) ? curves_.getFP(n-1) : 0;
+			double prob_TP = curves_.getProbTP();
+			double d = TP_n - prob_TP*n;
+			
+			long k = n;
+			while (true) {
+				if (m == x.length) {
+					x = Arrays.copyOf(x, 2*m);
+					y = Arrays.copyOf(y, 2*m);
+				}
+				double TP_k = TP_n + prob_TP*(k + 1 - n);
+				double FP_k = FP_n + (1 - prob_TP)*(k + 1 - n);
+				x[m] = PR ? TP_k / numGoldStandardEdges_ : FP_k / numGoldStandardNegatives;
+				y[m] = PR ? TP_k / (k+1) : TP_k / numGoldStandardEdges_;
+				m++;
+				
+				if (k == N-1)
+					break;
+				
+				// The chord error of d/(k+1) over a step s is at most |d|*s^2/(4*(k+1)^3)
+				long step = N;
+				if (PR && d != 0)
+					step = Math.max(1, (long) Math.sqrt(2*curveTolerance_*Math.pow(k+1, 3) / Math.abs(d)));
+				k = Math.min(k + step, N-1);
+			}
+		}
+		
+		CurveCompressor compressor = new CurveCompressor(x, y, m);
+		int[] kept = compressor.simplify(curveTolerance_/2, maxCurvePoints_);
+		
+		FileExport writer = new FileExport(filename);
+		for (int i=0; i<kept.length; i++)
+			writer.println(x[kept[i]] + "\t" + y[kept[i]]);
+		writer.println("");
+		writer.close();
+		
+		Evaluation.println("Wrote " + kept.length + " of " + numPossibleEdges_ + " points (max error " + (compressor.getTolerance() + curveTolerance_/2) + ")");
+	}
+	
+	
+    // ----------------------------------------------------------------------------
+
+	/** Return true if the TP/FP increments at predicted rank k and k+1 differ */
+	private boolean isBreakpoint(int k) {
+		
+		double increment = curves_.getTP(k) - curves_.getTP(k-1);
+		double nextIncrement = curves_.getTP(k+1) - curves_.getTP(k);
+		return increment != nextIncrement;
+	}
+
+	
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public double getAUPR() { return AUPR_; }
+	public double getAUROC() { return AUROC_; }
+	public double getAUPRPValue() { return AUPRPValue_; }
+	public double getAUROCPValue() { return AUROCPValue_; }
+	public int getNumPredictedEdges() { return numPredictedEdges_; }
+	public int getNumPredictionLines() { return numPredictionLines_; }
+	public Curves getCurves() { return curves_; }
+	
+	public void setMetrics(RunMetrics metrics) { metrics_ = metrics; }
+	public void setRecordCurves(boolean b) { recordCurves_ = b; }
+
+	/** Set compact mode for the curves, see writeCompactCurve() */
+	public void setCompactCurves(boolean compact, int maxPoints, double tolerance) {
+		
+		compactCurves_ = compact;
+		maxCurvePoints_ = maxPoints;
+		curveTolerance_ = tolerance;
+	}
+
 }
@@ -0,0 +1,156 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+
+
+/**
+ * A list of predicted edges stored in primitive arrays (gene ids of the
+ * gold standard and scores). The rank of an edge is its index in the list.
+ */
+public class Prediction {
+
+	/** The regulators (gene ids) */
+	private int[] regulators_ = null;
+	/** The targets (gene ids) */
+	private int[] targets_ = null;
+	/** The scores */
+	private double[] scores_ = null;
+	/** The number of edges */
+	private int size_ = 0;
+	/** Set true when the edges have been sorted by decreasing score (see sortByScore()) */
+	private boolean rankedByScore_ = false;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public Prediction() {
+		this(1024);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor with initial capacity */
+	public Prediction(int capacity) {
+
+		capacity = Math.max(capacity, 16);
+		regulators_ = new int[capacity];
+		targets_ = new int[capacity];
+		scores_ = new double[capacity];
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add an edge at the end of the list */
+	public void add(int TF, int target, double score) {
+
+		if (size_ == regulators_.length)
+			ensureCapacity(2*size_);
+
+		regulators_[size_] = TF;
+		targets_[size_] = target;
+		scores_[size_] = score;
+		size_++;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Append all edges of the given prediction at the end of the list */
+	public void append(Prediction prediction) {
+
+		ensureCapacity(size_ + prediction.size_);
+		System.arraycopy(prediction.regulators_, 0, regulators_, size_, prediction.size_);
+		System.arraycopy(prediction.targets_, 0, targets_, size_, prediction.size_);
+		System.arraycopy(prediction.scores_, 0, scores_, size_, prediction.size_);
+		size_ += prediction.size_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Make sure that the arrays can hold at least the given number of edges */
+	public void ensureCapacity(int capacity) {
+
+		if (capacity <= regulators_.length)
+			return;
+
+		regulators_ = Arrays.copyOf(regulators_, capacity);
+		targets_ = Arrays.copyOf(targets_, capacity);
+		scores_ = Arrays.copyOf(scores_, capacity);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Sort the edges by decreasing score (NaN last) with a primitive parallel merge
+	 * sort on (score, index). Edges with equal scores keep their order in the list.
+	 */
+	public void sortByScore(int numThreads) {
+
+		long[] keys = new long[size_];
+		int[] index = new int[size_];
+		for (int k=0; k<size_; k++) {
+			keys[k] = ScoreSort.toKey(scores_[k]);
+			index[k] = k;
+		}
+		ScoreSort.sort(keys, index, size_, numThreads);
+
+		// Permute the edges, the scores are decoded from the sorted keys
+		int[] regulators = new int[size_];
+		int[] targets = new int[size_];
+		for (int k=0; k<size_; k++) {
+			regulators[k] = regulators_[index[k]];
+			targets[k] = targets_[index[k]];
+			scores_[k] = ScoreSort.toScore(keys[k]);
+		}
+		regulators_ = regulators;
+		targets_ = targets;
+		rankedByScore_ = true;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int size() { return size_; }
+	public int getRegulator(int k) { return regulators_[k]; }
+	public int getTarget(int k) { return targets_[k]; }
+	public double getScore(int k) { return scores_[k]; }
+	/** True if the edges were sorted by sortByScore(), edges with equal scores are then considered tied */
+	public boolean isRankedByScore() { return rankedByScore_; }
+
+	/** The arrays may be longer than size() */
+	public int[] getRegulators() { return regulators_; }
+	public int[] getTargets() { return targets_; }
+	public double[] getScores() { return scores_; }
+}
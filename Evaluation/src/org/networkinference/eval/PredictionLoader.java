@@ -0,0 +1,429 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Load a prediction file in parallel. The file is split at newline boundaries
+ * into chunks, the chunks are parsed and filtered on a fork-join pool, and the
+ * results are concatenated in file order (the rank of an edge is its line
+ * position). Each chunk counts its lines, so that parse errors are reported
+ * with the line number in the whole file. The chunks of a gzip-compressed file
+ * are the blocks of text returned by GzipReader, each block is parsed as soon
+ * as it is decompressed. The chunks of a binary prediction are its column
+ * blocks (see BinaryPrediction), which are read from the mapped file.
+ *
+ * In top-K mode (setTopK()), each chunk keeps only its K best edges in a
+ * TopKHeap, which is merged into the shared heap of the file as soon as the
+ * chunk is parsed. The K best edges of the file are returned ranked by score.
+ * Only the chunks being parsed hold a heap, and at most a few gzip blocks wait
+ * to be parsed, so the memory is bounded by K (times the number of threads)
+ * and not by the length of the file.
+ */
+public class PredictionLoader {
+
+	/** The minimum size of a chunk in bytes (smaller files are parsed by a single task) */
+	public static final long MIN_CHUNK_SIZE = 1L << 22;
+	/** The number of chunks per thread (more chunks than threads balance the load) */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** The number of decompressed gzip blocks per thread that may wait to be parsed */
+	private static final int PENDING_BLOCKS_PER_THREAD = 2;
+
+	/** The prediction file */
+	private String filename_ = null;
+	/** The gold standard, only edges between its regulators and genes are retained */
+	private GoldStandard gold_ = null;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** The number of edges to keep in top-K mode (0 to keep all edges) */
+	private int topK_ = 0;
+	/** The K best edges of the chunks parsed so far in top-K mode */
+	private TopKHeap topKHeap_ = null;
+
+	/** The number of lines of the file */
+	private int numLines_ = 0;
+	/** The number of edges between regulators and genes of the gold standard (before the top-K selection) */
+	private long numRetained_ = 0;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public PredictionLoader(String filename, GoldStandard gold, int numThreads) {
+
+		filename_ = filename;
+		gold_ = gold;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/**
+	 * Load the prediction file, filtered to include only edges that
+	 * connect regulators and genes that are part of the gold standard
+	 */
+	public Prediction load() {
+
+		System.out.println("Reading file: " + filename_);
+		topKHeap_ = (topK_ > 0) ? new TopKHeap(topK_) : null;
+		if (BinaryPrediction.isBinary(filename_))
+			return finish(readBinary());
+		if (GzipReader.isGzip(filename_))
+			return finish(parseGzip());
+		long[] boundaries = findChunkBoundaries(filename_, numThreads_*CHUNKS_PER_THREAD);
+
+		// Parse the chunks
+		ArrayList<ChunkTask> tasks = new ArrayList<ChunkTask>();
+		for (int i=0; i<boundaries.length-1; i++)
+			tasks.add(new ChunkTask(i, boundaries[i], boundaries[i+1]));
+
+		if (tasks.size() == 1) {
+			tasks.get(0).invoke();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads_);
+			try {
+				for (ChunkTask task : tasks)
+					pool.execute(task);
+				for (ChunkTask task : tasks)
+					task.join();
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return finish(tasks);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/**
+	 * Parse the blocks of a gzip file while the next blocks are decompressed.
+	 * No more blocks are taken from the reader while PENDING_BLOCKS_PER_THREAD
+	 * blocks per thread wait to be parsed, so the decompressed text held in
+	 * memory does not grow with the length of the file.
+	 */
+	private ArrayList<ChunkTask> parseGzip() {
+
+		ArrayList<ChunkTask> tasks = new ArrayList<ChunkTask>();
+		GzipReader gzip = new GzipReader(filename_, numThreads_);
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		int maxPending = PENDING_BLOCKS_PER_THREAD*numThreads_;
+		try {
+			ByteBuffer block = null;
+			int numJoined = 0;
+			while ((block = gzip.nextBlock()) != null) {
+				ChunkTask task = new ChunkTask(tasks.size(), block);
+				tasks.add(task);
+				pool.execute(task);
+				// Wait for the oldest blocks to be parsed
+				while (tasks.size() - numJoined >= maxPending)
+					tasks.get(numJoined++).join();
+			}
+			for (int i=numJoined; i<tasks.size(); i++)
+				tasks.get(i).join();
+		} finally {
+			gzip.close();
+			pool.shutdown();
+		}
+		return tasks;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read the blocks of a binary prediction in parallel */
+	private ArrayList<ChunkTask> readBinary() {
+
+		BinaryPrediction binary = new BinaryPrediction(filename_);
+		int[] geneIds = binary.getGeneIds(gold_.getSymbols());
+		ArrayList<ChunkTask> tasks = new ArrayList<ChunkTask>();
+		for (int b=0; b<binary.getNumBlocks(); b++)
+			tasks.add(new ChunkTask(b, binary, geneIds));
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			for (ChunkTask task : tasks)
+				pool.execute(task);
+			for (ChunkTask task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+			binary.close();
+		}
+		return tasks;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Concatenate the edges of the parsed chunks (or merge their heaps in top-K mode) */
+	private Prediction finish(ArrayList<ChunkTask> tasks) {
+
+		if (topK_ > 0)
+			return mergeTopK(tasks);
+
+		// Concatenate in file order, the first error in the file is reported
+		int size = 0;
+		for (ChunkTask task : tasks)
+			size += task.prediction_.size();
+		Prediction prediction = new Prediction(size);
+
+		numLines_ = 0;
+		for (ChunkTask task : tasks) {
+			if (task.errorLine_ > 0)
+				throw new RuntimeException("Parse error at line " + (numLines_ + task.errorLine_) + ": expected three columns");
+			if (task.exception_ != null)
+				throw task.exception_;
+
+			prediction.append(task.prediction_);
+			numLines_ += task.numLines_;
+		}
+		numRetained_ = size;
+
+		if (numLines_ == 0)
+			throw new RuntimeException("The file is empty!");
+
+		return prediction;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Check the chunks and return the K best edges of their merged heaps ranked by score */
+	private Prediction mergeTopK(ArrayList<ChunkTask> tasks) {
+
+		numLines_ = 0;
+		numRetained_ = 0;
+		for (ChunkTask task : tasks) {
+			if (task.errorLine_ > 0)
+				throw new RuntimeException("Parse error at line " + (numLines_ + task.errorLine_) + ": expected three columns");
+			if (task.exception_ != null)
+				throw task.exception_;
+
+			numLines_ += task.numLines_;
+			numRetained_ += task.numRetained_;
+		}
+
+		if (numLines_ == 0)
+			throw new RuntimeException("The file is empty!");
+		if (numRetained_ > (long) gold_.getNumRegulators()*(gold_.getNumGenes() - 1))
+			throw new RuntimeException("The prediction has more edges than there are possible edges (duplicate edges?)");
+
+		Prediction prediction = topKHeap_.toPrediction(numThreads_);
+		topKHeap_ = null;
+		return prediction;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Split the file into at most maxChunks chunks, each boundary is the first byte of a line (see also ExternalSort) */
+	static long[] findChunkBoundaries(String filename, int maxChunks) {
+
+		long[] boundaries = null;
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			long size = file.length();
+			int numChunks = (int) Math.max(1, Math.min(maxChunks, size/MIN_CHUNK_SIZE));
+
+			boundaries = new long[numChunks + 1];
+			boundaries[numChunks] = size;
+			for (int i=1; i<numChunks; i++) {
+				// Move the boundary to the first byte after the next newline
+				long position = Math.max(boundaries[i-1], i*(size/numChunks));
+				file.seek(position);
+				while (position < size && file.read() != '\n')
+					position++;
+				boundaries[i] = Math.min(position + 1, size);
+			}
+			file.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read " + filename + ": " + e.getMessage(), e);
+		}
+
+		return boundaries;
+	}
+
+
+	// ============================================================================
+	// CHUNK TASK
+
+	/** Parse and filter the lines of one chunk */
+	@SuppressWarnings("serial")
+	private class ChunkTask extends RecursiveTask<Prediction> {
+
+		/** The index of the chunk in the file */
+		private int index_ = -1;
+		/** The first byte of the chunk */
+		private long start_ = -1;
+		/** The end of the chunk (exclusive) */
+		private long end_ = -1;
+		/** The text of the chunk for a gzip file (null to parse start_..end_-1 of the file) */
+		private ByteBuffer text_ = null;
+		/** The binary prediction, the chunk is its block index_ (null for a text file) */
+		private BinaryPrediction binary_ = null;
+		/** The gold standard id of each gene of the binary prediction */
+		private int[] geneIds_ = null;
+
+		/** The retained edges */
+		private Prediction prediction_ = null;
+		/** The K best retained edges of the chunk in top-K mode (merged into the shared heap when the chunk is parsed) */
+		private TopKHeap heap_ = null;
+		/** The number of retained edges */
+		private int numRetained_ = 0;
+		/** The number of lines of the chunk */
+		private int numLines_ = 0;
+		/** The line of the chunk with a missing column (1 for the first line of the chunk), 0 if none */
+		private int errorLine_ = 0;
+		/** Other exception while parsing (e.g., malformed number) */
+		private RuntimeException exception_ = null;
+
+		/** Constructor */
+		public ChunkTask(int index, long start, long end) {
+			index_ = index;
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Constructor, parses a block of text of a gzip file */
+		public ChunkTask(int index, ByteBuffer text) {
+			index_ = index;
+			text_ = text;
+		}
+
+		/** Constructor, reads the block of a binary prediction */
+		public ChunkTask(int index, BinaryPrediction binary, int[] geneIds) {
+			index_ = index;
+			binary_ = binary;
+			geneIds_ = geneIds;
+		}
+
+		/** Parse the chunk, errors are stored and reported when the chunks are concatenated */
+		protected Prediction compute() {
+
+			prediction_ = new Prediction();
+			if (topK_ > 0)
+				heap_ = new TopKHeap(topK_);
+			if (binary_ != null) {
+				try {
+					readBlock();
+				} catch (RuntimeException e) {
+					exception_ = e;
+				}
+			} else if (text_ != null || end_ > start_) {
+				parse();
+			}
+
+			// Merge the K best edges of the chunk into the shared heap and release them
+			if (heap_ != null) {
+				if (exception_ == null && errorLine_ == 0) {
+					synchronized (topKHeap_) {
+						topKHeap_.addAll(heap_);
+					}
+				}
+				heap_ = null;
+			}
+			return prediction_;
+		}
+
+		/** Parse and filter the lines of the text chunk */
+		private void parse() {
+
+			MappedFileParser parser = (text_ != null) ? new MappedFileParser(text_) : new MappedFileParser(filename_, start_, end_);
+			SymbolTable symbols = gold_.getSymbols();
+			try {
+				while (parser.nextLine()) {
+					// Check that the line has three columns
+					if (parser.getNumColumns() != 3) {
+						errorLine_ = parser.getLineCounter();
+						break;
+					}
+
+					int TF = parser.find(0, symbols);
+					int target = parser.find(1, symbols);
+
+					// Check that the TF is a regulator and the target is a gene of the gold standard
+					// In top-K mode, the position (chunk, line) orders the edges of the whole file
+					if (TF >= 0 && gold_.isRegulator(TF) && target >= 0) {
+						numRetained_++;
+						if (heap_ == null)
+							prediction_.add(TF, target, parser.parseDouble(2));
+						else
+							heap_.add(parser.parseDouble(2), TF, target, ((long) index_ << 32) | parser.getLineCounter());
+					}
+				}
+			} catch (RuntimeException e) {
+				exception_ = e;
+			}
+			numLines_ = parser.getLineCounter();
+			parser.close();
+			text_ = null;
+		}
+
+		/** Filter the edges of the binary block, each edge counts as a line */
+		private void readBlock() {
+
+			BinaryPrediction.Block block = binary_.getBlock(index_);
+			if (heap_ == null)
+				prediction_.ensureCapacity(block.size());
+			for (int k=0; k<block.size(); k++) {
+				int TF = geneIds_[block.getRegulator(k)];
+				int target = geneIds_[block.getTarget(k)];
+				if (TF >= 0 && gold_.isRegulator(TF) && target >= 0) {
+					numRetained_++;
+					if (heap_ == null)
+						prediction_.add(TF, target, block.getScore(k));
+					else
+						heap_.add(block.getScore(k), TF, target, ((long) index_ << 32) | (k + 1));
+				}
+			}
+			numLines_ = block.size();
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** The number of lines of the file (after load()) */
+	public int getNumLines() { return numLines_; }
+	/** The number of edges between regulators and genes of the gold standard (after load()) */
+	public long getNumRetained() { return numRetained_; }
+
+	/** Keep only the K best edges by score (0 to keep all edges in file order) */
+	public void setTopK(int K) { topK_ = K; }
+}
@@ -0,0 +1,271 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Wall time of the phases of a run (loading the gold standard and the prediction,
+ * curves, AUCs, analysis of errors, output...), the number of prediction lines
+ * parsed and retained, and the peak heap. The metrics are written as JSON, and
+ * every phase is also committed as a JFR event (org.networkinference.Phase), so
+ * that a flight recording shows the phases without attaching a profiler. The
+ * events cost nothing if no recording is running.
+ */
+public class RunMetrics {
+
+	/** The start of the run (System.nanoTime()) */
+	private long startTime_ = System.nanoTime();
+	/** The JFR event of the run, from the construction to finish() */
+	private RunEvent runEvent_ = new RunEvent();
+
+	/** The names of the finished phases */
+	private ArrayList<String> phaseNames_ = new ArrayList<String>();
+	/** The wall time of the finished phases in nanoseconds */
+	private ArrayList<Long> phaseTimes_ = new ArrayList<Long>();
+	/** The number of items processed by the finished phases (-1 if not applicable) */
+	private ArrayList<Long> phaseItems_ = new ArrayList<Long>();
+
+	/** The current phase (null if none) */
+	private String currentPhase_ = null;
+	/** The start of the current phase */
+	private long phaseStart_ = 0;
+	/** The JFR event of the current phase */
+	private PhaseEvent phaseEvent_ = null;
+
+	/** The number of lines of the prediction file (-1 if not loaded) */
+	private long numPredictionLines_ = -1;
+	/** The number of predicted edges retained (regulators and genes of the gold standard) */
+	private long numRetainedEdges_ = -1;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the run starts now */
+	public RunMetrics() {
+
+		runEvent_.begin();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Start the given phase (phases are sequential, the previous one must be finished) */
+	public void beginPhase(String name) {
+
+		if (currentPhase_ != null)
+			throw new IllegalStateException("Phase '" + name + "' started before the end of phase '" + currentPhase_ + "'");
+
+		currentPhase_ = name;
+		phaseEvent_ = new PhaseEvent();
+		phaseEvent_.phase = name;
+		phaseEvent_.begin();
+		phaseStart_ = System.nanoTime();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Finish the current phase, numItems is the number of edges, lines, samples... processed (-1 if not applicable) */
+	public void endPhase(long numItems) {
+
+		long time = System.nanoTime() - phaseStart_;
+		if (currentPhase_ == null)
+			throw new IllegalStateException("No phase to end");
+
+		phaseEvent_.end();
+		if (phaseEvent_.shouldCommit()) {
+			phaseEvent_.items = numItems;
+			phaseEvent_.commit();
+		}
+		phaseNames_.add(currentPhase_);
+		phaseTimes_.add(time);
+		phaseItems_.add(numItems);
+		currentPhase_ = null;
+		phaseEvent_ = null;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Set the number of lines of the prediction file and the number of retained edges */
+	public void setPredictionLines(long numLines, long numRetained) {
+
+		numPredictionLines_ = numLines;
+		numRetainedEdges_ = numRetained;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Commit the JFR event with the totals of the run */
+	public void finish() {
+
+		runEvent_.end();
+		if (runEvent_.shouldCommit()) {
+			runEvent_.predictionLines = numPredictionLines_;
+			runEvent_.retainedEdges = numRetainedEdges_;
+			runEvent_.peakHeap = getPeakHeap();
+			runEvent_.commit();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the metrics as JSON */
+	public void write(String filename, String predictionFile, String goldStandardFile) {
+
+		double totalSeconds = (System.nanoTime() - startTime_) / 1e9;
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"prediction\": ").append(quote(predictionFile)).append(",\n");
+		json.append("  \"gold_standard\": ").append(quote(goldStandardFile)).append(",\n");
+		json.append("  \"total_seconds\": ").append(format(totalSeconds)).append(",\n");
+		json.append("  \"peak_heap_bytes\": ").append(getPeakHeap()).append(",\n");
+		if (numPredictionLines_ >= 0) {
+			json.append("  \"prediction_lines\": {\"parsed\": ").append(numPredictionLines_)
+				.append(", \"retained\": ").append(numRetainedEdges_)
+				.append(", \"dropped\": ").append(numPredictionLines_ - numRetainedEdges_).append("},\n");
+		}
+
+		json.append("  \"phases\": [");
+		for (int i=0; i<phaseNames_.size(); i++) {
+			double seconds = phaseTimes_.get(i) / 1e9;
+			long numItems = phaseItems_.get(i);
+			json.append((i == 0) ? "\n" : ",\n");
+			json.append("    {\"name\": ").append(quote(phaseNames_.get(i)));
+			json.append(", \"seconds\": ").append(format(seconds));
+			if (numItems >= 0) {
+				json.append(", \"items\": ").append(numItems);
+				json.append(", \"items_per_second\": ").append(format(numItems / seconds));
+			}
+			json.append("}");
+		}
+		json.append("\n  ]\n}");
+
+		FileExport writer = new FileExport(filename);
+		writer.println(json.toString());
+		writer.close();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The peak heap usage in bytes (sum of the peaks of the heap memory pools) */
+	public static long getPeakHeap() {
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Format a double for JSON (non-finite values are written as null) */
+	private static String format(double x) {
+
+		if (Double.isNaN(x) || Double.isInfinite(x))
+			return "null";
+		return String.format(Locale.US, "%.6g", x);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Quote and escape a string for JSON (null is written as null) */
+	static String quote(String str) {
+
+		if (str == null)
+			return "null";
+
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i=0; i<str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if (c < 0x20)
+				quoted.append(String.format("\\u%04x", (int) c));
+			else
+				quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+
+
+	// ============================================================================
+	// JFR EVENTS
+
+	/** A phase of the evaluation */
+	@Name("org.networkinference.Phase")
+	@Label("Evaluation Phase")
+	@Category("Network Inference")
+	static class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Items")
+		long items;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The totals of a run */
+	@Name("org.networkinference.Run")
+	@Label("Evaluation Run")
+	@Category("Network Inference")
+	static class RunEvent extends Event {
+
+		@Label("Prediction Lines")
+		long predictionLines;
+
+		@Label("Retained Edges")
+		long retainedEdges;
+
+		@Label("Peak Heap")
+		@DataAmount(DataAmount.BYTES)
+		long peakHeap;
+	}
+}
@@ -0,0 +1,200 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Stable parallel merge sort of primitive (key, index) pairs, used to rank
+ * predicted edges by score without creating Edge objects. The scores are
+ * encoded as long keys whose natural order is the decreasing order of the
+ * scores (NaN last), so that the comparisons are on primitive longs. The two
+ * halves of a range are sorted in parallel on a fork-join pool and merged.
+ */
+public class ScoreSort {
+
+	/** Ranges smaller than this are sorted by a single task */
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+	/** Ranges smaller than this are sorted by insertion sort */
+	private static final int INSERTION_THRESHOLD = 32;
+
+	/** The keys */
+	private long[] keys_ = null;
+	/** The indexes, permuted together with the keys */
+	private int[] index_ = null;
+	/** Work space for the keys */
+	private long[] tempKeys_ = null;
+	/** Work space for the indexes */
+	private int[] tempIndex_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Sort the first n keys in increasing order, index is permuted with the keys (ties keep their order) */
+	public static void sort(long[] keys, int[] index, int n, int numThreads) {
+
+		ScoreSort sorter = new ScoreSort();
+		sorter.keys_ = keys;
+		sorter.index_ = index;
+		sorter.tempKeys_ = new long[n];
+		sorter.tempIndex_ = new int[n];
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try {
+			pool.invoke(sorter.new SortTask(0, n));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the key of the score, keys increase when scores decrease (NaN has the largest key) */
+	public static long toKey(double score) {
+
+		if (Double.isNaN(score))
+			return Long.MAX_VALUE;
+		long bits = Double.doubleToLongBits(score + 0.0); // -0.0 becomes 0.0
+		// Flip the bits such that the signed order of the keys is the order of the scores, then reverse
+		long ordered = (bits < 0) ? bits ^ Long.MAX_VALUE : bits;
+		return ~ordered;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the score of the key (inverse of toKey()) */
+	public static double toScore(long key) {
+
+		if (key == Long.MAX_VALUE)
+			return Double.NaN;
+		long ordered = ~key;
+		return Double.longBitsToDouble((ordered < 0) ? ordered ^ Long.MAX_VALUE : ordered);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Sort the range lo..hi-1 sequentially */
+	private void sortSequential(int lo, int hi) {
+
+		if (hi - lo <= INSERTION_THRESHOLD) {
+			insertionSort(lo, hi);
+			return;
+		}
+		int middle = (lo + hi) >>> 1;
+		sortSequential(lo, middle);
+		sortSequential(middle, hi);
+		merge(lo, middle, hi);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Insertion sort of the range lo..hi-1 (stable) */
+	private void insertionSort(int lo, int hi) {
+
+		for (int i=lo+1; i<hi; i++) {
+			long key = keys_[i];
+			int index = index_[i];
+			int j = i - 1;
+			while (j >= lo && keys_[j] > key) {
+				keys_[j+1] = keys_[j];
+				index_[j+1] = index_[j];
+				j--;
+			}
+			keys_[j+1] = key;
+			index_[j+1] = index;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Merge the sorted ranges lo..middle-1 and middle..hi-1 (on ties the left range comes first) */
+	private void merge(int lo, int middle, int hi) {
+
+		// Already in order
+		if (keys_[middle-1] <= keys_[middle])
+			return;
+
+		System.arraycopy(keys_, lo, tempKeys_, lo, middle - lo);
+		System.arraycopy(index_, lo, tempIndex_, lo, middle - lo);
+
+		int left = lo;
+		int right = middle;
+		int next = lo;
+		while (left < middle && right < hi) {
+			if (keys_[right] < tempKeys_[left]) {
+				keys_[next] = keys_[right];
+				index_[next++] = index_[right++];
+			} else {
+				keys_[next] = tempKeys_[left];
+				index_[next++] = tempIndex_[left++];
+			}
+		}
+		// The remaining elements of the right range are already in place
+		System.arraycopy(tempKeys_, left, keys_, next, middle - left);
+		System.arraycopy(tempIndex_, left, index_, next, middle - left);
+	}
+
+
+	// ============================================================================
+	// SORT TASK
+
+	/** Sort the range start..end-1, the halves are sorted in parallel */
+	@SuppressWarnings("serial")
+	private class SortTask extends RecursiveAction {
+
+		/** The first element */
+		private int start_ = -1;
+		/** The last element (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public SortTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Sort the range */
+		protected void compute() {
+
+			if (end_ - start_ <= SEQUENTIAL_THRESHOLD) {
+				sortSequential(start_, end_);
+			} else {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new SortTask(start_, middle), new SortTask(middle, end_));
+				merge(start_, middle, end_);
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Maps names (byte strings, UTF-8) to dense integer ids 0, 1, 2... in the order
+ * in which they are added. Lookups are done directly on byte slices of a buffer,
+ * so that no String has to be created for each token of a file. The names are
+ * stored in a single byte pool and the hash table uses open addressing.
+ *
+ * Lookups (find()) are safe from several threads as long as no names are added.
+ */
+public class SymbolTable {
+
+	/** The bytes of all names, name i is pool_[offsets_[i]..offsets_[i+1]-1] */
+	private byte[] pool_ = null;
+	/** The start of each name in the pool (one more entry than names) */
+	private int[] offsets_ = null;
+	/** The hash of each name */
+	private int[] hashes_ = null;
+	/** The number of names */
+	private int size_ = 0;
+
+	/** The hash table, entries are id+1 (0 for empty slots), the length is a power of two */
+	private int[] table_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public SymbolTable() {
+
+		pool_ = new byte[4096];
+		offsets_ = new int[257];
+		hashes_ = new int[256];
+		table_ = new int[512];
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor used to restore a snapshot, the arrays are those returned by the getters (see GoldStandardSnapshot) */
+	SymbolTable(byte[] pool, int[] offsets, int[] hashes, int size, int[] table) {
+
+		pool_ = pool;
+		offsets_ = offsets;
+		hashes_ = hashes;
+		size_ = size;
+		table_ = table;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the name given by the bytes buffer[start..end-1], -1 if it is not in the table */
+	public int find(ByteBuffer buffer, int start, int end) {
+
+		int hash = hash(buffer, start, end);
+		int mask = table_.length - 1;
+		for (int slot=hash & mask; ; slot=(slot+1) & mask) {
+			int id = table_[slot] - 1;
+			if (id < 0)
+				return -1;
+			if (hashes_[id] == hash && equals(id, buffer, start, end))
+				return id;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the name given by the bytes buffer[start..end-1], the name is added if needed */
+	public int add(ByteBuffer buffer, int start, int end) {
+
+		int hash = hash(buffer, start, end);
+		int mask = table_.length - 1;
+		int slot = hash & mask;
+		for (; table_[slot] != 0; slot=(slot+1) & mask) {
+			int id = table_[slot] - 1;
+			if (hashes_[id] == hash && equals(id, buffer, start, end))
+				return id;
+		}
+
+		// Append the name
+		int length = end - start;
+		if (size_ == hashes_.length) {
+			hashes_ = Arrays.copyOf(hashes_, 2*size_);
+			offsets_ = Arrays.copyOf(offsets_, 2*size_ + 1);
+		}
+		int offset = offsets_[size_];
+		if (offset + length > pool_.length)
+			pool_ = Arrays.copyOf(pool_, Math.max(2*pool_.length, offset + length));
+		for (int i=0; i<length; i++)
+			pool_[offset + i] = buffer.get(start + i);
+
+		int id = size_++;
+		offsets_[size_] = offset + length;
+		hashes_[id] = hash;
+		table_[slot] = id + 1;
+
+		if (2*size_ > table_.length)
+			rehash();
+
+		return id;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the given name, -1 if it is not in the table */
+	public int find(String name) {
+
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return find(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the id of the given name, the name is added if needed */
+	public int add(String name) {
+
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return add(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the name with the given id */
+	public String getName(int id) {
+		return new String(pool_, offsets_[id], offsets_[id+1] - offsets_[id], StandardCharsets.UTF_8);
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** FNV-1a hash of the bytes, with a final mix so that the low bits can be used as index */
+	private static int hash(ByteBuffer buffer, int start, int end) {
+
+		int h = 0x811c9dc5;
+		for (int i=start; i<end; i++)
+			h = (h ^ (buffer.get(i) & 0xff)) * 0x01000193;
+
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the name with the given id equals the bytes buffer[start..end-1] */
+	private boolean equals(int id, ByteBuffer buffer, int start, int end) {
+
+		int offset = offsets_[id];
+		if (offsets_[id+1] - offset != end - start)
+			return false;
+		for (int i=start; i<end; i++)
+			if (pool_[offset++] != buffer.get(i))
+				return false;
+
+		return true;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Double the size of the hash table */
+	private void rehash() {
+
+		table_ = new int[2*table_.length];
+		int mask = table_.length - 1;
+		for (int id=0; id<size_; id++) {
+			int slot = hashes_[id] & mask;
+			while (table_[slot] != 0)
+				slot = (slot+1) & mask;
+			table_[slot] = id + 1;
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int size() { return size_; }
+
+	/** The bytes of the names, name i is getPool()[getOffsets()[i]..getOffsets()[i+1]-1] */
+	public byte[] getPool() { return pool_; }
+	public int[] getOffsets() { return offsets_; }
+	/** The hash of each name (the array may be longer than size()) */
+	public int[] getHashes() { return hashes_; }
+	/** The hash table, entries are id+1 (0 for empty slots) */
+	public int[] getTable() { return table_; }
+}
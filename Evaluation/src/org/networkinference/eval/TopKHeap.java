@@ -0,0 +1,222 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.eval;
+
+import java.util.Arrays;
+
+
+/**
+ * The K best edges of an unsorted stream of predicted edges, kept in a binary
+ * heap on primitive arrays. An edge is better than another if it has a higher
+ * score (NaN is the lowest score), and among equal scores if it comes first in
+ * the file (position). The root of the heap is the worst edge that is kept, so
+ * each edge of the stream is compared with the root only, and the memory is
+ * bounded by K whatever the length of the stream.
+ */
+public class TopKHeap {
+
+	/** The maximum number of edges (K) */
+	private int capacity_ = 0;
+	/** The number of edges in the heap */
+	private int size_ = 0;
+
+	/** The score keys of the edges (see ScoreSort.toKey(), a smaller key is a higher score) */
+	private long[] keys_ = null;
+	/** The positions of the edges in the stream (ties are broken by position) */
+	private long[] positions_ = null;
+	/** The regulators of the edges */
+	private int[] regulators_ = null;
+	/** The targets of the edges */
+	private int[] targets_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public TopKHeap(int capacity) {
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("K must be at least 1");
+
+		capacity_ = capacity;
+		// The arrays grow with the heap, so that a large K does not allocate memory for short streams
+		int initialSize = Math.min(capacity, 1024);
+		keys_ = new long[initialSize];
+		positions_ = new long[initialSize];
+		regulators_ = new int[initialSize];
+		targets_ = new int[initialSize];
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the edge if it is among the K best edges so far */
+	public void add(double score, int TF, int target, long position) {
+
+		addKey(ScoreSort.toKey(score), TF, target, position);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the edges of the other heap (e.g., the heap of another part of the stream) */
+	public void addAll(TopKHeap heap) {
+
+		for (int i=0; i<heap.size_; i++)
+			addKey(heap.keys_[i], heap.regulators_[i], heap.targets_[i], heap.positions_[i]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the edges of the heap as a prediction ranked by score (see Prediction.sortByScore()) */
+	public Prediction toPrediction(int numThreads) {
+
+		Prediction prediction = new Prediction(size_);
+		for (int i=0; i<size_; i++)
+			prediction.add(regulators_[i], targets_[i], ScoreSort.toScore(keys_[i]));
+		prediction.sortByScore(numThreads);
+		return prediction;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Add the edge with the given key if it is among the K best edges so far */
+	private void addKey(long key, int TF, int target, long position) {
+
+		if (size_ < capacity_) {
+			if (size_ == keys_.length)
+				grow();
+			set(size_, key, TF, target, position);
+			siftUp(size_++);
+
+		} else if (isWorse(keys_[0], positions_[0], key, position)) {
+			// Replace the worst edge
+			set(0, key, TF, target, position);
+			siftDown(0);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return true if the first edge is worse than the second edge */
+	private static boolean isWorse(long key1, long position1, long key2, long position2) {
+
+		return key1 > key2 || (key1 == key2 && position1 > position2);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Move the edge at i up until its parent is worse */
+	private void siftUp(int i) {
+
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isWorse(keys_[i], positions_[i], keys_[parent], positions_[parent]))
+				return;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Move the edge at i down until it is worse than its children */
+	private void siftDown(int i) {
+
+		while (true) {
+			int worst = i;
+			int left = 2*i + 1;
+			int right = left + 1;
+			if (left < size_ && isWorse(keys_[left], positions_[left], keys_[worst], positions_[worst]))
+				worst = left;
+			if (right < size_ && isWorse(keys_[right], positions_[right], keys_[worst], positions_[worst]))
+				worst = right;
+			if (worst == i)
+				return;
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Set the edge at i */
+	private void set(int i, long key, int TF, int target, long position) {
+
+		keys_[i] = key;
+		positions_[i] = position;
+		regulators_[i] = TF;
+		targets_[i] = target;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Swap the edges at i and j */
+	private void swap(int i, int j) {
+
+		long key = keys_[i];
+		keys_[i] = keys_[j];
+		keys_[j] = key;
+		long position = positions_[i];
+		positions_[i] = positions_[j];
+		positions_[j] = position;
+		int TF = regulators_[i];
+		regulators_[i] = regulators_[j];
+		regulators_[j] = TF;
+		int target = targets_[i];
+		targets_[i] = targets_[j];
+		targets_[j] = target;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Double the size of the arrays (at most the capacity) */
+	private void grow() {
+
+		int size = (int) Math.min(capacity_, 2L*keys_.length);
+		keys_ = Arrays.copyOf(keys_, size);
+		positions_ = Arrays.copyOf(positions_, size);
+		regulators_ = Arrays.copyOf(regulators_, size);
+		targets_ = Arrays.copyOf(targets_, size);
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int size() { return size_; }
+	public int getCapacity() { return capacity_; }
+}
@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+
+/**
+ * Infer a network with the context likelihood of relatedness (CLR, Faith et
+ * al., 2007): the mutual information of a TF and a gene is compared to the
+ * background distribution of the mutual information of the TF with all genes
+ * and of the gene with all TFs. The score of an edge is
+ * sqrt(z_tf^2 + z_gene^2), where z_tf = max(0, (mi - mean_tf) / sd_tf) is the
+ * z-score of the mutual information in the background of the TF (and z_gene
+ * likewise in the background of the gene).
+ *
+ * The mutual information is estimated with B-splines (see MutualInformation).
+ * The means and standard deviations of the backgrounds are kept in primitive
+ * arrays, one entry per TF and one per gene, and the scores replace the mutual
+ * information in the same array.
+ */
+public class ClrInference {
+
+	/** The mutual information estimator */
+	private MutualInformation mutualInformation_ = null;
+	/** The number of TFs */
+	private int numTfs_ = 0;
+	/** The number of genes */
+	private int numGenes_ = 0;
+
+	/** The mean mutual information of each TF with all genes */
+	private double[] tfMeans_ = null;
+	/** The standard deviation of the mutual information of each TF with all genes */
+	private double[] tfStdDevs_ = null;
+	/** The mean mutual information of each gene with all TFs */
+	private double[] geneMeans_ = null;
+	/** The standard deviation of the mutual information of each gene with all TFs */
+	private double[] geneStdDevs_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, tfs are the gene indexes of the TFs */
+	public ClrInference(ExpressionData data, int[] tfs, int numBins, int order, int numThreads) {
+
+		mutualInformation_ = new MutualInformation(data, tfs, numBins, order, numThreads);
+		numTfs_ = tfs.length;
+		numGenes_ = data.getNumGenes();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the mutual information and return the CLR scores, scores[t*numGenes + g] (NaN for the TF itself) */
+	public float[] run() {
+
+		float[] scores = mutualInformation_.run();
+		computeBackgrounds(scores);
+
+		for (int t=0; t<numTfs_; t++) {
+			for (int g=0; g<numGenes_; g++) {
+				int i = t*numGenes_ + g;
+				if (Float.isNaN(scores[i]))
+					continue;
+				double zTf = zScore(scores[i], tfMeans_[t], tfStdDevs_[t]);
+				double zGene = zScore(scores[i], geneMeans_[g], geneStdDevs_[g]);
+				scores[i] = (float) Math.sqrt(zTf*zTf + zGene*zGene);
+			}
+		}
+		return scores;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Compute the mean and standard deviation of the mutual information of each TF (row) and each gene (column) */
+	private void computeBackgrounds(float[] mi) {
+
+		tfMeans_ = new double[numTfs_];
+		tfStdDevs_ = new double[numTfs_];
+		geneMeans_ = new double[numGenes_];
+		geneStdDevs_ = new double[numGenes_];
+		// The sums of the columns are accumulated row by row, in the order of the array
+		double[] geneSums = new double[numGenes_];
+		double[] geneSumsOfSquares = new double[numGenes_];
+		int[] geneCounts = new int[numGenes_];
+
+		for (int t=0; t<numTfs_; t++) {
+			double sum = 0;
+			double sumOfSquares = 0;
+			int count = 0;
+			for (int g=0; g<numGenes_; g++) {
+				double value = mi[t*numGenes_ + g];
+				if (Double.isNaN(value))
+					continue;
+				sum += value;
+				sumOfSquares += value*value;
+				count++;
+				geneSums[g] += value;
+				geneSumsOfSquares[g] += value*value;
+				geneCounts[g]++;
+			}
+			tfMeans_[t] = mean(sum, count);
+			tfStdDevs_[t] = stdDev(sum, sumOfSquares, count);
+		}
+		for (int g=0; g<numGenes_; g++) {
+			geneMeans_[g] = mean(geneSums[g], geneCounts[g]);
+			geneStdDevs_[g] = stdDev(geneSums[g], geneSumsOfSquares[g], geneCounts[g]);
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The mean of count values with the given sum */
+	private static double mean(double sum, int count) {
+
+		return (count > 0) ? sum/count : 0;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The (population) standard deviation of count values with the given sum and sum of squares */
+	private static double stdDev(double sum, double sumOfSquares, int count) {
+
+		if (count == 0)
+			return 0;
+		double mean = sum/count;
+		return Math.sqrt(Math.max(0, sumOfSquares/count - mean*mean));
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The z-score of the value in the background, negative z-scores are set to 0 (as a constant background) */
+	private static double zScore(double value, double mean, double stdDev) {
+
+		return (stdDev > 0) ? Math.max(0, (value - mean)/stdDev) : 0;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public double[] getTfMeans() { return tfMeans_; }
+	public double[] getTfStdDevs() { return tfStdDevs_; }
+	public double[] getGeneMeans() { return geneMeans_; }
+	public double[] getGeneStdDevs() { return geneStdDevs_; }
+}
@@ -0,0 +1,160 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.networkinference.eval.AtomicFile;
+import org.networkinference.eval.Evaluation;
+
+
+/**
+ * Binary cache of expression matrices. The first time an expression file is
+ * loaded, the parsed matrix is written next to it (<file>.f32): a header of
+ * HEADER_SIZE bytes followed by the row-major matrix as little-endian floats.
+ * Later runs map the cache into memory and use the mapped floats directly as
+ * the matrix of ExpressionData, so nothing is parsed or copied onto the heap.
+ *
+ * The cache is used only if the size and modification time of the expression
+ * file are those recorded in the header, and if it has one row per gene.
+ * Otherwise the text file is parsed and the cache is written again.
+ */
+public class ExpressionCache {
+
+	/** The first bytes of a cache file */
+	private static final int MAGIC = 0x45463332; // "EF32"
+	/** The version of the cache format */
+	private static final int VERSION = 1;
+	/** The size of the header, the floats start at this (aligned) offset */
+	private static final int HEADER_SIZE = 32;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Load the expression matrix from its cache, or parse the file and write the cache */
+	public static ExpressionData load(String[] genes, String expressionFile) {
+
+		File source = new File(expressionFile);
+		if (!source.isFile())
+			throw new RuntimeException("File not found: " + expressionFile);
+		File cache = getCacheFile(source);
+
+		if (cache.isFile()) {
+			ExpressionData data = read(cache, source, genes);
+			if (data != null) {
+				Evaluation.println("Reading expression cache: " + cache.getPath());
+				return data;
+			}
+		}
+
+		ExpressionData data = ExpressionData.parse(genes, expressionFile);
+		write(data, source, cache);
+		return data;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The cache of the given expression file, in the same directory */
+	public static File getCacheFile(File source) {
+
+		return new File(source.getAbsoluteFile().getParentFile(), source.getName() + ".f32");
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Map the matrix of the cache, return null if it is invalid or outdated */
+	private static ExpressionData read(File cache, File source, String[] genes) {
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(cache, "r");
+			try {
+				long length = file.length();
+				if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+					return null;
+				// The mapping stays valid after the file is closed
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+				if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+					return null;
+				if (buffer.getLong() != source.length() || buffer.getLong() != source.lastModified())
+					return null;
+				int numRows = buffer.getInt();
+				int numSamples = buffer.getInt();
+				if (numRows != genes.length || numSamples <= 0 || length != HEADER_SIZE + 4L*numRows*numSamples)
+					return null;
+
+				buffer.position(HEADER_SIZE);
+				return new ExpressionData(genes, buffer.slice(), numSamples);
+
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the cache of the expression matrix (a failure only prints a warning) */
+	private static void write(ExpressionData data, File source, File cache) {
+
+		try {
+			AtomicFile.write(cache, channel -> {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				header.putLong(source.length());
+				header.putLong(source.lastModified());
+				header.putInt(data.getNumGenes());
+				header.putInt(data.getNumSamples());
+				header.flip();
+
+				while (header.hasRemaining())
+					channel.write(header);
+				ByteBuffer matrix = data.getBytes();
+				while (matrix.hasRemaining())
+					channel.write(matrix);
+			});
+			Evaluation.println("Wrote expression cache: " + cache.getPath());
+
+		} catch (IOException e) {
+			System.err.println("Warning: the expression cache could not be written: " + e.getMessage());
+		}
+	}
+}
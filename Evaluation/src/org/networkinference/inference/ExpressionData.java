@@ -0,0 +1,242 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.networkinference.eval.FileParser;
+
+
+/**
+ * Gene expression data: a matrix with one row per gene (the expression profile
+ * of the gene over all samples) and the names of the genes. The expression file
+ * has one line per gene with whitespace-separated values, in the order of the
+ * gene list (one name per line). The rows are stored off-heap in a single
+ * buffer of little-endian floats, so that the profiles are contiguous in memory
+ * and the buffer can be written to and mapped from the binary cache as is (see
+ * ExpressionCache). The genes are indexed by name in a hash map.
+ */
+public class ExpressionData {
+
+	/** The names of the genes */
+	private String[] genes_ = null;
+	/** The index of each gene */
+	private HashMap<String, Integer> geneIndex_ = null;
+	/** The number of samples (columns) */
+	private int numSamples_ = 0;
+	/** The expression matrix, row-major little-endian floats (the profile of gene i is at i*numSamples_) */
+	private ByteBuffer bytes_ = null;
+	/** The float view of bytes_ */
+	private FloatBuffer matrix_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, the matrix has genes.length rows of numSamples values (it is copied off-heap) */
+	public ExpressionData(String[] genes, float[] matrix, int numSamples) {
+
+		this(genes, toBytes(matrix), numSamples);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Constructor, the matrix has genes.length rows of numSamples little-endian floats, from position 0 */
+	public ExpressionData(String[] genes, ByteBuffer matrix, int numSamples) {
+
+		if (matrix.capacity() != 4L*genes.length*numSamples)
+			throw new IllegalArgumentException("The matrix does not have " + genes.length + " rows of " + numSamples + " samples");
+		genes_ = genes;
+		bytes_ = matrix.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		bytes_.clear();
+		matrix_ = bytes_.asFloatBuffer();
+		numSamples_ = numSamples;
+		geneIndex_ = new HashMap<String, Integer>(2*genes.length);
+		for (int i=0; i<genes.length; i++)
+			if (geneIndex_.put(genes[i], i) != null)
+				throw new IllegalArgumentException("Duplicate gene in the gene list: " + genes[i]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gene list and the expression matrix, through the binary cache next to the expression file */
+	public static ExpressionData load(String genesFile, String expressionFile) {
+
+		return load(genesFile, expressionFile, true);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Load the gene list and the expression matrix, through the binary cache if useCache is set */
+	public static ExpressionData load(String genesFile, String expressionFile, boolean useCache) {
+
+		String[] genes = readList(genesFile);
+		if (useCache)
+			return ExpressionCache.load(genes, expressionFile);
+		return parse(genes, expressionFile);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Parse the expression matrix (one line per gene, in the order of the genes) into an off-heap buffer */
+	public static ExpressionData parse(String[] genes, String expressionFile) {
+
+		int numGenes = genes.length;
+		FileParser parser = new FileParser(expressionFile);
+		parser.setSeparator("\\s+");
+		ByteBuffer matrix = null;
+		int numSamples = -1;
+		int numRows = 0;
+		String[] tokens = null;
+		while ((tokens = parser.readLine()) != null) {
+			// Leading whitespace gives an empty first token
+			int first = (tokens.length > 0 && tokens[0].isEmpty()) ? 1 : 0;
+			int last = (tokens.length > first && tokens[tokens.length-1].isEmpty()) ? tokens.length-1 : tokens.length;
+			if (last == first)
+				continue;
+			if (numSamples < 0) {
+				numSamples = last - first;
+				if (4L*numGenes*numSamples > Integer.MAX_VALUE)
+					throw new RuntimeException("The expression matrix is too large (" + numGenes + " x " + numSamples + ", at most 2 GB)");
+				matrix = ByteBuffer.allocateDirect(4*numGenes*numSamples).order(ByteOrder.LITTLE_ENDIAN);
+			} else if (last - first != numSamples) {
+				throw new RuntimeException("Line " + parser.getLineCounter() + " of " + expressionFile + " has " + (last - first) + " values instead of " + numSamples);
+			}
+			if (numRows == numGenes)
+				throw new RuntimeException("The expression file has more rows than there are genes (" + numGenes + ")");
+
+			for (int j=first; j<last; j++)
+				matrix.putFloat(Float.parseFloat(tokens[j]));
+			numRows++;
+		}
+		parser.close();
+
+		if (matrix == null)
+			throw new RuntimeException("The expression file is empty: " + expressionFile);
+		if (numRows != numGenes)
+			throw new RuntimeException("The expression file has " + numRows + " rows, but there are " + numGenes + " genes");
+		return new ExpressionData(genes, matrix, numSamples);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Read a list of names, one per line (empty lines are ignored) */
+	public static String[] readList(String filename) {
+
+		ArrayList<String> names = new ArrayList<String>();
+		FileParser parser = new FileParser(filename);
+		String[] tokens = null;
+		while ((tokens = parser.readLine()) != null) {
+			String name = tokens[0].trim();
+			if (!name.isEmpty())
+				names.add(name);
+		}
+		parser.close();
+		return names.toArray(new String[names.size()]);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Return the index of each given gene, genes that are not in the gene list are skipped with a warning */
+	public int[] getGeneIndexes(String[] names) {
+
+		int[] indexes = new int[names.length];
+		int n = 0;
+		for (String name : names) {
+			Integer index = geneIndex_.get(name);
+			if (index == null)
+				System.err.println("Warning: " + name + " is not in the gene list, it is ignored");
+			else
+				indexes[n++] = index;
+		}
+		return Arrays.copyOf(indexes, n);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The profile of the gene, a read-only view of the off-heap matrix (no copy) */
+	public FloatBuffer getRow(int gene) {
+
+		FloatBuffer row = matrix_.duplicate();
+		row.position(gene*numSamples_).limit((gene + 1)*numSamples_);
+		return row.slice().asReadOnlyBuffer();
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Copy the profile of the gene into row (length at least getNumSamples()) and return it */
+	public float[] getRow(int gene, float[] row) {
+
+		FloatBuffer matrix = matrix_.duplicate();
+		matrix.position(gene*numSamples_);
+		matrix.get(row, 0, numSamples_);
+		return row;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Copy the matrix to a direct buffer of little-endian floats */
+	private static ByteBuffer toBytes(float[] matrix) {
+
+		ByteBuffer bytes = ByteBuffer.allocateDirect(4*matrix.length).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asFloatBuffer().put(matrix);
+		return bytes;
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int getNumGenes() { return genes_.length; }
+	public int getNumSamples() { return numSamples_; }
+	public String[] getGenes() { return genes_; }
+	public String getGene(int i) { return genes_[i]; }
+
+	/** The index of the gene, -1 if it is not in the gene list */
+	public int getGeneIndex(String name) {
+		Integer index = geneIndex_.get(name);
+		return (index == null) ? -1 : index;
+	}
+
+	/** The expression matrix, row-major little-endian floats (the profile of gene i starts at byte 4*i*getNumSamples()) */
+	public ByteBuffer getBytes() { return bytes_.duplicate().order(ByteOrder.LITTLE_ENDIAN); }
+	public float getValue(int gene, int sample) { return matrix_.get(gene*numSamples_ + sample); }
+}
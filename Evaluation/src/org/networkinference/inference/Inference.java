@@ -0,0 +1,204 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import org.networkinference.eval.Evaluation;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+
+/**
+ * Main class of the network inference: infer a TF-gene network from expression
+ * data and write the ranked edges as a prediction for the evaluation.
+ */
+public class Inference {
+
+	/** The command-line parser */
+	private OptionParser parser_ = null;
+
+	/** The expression file (one line per gene) */
+	private String expressionFile_ = null;
+	/** The gene list (one name per line, in the order of the expression file) */
+	private String genesFile_ = null;
+	/** The list of TFs (one name per line) */
+	private String tfsFile_ = null;
+	/** The output file, a binary prediction if it ends with ".bin" */
+	private String outputFile_ = "prediction.txt";
+	/** The number of edges that are written (0 for all edges) */
+	private int maxEdges_ = 0;
+	/** The inference method: "spearman" or "clr" */
+	private String method_ = "spearman";
+	/** The number of bins of the mutual information (clr) */
+	private int numBins_ = 10;
+	/** The order of the B-splines of the mutual information (clr) */
+	private int splineOrder_ = 3;
+	/** Read and write the binary cache of the expression matrix (see ExpressionCache) */
+	private boolean useCache_ = true;
+
+	/** The number of threads */
+	private int numThreads_ = Runtime.getRuntime().availableProcessors();
+
+
+	// ============================================================================
+	// MAIN
+
+	/** Main function */
+	public static void main(String[] args) {
+
+		try {
+			Inference inference = new Inference();
+			inference.run(args);
+		} catch (Exception e) {
+			Evaluation.error(e);
+		}
+	}
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Parse the command-line arguments, read the data, infer the network and write the prediction */
+	public void run(String[] args) {
+
+		defineArgs();
+		parseArgs(args);
+
+		ExpressionData data = ExpressionData.load(genesFile_, expressionFile_, useCache_);
+		int[] tfs = data.getGeneIndexes(ExpressionData.readList(tfsFile_));
+		Evaluation.println("Inferring the network of " + tfs.length + " TFs and " + data.getNumGenes() + " genes from " + data.getNumSamples() + " samples");
+
+		long start = System.nanoTime();
+		float[] scores = null;
+		if (method_.equals("clr")) {
+			scores = new ClrInference(data, tfs, numBins_, splineOrder_, numThreads_).run();
+			Evaluation.println(String.format("CLR (mutual information): %.3f s", (System.nanoTime() - start)/1e9));
+		} else {
+			scores = new SpearmanInference(data, tfs, numThreads_).run();
+			Evaluation.println(String.format("Spearman correlations: %.3f s", (System.nanoTime() - start)/1e9));
+		}
+
+		RankedEdges edges = new RankedEdges(data, tfs, scores);
+		edges.rank(maxEdges_, numThreads_);
+		edges.write(outputFile_);
+		System.out.println("Done!");
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/** Display usage information */
+	private void displayHelp() {
+
+		System.out.println("USAGE");
+		System.out.println("   java -cp Evaluation.jar org.networkinference.inference.Inference --expr <file> --genes <file> --tfs <file> [OPTIONS]");
+		System.out.println("OPTIONS");
+		System.out.println("   --expr <file>   Expression data, one line per gene with whitespace-separated values");
+		System.out.println("   --genes <file>  Gene list, one name per line (in the order of the expression file)");
+		System.out.println("   --tfs <file>    Transcription factors, one name per line");
+		System.out.println("   --out <file>    The ranked edges (default: prediction.txt), in binary format if it ends with .bin");
+		System.out.println("   --maxEdges <n>  Write only the n best edges (default: all TF-gene edges)");
+		System.out.println("   --method <m>    spearman (absolute Spearman correlation, default) or clr (context likelihood");
+		System.out.println("                   of relatedness of the mutual information)");
+		System.out.println("   --bins <n>      Number of bins of the mutual information (clr, default: 10)");
+		System.out.println("   --order <k>     Order of the B-splines of the mutual information (clr, default: 3)");
+		System.out.println("   --threads <n>   Number of threads (default: number of processors)");
+		System.out.println("   --noCache       Always parse the expression file, do not read or write the binary cache (<expr>.f32)");
+		System.out.println("   --help          Display this usage information");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Define the command-line arguments */
+	private void defineArgs() {
+
+		parser_ = new OptionParser();
+		parser_.accepts("expr").withRequiredArg();
+		parser_.accepts("genes").withRequiredArg();
+		parser_.accepts("tfs").withRequiredArg();
+		parser_.accepts("out").withRequiredArg();
+		parser_.accepts("maxEdges").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("method").withRequiredArg();
+		parser_.accepts("bins").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("order").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("threads").withRequiredArg().ofType(Integer.class);
+		parser_.accepts("noCache");
+		parser_.accepts("help");
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Parse the command-line arguments, which were defined by defineArgs() */
+	private void parseArgs(String[] args) {
+
+		OptionSet options = null;
+		try {
+			options = parser_.parse(args);
+		} catch (Exception e) {
+			displayHelp();
+			Evaluation.error(e);
+		}
+
+		if (options.has("help")) {
+			displayHelp();
+			System.exit(0);
+		}
+
+		for (String name : new String[] { "expr", "genes", "tfs" }) {
+			if (!options.has(name)) {
+				displayHelp();
+				throw new IllegalArgumentException("Missing argument '--" + name + " <file>'");
+			}
+		}
+		expressionFile_ = (String) options.valueOf("expr");
+		genesFile_ = (String) options.valueOf("genes");
+		tfsFile_ = (String) options.valueOf("tfs");
+
+		if (options.has("out"))
+			outputFile_ = (String) options.valueOf("out");
+		if (options.has("maxEdges")) {
+			maxEdges_ = (Integer) options.valueOf("maxEdges");
+			if (maxEdges_ < 0)
+				throw new IllegalArgumentException("The option --maxEdges requires n >= 0");
+		}
+		if (options.has("method")) {
+			method_ = (String) options.valueOf("method");
+			if (!method_.equals("spearman") && !method_.equals("clr"))
+				throw new IllegalArgumentException("Unknown method '" + method_ + "' (valid methods are spearman and clr)");
+		}
+		if (options.has("bins"))
+			numBins_ = (Integer) options.valueOf("bins");
+		if (options.has("order"))
+			splineOrder_ = (Integer) options.valueOf("order");
+		if (options.has("threads"))
+			numThreads_ = (Integer) options.valueOf("threads");
+		if (options.has("noCache"))
+			useCache_ = false;
+	}
+}
@@ -0,0 +1,387 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Mutual information between the expression profiles of the TFs and all genes,
+ * estimated with B-splines (Daub et al., 2004). Each profile is discretized
+ * once: the values are scaled to the domain of numBins B-spline basis
+ * functions of the given order, and each sample is assigned to the order
+ * consecutive bins where its basis functions are non-zero, with the values of
+ * the basis functions as weights (they sum to 1). The probability of a bin is
+ * the mean weight of the samples, and the joint probabilities of two genes are
+ * the means of the products of their weights.
+ *
+ * The TF x gene mutual information is computed in tiles of TF_TILE TFs and
+ * GENE_TILE genes on a fork-join pool, so that the discretized profiles of the
+ * TFs of a tile stay in the cache while the genes of the tile are processed.
+ * The joint histogram of a pair has numBins^2 cells and is reused by the pairs
+ * of a tile.
+ */
+public class MutualInformation {
+
+	/** The number of TFs of a tile */
+	private static final int TF_TILE = 8;
+	/** The number of genes of a tile */
+	private static final int GENE_TILE = 64;
+
+	/** The expression data */
+	private ExpressionData data_ = null;
+	/** The gene index of each TF */
+	private int[] tfs_ = null;
+	/** The number of bins */
+	private int numBins_ = 10;
+	/** The order of the B-splines (1 is simple binning, 3 is quadratic) */
+	private int order_ = 3;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** The first bin of each sample of each gene, row-major as the expression matrix */
+	private byte[] firstBins_ = null;
+	/** The order_ weights of each sample of each gene (for the bins firstBin..firstBin+order-1) */
+	private float[] weights_ = null;
+	/** The entropy of each gene */
+	private double[] entropies_ = null;
+	/** The mutual information, mi_[t*numGenes + g] for TF t and gene g (NaN for the TF itself) */
+	private float[] mi_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, tfs are the gene indexes of the TFs */
+	public MutualInformation(ExpressionData data, int[] tfs, int numBins, int order, int numThreads) {
+
+		if (order < 1 || numBins < order || numBins > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("The number of bins must be between the spline order (" + order + ") and " + Byte.MAX_VALUE);
+		data_ = data;
+		tfs_ = tfs;
+		numBins_ = numBins;
+		order_ = order;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Discretize the profiles and compute the mutual information of all TF-gene pairs */
+	public float[] run() {
+
+		int numGenes = data_.getNumGenes();
+		int numValues = numGenes*data_.getNumSamples();
+		if ((long) tfs_.length*numGenes > Integer.MAX_VALUE || (long) numValues*order_ > Integer.MAX_VALUE)
+			throw new RuntimeException("Too many TF-gene pairs or samples (" + tfs_.length + " x " + numGenes + ")");
+		firstBins_ = new byte[numValues];
+		weights_ = new float[numValues*order_];
+		entropies_ = new double[numGenes];
+		mi_ = new float[tfs_.length*numGenes];
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			pool.invoke(new DiscretizeTask(0, numGenes));
+			pool.invoke(new TileTask(0, tfs_.length, 0, numGenes));
+		} finally {
+			pool.shutdown();
+		}
+		// The discretized profiles are not needed anymore
+		firstBins_ = null;
+		weights_ = null;
+		return mi_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Mutual information of two profiles (for single pairs, e.g., to check the estimator) */
+	public static double mutualInformation(float[] x, float[] y, int numBins, int order) {
+
+		float[] matrix = new float[2*x.length];
+		System.arraycopy(x, 0, matrix, 0, x.length);
+		System.arraycopy(y, 0, matrix, x.length, y.length);
+		ExpressionData data = new ExpressionData(new String[] { "x", "y" }, matrix, x.length);
+		return new MutualInformation(data, new int[] { 0 }, numBins, order, 1).run()[1];
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/**
+	 * Compute the order non-zero B-spline basis functions at z (in the domain 0..numBins-order+1,
+	 * clamped uniform knots) and return the index of the first one (de Boor's recursion).
+	 */
+	static int basisFunctions(double z, int numBins, int order, double[] basis, double[] left, double[] right) {
+
+		int degree = order - 1;
+		int numSpans = numBins - degree;
+		// The knot span of z, the right end of the domain belongs to the last span
+		int span = Math.min((int) z, numSpans - 1);
+		int i = span + degree;
+
+		basis[0] = 1;
+		for (int j=1; j<=degree; j++) {
+			left[j] = z - knot(i + 1 - j, degree, numSpans);
+			right[j] = knot(i + j, degree, numSpans) - z;
+			double saved = 0;
+			for (int r=0; r<j; r++) {
+				double temp = basis[r] / (right[r+1] + left[j-r]);
+				basis[r] = saved + right[r+1]*temp;
+				saved = left[j-r]*temp;
+			}
+			basis[j] = saved;
+		}
+		return span;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The knot i of the clamped uniform knot vector: degree+1 knots 0, then 1, 2, ..., and degree+1 knots numSpans */
+	private static double knot(int i, int degree, int numSpans) {
+
+		return Math.max(0, Math.min(numSpans, i - degree));
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Discretize the profile of gene g and compute its entropy */
+	private void discretize(int g, double[] basis, double[] left, double[] right, double[] probabilities) {
+
+		int n = data_.getNumSamples();
+		FloatBuffer profile = data_.getRow(g);
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (int s=0; s<n; s++) {
+			min = Math.min(min, profile.get(s));
+			max = Math.max(max, profile.get(s));
+		}
+		int numSpans = numBins_ - order_ + 1;
+		double scale = (max > min) ? numSpans / (double) (max - min) : 0;
+
+		Arrays.fill(probabilities, 0);
+		for (int s=0; s<n; s++) {
+			double z = (profile.get(s) - min)*scale;
+			int first = basisFunctions(z, numBins_, order_, basis, left, right);
+			firstBins_[g*n + s] = (byte) first;
+			for (int a=0; a<order_; a++) {
+				weights_[(g*n + s)*order_ + a] = (float) basis[a];
+				probabilities[first + a] += basis[a];
+			}
+		}
+		entropies_[g] = entropy(probabilities, numBins_, n);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** The entropy (natural log) of the histogram with the given total weight, the histogram is reset to 0 */
+	private static double entropy(double[] histogram, int numCells, int total) {
+
+		double h = 0;
+		for (int c=0; c<numCells; c++) {
+			if (histogram[c] > 0) {
+				double p = histogram[c] / total;
+				h -= p*Math.log(p);
+				histogram[c] = 0;
+			}
+		}
+		return h;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the mutual information of TFs tfStart..tfEnd-1 and genes geneStart..geneEnd-1 (a single tile) */
+	private void computeTile(int tfStart, int tfEnd, int geneStart, int geneEnd, double[] joint) {
+
+		int n = data_.getNumSamples();
+		int numGenes = data_.getNumGenes();
+		int k = order_;
+		int m = numBins_;
+
+		for (int g=geneStart; g<geneEnd; g++) {
+			for (int t=tfStart; t<tfEnd; t++) {
+				int x = tfs_[t];
+				if (x == g) {
+					mi_[t*numGenes + g] = Float.NaN; // no self-edges
+					continue;
+				}
+				// The joint histogram: the products of the weights of both genes
+				if (k == 3)
+					accumulateQuadratic(x*n, g*n, n, joint);
+				else
+					accumulate(x*n, g*n, n, joint);
+				double mi = entropies_[x] + entropies_[g] - entropy(joint, m*m, n);
+				mi_[t*numGenes + g] = (float) Math.max(0, mi);
+			}
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Add the products of the weights of the n samples starting at x and y to the joint histogram */
+	private void accumulate(int x, int y, int n, double[] joint) {
+
+		int k = order_;
+		int m = numBins_;
+		for (int s=0; s<n; s++) {
+			int cell = firstBins_[x + s]*m + firstBins_[y + s];
+			int wx = (x + s)*k;
+			int wy = (y + s)*k;
+			for (int a=0; a<k; a++) {
+				double weight = weights_[wx + a];
+				for (int b=0; b<k; b++)
+					joint[cell + a*m + b] += weight*weights_[wy + b];
+			}
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Same as accumulate() for order 3 (the default), unrolled */
+	private void accumulateQuadratic(int x, int y, int n, double[] joint) {
+
+		int m = numBins_;
+		byte[] bins = firstBins_;
+		float[] w = weights_;
+		for (int s=0; s<n; s++) {
+			int cell = bins[x + s]*m + bins[y + s];
+			int wx = (x + s)*3;
+			int wy = (y + s)*3;
+			double x0 = w[wx], x1 = w[wx+1], x2 = w[wx+2];
+			double y0 = w[wy], y1 = w[wy+1], y2 = w[wy+2];
+			joint[cell] += x0*y0;
+			joint[cell+1] += x0*y1;
+			joint[cell+2] += x0*y2;
+			joint[cell+m] += x1*y0;
+			joint[cell+m+1] += x1*y1;
+			joint[cell+m+2] += x1*y2;
+			joint[cell+2*m] += x2*y0;
+			joint[cell+2*m+1] += x2*y1;
+			joint[cell+2*m+2] += x2*y2;
+		}
+	}
+
+
+	// ============================================================================
+	// DISCRETIZE TASK
+
+	/** Discretize the profiles of genes start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class DiscretizeTask extends RecursiveAction {
+
+		/** The number of genes discretized by a single task */
+		private static final int GENES_PER_TASK = 256;
+
+		/** The first gene */
+		private int start_ = -1;
+		/** The last gene (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public DiscretizeTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Discretize the profiles or split the range */
+		protected void compute() {
+
+			if (end_ - start_ > GENES_PER_TASK) {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new DiscretizeTask(start_, middle), new DiscretizeTask(middle, end_));
+				return;
+			}
+			double[] basis = new double[order_];
+			double[] left = new double[order_];
+			double[] right = new double[order_];
+			double[] probabilities = new double[numBins_];
+			for (int g=start_; g<end_; g++)
+				discretize(g, basis, left, right, probabilities);
+		}
+	}
+
+
+	// ============================================================================
+	// TILE TASK
+
+	/** Compute the mutual information of a block of TFs x genes, split into tiles */
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+
+		/** The first TF */
+		private int tfStart_ = -1;
+		/** The last TF (exclusive) */
+		private int tfEnd_ = -1;
+		/** The first gene */
+		private int geneStart_ = -1;
+		/** The last gene (exclusive) */
+		private int geneEnd_ = -1;
+
+		/** Constructor */
+		public TileTask(int tfStart, int tfEnd, int geneStart, int geneEnd) {
+			tfStart_ = tfStart;
+			tfEnd_ = tfEnd;
+			geneStart_ = geneStart;
+			geneEnd_ = geneEnd;
+		}
+
+		/** Compute the tile or split the block along its larger dimension (in tiles) */
+		protected void compute() {
+
+			int numTfTiles = (tfEnd_ - tfStart_ + TF_TILE - 1) / TF_TILE;
+			int numGeneTiles = (geneEnd_ - geneStart_ + GENE_TILE - 1) / GENE_TILE;
+			if (numTfTiles <= 1 && numGeneTiles <= 1) {
+				computeTile(tfStart_, tfEnd_, geneStart_, geneEnd_, new double[numBins_*numBins_]);
+			} else if (numTfTiles >= numGeneTiles) {
+				int middle = tfStart_ + (numTfTiles/2)*TF_TILE;
+				invokeAll(new TileTask(tfStart_, middle, geneStart_, geneEnd_), new TileTask(middle, tfEnd_, geneStart_, geneEnd_));
+			} else {
+				int middle = geneStart_ + (numGeneTiles/2)*GENE_TILE;
+				invokeAll(new TileTask(tfStart_, tfEnd_, geneStart_, middle), new TileTask(tfStart_, tfEnd_, middle, geneEnd_));
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** The entropy of each gene (after run()) */
+	public double[] getEntropies() { return entropies_; }
+	public int getNumBins() { return numBins_; }
+	public int getOrder() { return order_; }
+}
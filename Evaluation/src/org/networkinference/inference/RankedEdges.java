@@ -0,0 +1,160 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import org.networkinference.eval.BinaryPredictionWriter;
+import org.networkinference.eval.FileExport;
+import org.networkinference.eval.Prediction;
+import org.networkinference.eval.ScoreSort;
+import org.networkinference.eval.TopKHeap;
+
+
+/**
+ * Rank the TF-gene edges of an inference method by decreasing score and write
+ * them as a prediction that the evaluation reads: a text file with the lines
+ * "TF<tab>gene<tab>score" (DREAM format), or a binary prediction if the file
+ * name ends with ".bin" (see BinaryPrediction). The scores are given as a
+ * matrix with one row per TF and one column per gene, NaN scores (self-edges)
+ * are not written. Edges with equal scores are in the order of the matrix.
+ */
+public class RankedEdges {
+
+	/** The expression data (gene names) */
+	private ExpressionData data_ = null;
+	/** The gene index of each TF */
+	private int[] tfs_ = null;
+	/** The scores, scores_[t*numGenes + g] for TF t and gene g */
+	private float[] scores_ = null;
+
+	/** The TF (gene index) of each ranked edge */
+	private int[] regulators_ = null;
+	/** The target of each ranked edge */
+	private int[] targets_ = null;
+	/** The score of each ranked edge */
+	private float[] rankedScores_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor */
+	public RankedEdges(ExpressionData data, int[] tfs, float[] scores) {
+
+		data_ = data;
+		tfs_ = tfs;
+		scores_ = scores;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Rank the edges, only the maxEdges best edges are kept (0 to keep all edges) */
+	public void rank(int maxEdges, int numThreads) {
+
+		int numGenes = data_.getNumGenes();
+		int numEdges = 0;
+		for (float score : scores_)
+			if (!Float.isNaN(score))
+				numEdges++;
+
+		if (maxEdges > 0 && maxEdges < numEdges) {
+			// Keep the best edges in a heap, the position in the matrix breaks the ties
+			TopKHeap heap = new TopKHeap(maxEdges);
+			for (int i=0; i<scores_.length; i++)
+				if (!Float.isNaN(scores_[i]))
+					heap.add(scores_[i], tfs_[i/numGenes], i % numGenes, i);
+			Prediction prediction = heap.toPrediction(numThreads);
+			regulators_ = new int[prediction.size()];
+			targets_ = new int[prediction.size()];
+			rankedScores_ = new float[prediction.size()];
+			for (int k=0; k<prediction.size(); k++) {
+				regulators_[k] = prediction.getRegulator(k);
+				targets_[k] = prediction.getTarget(k);
+				rankedScores_[k] = (float) prediction.getScore(k);
+			}
+			return;
+		}
+
+		// Sort all edges (stable, so ties keep the order of the matrix)
+		long[] keys = new long[numEdges];
+		int[] index = new int[numEdges];
+		int n = 0;
+		for (int i=0; i<scores_.length; i++) {
+			if (!Float.isNaN(scores_[i])) {
+				keys[n] = ScoreSort.toKey(scores_[i]);
+				index[n++] = i;
+			}
+		}
+		ScoreSort.sort(keys, index, n, numThreads);
+		keys = null;
+
+		regulators_ = new int[n];
+		targets_ = new int[n];
+		rankedScores_ = new float[n];
+		for (int k=0; k<n; k++) {
+			regulators_[k] = tfs_[index[k]/numGenes];
+			targets_[k] = index[k] % numGenes;
+			rankedScores_[k] = scores_[index[k]];
+		}
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Write the ranked edges, in binary format if the file name ends with ".bin" */
+	public void write(String filename) {
+
+		if (filename.endsWith(".bin")) {
+			System.out.println("Writing file: " + filename);
+			BinaryPredictionWriter writer = new BinaryPredictionWriter(filename, data_.getGenes());
+			for (int k=0; k<regulators_.length; k++)
+				writer.add(regulators_[k], targets_[k], rankedScores_[k]);
+			writer.close();
+			return;
+		}
+
+		FileExport out = new FileExport(filename);
+		StringBuilder line = new StringBuilder();
+		for (int k=0; k<regulators_.length; k++) {
+			line.setLength(0);
+			line.append(data_.getGene(regulators_[k])).append('\t');
+			line.append(data_.getGene(targets_[k])).append('\t');
+			line.append(rankedScores_[k]).append('\n');
+			out.print(line.toString());
+		}
+		out.close();
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	/** The number of ranked edges */
+	public int size() { return regulators_.length; }
+	public int getRegulator(int k) { return regulators_[k]; }
+	public int getTarget(int k) { return targets_[k]; }
+	public float getScore(int k) { return rankedScores_[k]; }
+}
@@ -0,0 +1,287 @@
+/*
+Copyright (c) 2012 Daniel Marbach
+
+We release this software open source under an MIT license (see below). If this
+software was useful for your scientific work, please cite our paper available at:
+http://networkinference.org
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+package org.networkinference.inference;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Infer a network from the Spearman correlation between the expression profiles
+ * of the transcription factors and all genes. Each profile is ranked once: the
+ * values are replaced by their ranks (ties get their average rank), and the
+ * ranks are centered and scaled to unit norm. The Spearman correlation of two
+ * genes is then the dot product of their ranked profiles (the Pearson
+ * correlation of the ranks).
+ *
+ * The TF x gene correlations are computed in tiles of TF_TILE TFs and GENE_TILE
+ * genes on a fork-join pool. Within a tile, the profile of a gene is read once
+ * for four TFs at a time, and the profiles of the TFs of the tile stay in the
+ * cache while the genes of the tile are processed. The score of an edge is the
+ * absolute correlation (activation and repression are not distinguished).
+ */
+public class SpearmanInference {
+
+	/** The number of TFs of a tile */
+	private static final int TF_TILE = 16;
+	/** The number of genes of a tile */
+	private static final int GENE_TILE = 128;
+
+	/** The expression data */
+	private ExpressionData data_ = null;
+	/** The gene index of each TF */
+	private int[] tfs_ = null;
+	/** The number of threads */
+	private int numThreads_ = 1;
+
+	/** The ranked profiles (centered, unit norm), row-major as the expression matrix */
+	private float[] ranks_ = null;
+	/** The scores, scores_[t*numGenes + g] for TF t and gene g (NaN for the TF itself) */
+	private float[] scores_ = null;
+
+
+	// ============================================================================
+	// PUBLIC METHODS
+
+	/** Constructor, tfs are the gene indexes of the TFs */
+	public SpearmanInference(ExpressionData data, int[] tfs, int numThreads) {
+
+		data_ = data;
+		tfs_ = tfs;
+		numThreads_ = Math.max(1, numThreads);
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Rank the profiles and compute the scores of all TF-gene pairs */
+	public float[] run() {
+
+		int numGenes = data_.getNumGenes();
+		if ((long) tfs_.length*numGenes > Integer.MAX_VALUE)
+			throw new RuntimeException("Too many TF-gene pairs (" + tfs_.length + " x " + numGenes + ")");
+		ranks_ = new float[numGenes*data_.getNumSamples()];
+		scores_ = new float[tfs_.length*numGenes];
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads_);
+		try {
+			pool.invoke(new RankTask(0, numGenes));
+			pool.invoke(new TileTask(0, tfs_.length, 0, numGenes));
+		} finally {
+			pool.shutdown();
+		}
+		// The ranks are not needed anymore
+		ranks_ = null;
+		return scores_;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Spearman correlation of two profiles (for single pairs, e.g., to check the engine) */
+	public static double correlation(float[] x, float[] y) {
+
+		float[] rx = new float[x.length];
+		float[] ry = new float[y.length];
+		rank(x, 0, rx, 0, x.length, new long[x.length]);
+		rank(y, 0, ry, 0, y.length, new long[y.length]);
+		double sum = 0;
+		for (int k=0; k<x.length; k++)
+			sum += rx[k]*ry[k];
+		return sum;
+	}
+
+
+	// ============================================================================
+	// PRIVATE METHODS
+
+	/**
+	 * Write the centered, normalized ranks of values[from..from+n-1] to ranks[to..to+n-1].
+	 * Ties get their average rank. A constant profile gets zero ranks (correlation 0).
+	 * The array keys (length n) is used as work space.
+	 */
+	static void rank(float[] values, int from, float[] ranks, int to, int n, long[] keys) {
+
+		// Sort the indexes by value: order-preserving int of the value in the high bits, the index in the low bits
+		for (int k=0; k<n; k++) {
+			int bits = Float.floatToIntBits(values[from + k] + 0.0f); // -0.0 becomes 0.0
+			bits ^= (bits >> 31) & 0x7fffffff;
+			keys[k] = ((long) bits << 32) | k;
+		}
+		Arrays.sort(keys, 0, n);
+
+		// Average ranks of the ties, centered: the mean rank is (n+1)/2
+		double mean = (n + 1) / 2.0;
+		double sumOfSquares = 0;
+		for (int start=0, end=0; start<n; start=end) {
+			float value = values[from + (int) keys[start]];
+			for (end=start+1; end<n && values[from + (int) keys[end]] == value; end++);
+			double rank = (start + 1 + end) / 2.0 - mean;
+			for (int k=start; k<end; k++)
+				ranks[to + (int) keys[k]] = (float) rank;
+			sumOfSquares += (end - start)*rank*rank;
+		}
+
+		double scale = (sumOfSquares > 0) ? 1/Math.sqrt(sumOfSquares) : 0;
+		for (int k=0; k<n; k++)
+			ranks[to + k] *= scale;
+	}
+
+
+	// ----------------------------------------------------------------------------
+
+	/** Compute the scores of TFs tfStart..tfEnd-1 and genes geneStart..geneEnd-1 (a single tile) */
+	private void computeTile(int tfStart, int tfEnd, int geneStart, int geneEnd) {
+
+		int numSamples = data_.getNumSamples();
+		int numGenes = data_.getNumGenes();
+		float[] r = ranks_;
+
+		for (int g=geneStart; g<geneEnd; g++) {
+			int y = g*numSamples;
+			int t = tfStart;
+			// Four TFs at a time, each value of the gene profile is loaded once for the four dot products
+			for (; t+4<=tfEnd; t+=4) {
+				int a = tfs_[t]*numSamples;
+				int b = tfs_[t+1]*numSamples;
+				int c = tfs_[t+2]*numSamples;
+				int d = tfs_[t+3]*numSamples;
+				float sa = 0, sb = 0, sc = 0, sd = 0;
+				for (int k=0; k<numSamples; k++) {
+					float v = r[y + k];
+					sa += r[a + k]*v;
+					sb += r[b + k]*v;
+					sc += r[c + k]*v;
+					sd += r[d + k]*v;
+				}
+				scores_[t*numGenes + g] = Math.abs(sa);
+				scores_[(t+1)*numGenes + g] = Math.abs(sb);
+				scores_[(t+2)*numGenes + g] = Math.abs(sc);
+				scores_[(t+3)*numGenes + g] = Math.abs(sd);
+			}
+			for (; t<tfEnd; t++) {
+				int a = tfs_[t]*numSamples;
+				float s = 0;
+				for (int k=0; k<numSamples; k++)
+					s += r[a + k]*r[y + k];
+				scores_[t*numGenes + g] = Math.abs(s);
+			}
+		}
+
+		// No self-edges
+		for (int t=tfStart; t<tfEnd; t++)
+			if (tfs_[t] >= geneStart && tfs_[t] < geneEnd)
+				scores_[t*numGenes + tfs_[t]] = Float.NaN;
+	}
+
+
+	// ============================================================================
+	// RANK TASK
+
+	/** Rank the profiles of genes start..end-1, split recursively */
+	@SuppressWarnings("serial")
+	private class RankTask extends RecursiveAction {
+
+		/** The number of genes ranked by a single task */
+		private static final int GENES_PER_TASK = 256;
+
+		/** The first gene */
+		private int start_ = -1;
+		/** The last gene (exclusive) */
+		private int end_ = -1;
+
+		/** Constructor */
+		public RankTask(int start, int end) {
+			start_ = start;
+			end_ = end;
+		}
+
+		/** Rank the profiles or split the range */
+		protected void compute() {
+
+			if (end_ - start_ > GENES_PER_TASK) {
+				int middle = (start_ + end_) >>> 1;
+				invokeAll(new RankTask(start_, middle), new RankTask(middle, end_));
+				return;
+			}
+			int n = data_.getNumSamples();
+			float[] profile = new float[n];
+			long[] keys = new long[n];
+			for (int g=start_; g<end_; g++)
+				rank(data_.getRow(g, profile), 0, ranks_, g*n, n, keys);
+		}
+	}
+
+
+	// ============================================================================
+	// TILE TASK
+
+	/** Compute the scores of a block of TFs x genes, split into tiles */
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+
+		/** The first TF */
+		private int tfStart_ = -1;
+		/** The last TF (exclusive) */
+		private int tfEnd_ = -1;
+		/** The first gene */
+		private int geneStart_ = -1;
+		/** The last gene (exclusive) */
+		private int geneEnd_ = -1;
+
+		/** Constructor */
+		public TileTask(int tfStart, int tfEnd, int geneStart, int geneEnd) {
+			tfStart_ = tfStart;
+			tfEnd_ = tfEnd;
+			geneStart_ = geneStart;
+			geneEnd_ = geneEnd;
+		}
+
+		/** Compute the tile or split the block along its larger dimension (in tiles) */
+		protected void compute() {
+
+			int numTfTiles = (tfEnd_ - tfStart_ + TF_TILE - 1) / TF_TILE;
+			int numGeneTiles = (geneEnd_ - geneStart_ + GENE_TILE - 1) / GENE_TILE;
+			if (numTfTiles <= 1 && numGeneTiles <= 1) {
+				computeTile(tfStart_, tfEnd_, geneStart_, geneEnd_);
+			} else if (numTfTiles >= numGeneTiles) {
+				int middle = tfStart_ + (numTfTiles/2)*TF_TILE;
+				invokeAll(new TileTask(tfStart_, middle, geneStart_, geneEnd_), new TileTask(middle, tfEnd_, geneStart_, geneEnd_));
+			} else {
+				int middle = geneStart_ + (numGeneTiles/2)*GENE_TILE;
+				invokeAll(new TileTask(tfStart_, tfEnd_, geneStart_, middle), new TileTask(tfStart_, tfEnd_, middle, geneEnd_));
+			}
+		}
+	}
+
+
+	// ============================================================================
+	// SETTERS AND GETTERS
+
+	public int[] getTFs() { return tfs_; }
+	public float[] getScores() { return scores_; }
+}
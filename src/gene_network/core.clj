@@ -29,9 +29,11 @@
 (def expr-data (get-expr-data))
 
 (defn map-indices [ks v]
-  (into {}
-        (for [k ks]
-          {k (.indexOf v k)})))
+  (let [index (reduce (fn [m [i x]] (if (contains? m x) m (assoc m x i)))
+                      {} (map-indexed vector v))]
+    (into {}
+          (for [k ks]
+            {k (get index k -1)}))))
 
 (def tf-indices (map-indices tf-list gene-list))
 